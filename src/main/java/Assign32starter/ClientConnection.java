@@ -0,0 +1,342 @@
+package Assign32starter;
+
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+/**
+ * The ClientConnection class is a client's game connection to the server. No caller ever blocks on
+ * the network, and no thread is dedicated to one connection, so a JVM can hold thousands of them.
+ * <p>
+ * All connections share one {@code client-io} thread running a NIO selector: it connects, writes
+ * queued requests and splits what it reads into lines, and does nothing else. Each line is handed to
+ * the connection's {@link SerialExecutor} over a shared {@code client-callback} pool (sized by
+ * {@code client.callbackThreads}), which parses it and completes the oldest outstanding request, or
+ * passes it to the push callback if it is one of the {@link #PUSH_TYPES}. So a connection's messages
+ * are handled one at a time and in order, and a slow callback delays only its own connection. A GUI
+ * must still hand results to its own thread, e.g. with {@code SwingUtilities.invokeLater}.
+ * <p>
+ * Requests are encoded exactly as an {@link ObjectOutputStream} on the socket would encode them, which
+ * is what the server reads. If the connection breaks, every outstanding request fails with the
+ * {@link IOException}, and so does every later one. Reconnecting means opening a new ClientConnection.
+ */
+public class ClientConnection implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(ClientConnection.class);
+    /**
+     * The message types the server sends without being asked, rather than in response to a request.
+     */
+    public static final Set<String> PUSH_TYPES = Set.of("prefetch");
+    private static final ExecutorService callbacks = Executors.newFixedThreadPool(
+            Integer.getInteger("client.callbackThreads", Runtime.getRuntime().availableProcessors()), r -> {
+                Thread t = new Thread(r, "client-callback");
+                t.setDaemon(true);
+                return t;
+            });
+    private static final IoLoop io = new IoLoop();
+    private static final int MAX_IDLE_LINE_BUFFER = 64 * 1024;
+
+    private final SocketChannel channel;
+    private final Consumer<JSONObject> onPush;
+    private final SerialExecutor inbox = new SerialExecutor(callbacks);
+    private final CompletableFuture<ClientConnection> connected = new CompletableFuture<>();
+    // Encoded requests not yet written, oldest first.
+    private final Queue<ByteBuffer> writes = new ConcurrentLinkedQueue<>();
+    // Futures of the requests sent or queued, oldest first.
+    private final Queue<CompletableFuture<JSONObject>> pending = new ConcurrentLinkedQueue<>();
+    // Guarded by this, together with the order of pending and writes.
+    private final ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+    private final ObjectOutputStream encoder;
+    private IOException failure;
+    // Only touched on the I/O thread: the registration, and the start of a line not yet complete.
+    private SelectionKey key;
+    private byte[] partial = new byte[256];
+    private int partialLength = 0;
+
+    private ClientConnection(SocketChannel channel, Consumer<JSONObject> onPush) throws IOException {
+        this.channel = channel;
+        this.onPush = onPush;
+        // Writes the stream header, which goes out with the first request.
+        this.encoder = new ObjectOutputStream(encoded);
+    }
+
+    /**
+     * Opens a connection in the background.
+     *
+     * @param host   the server host
+     * @param port   the server port
+     * @param onPush receives each pushed message, on the connection's callback executor
+     * @return a future completed with the open connection, or failed if it cannot be opened
+     */
+    public static CompletableFuture<ClientConnection> connect(String host, int port, Consumer<JSONObject> onPush) {
+        try {
+            SocketChannel channel = SocketChannel.open();
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            ClientConnection connection = new ClientConnection(channel, onPush);
+            InetSocketAddress address = new InetSocketAddress(host, port);
+            io.execute(() -> connection.register(address));
+            return connection.connected;
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Sends a request. Never blocks.
+     *
+     * @param request the request
+     * @return a future completed with the response, or failed with an {@link IOException} if the
+     * connection breaks first
+     */
+    public CompletableFuture<JSONObject> request(JSONObject request) {
+        CompletableFuture<JSONObject> response = new CompletableFuture<>();
+        String text = request.toString();
+        synchronized (this) {
+            if (failure != null) {
+                response.completeExceptionally(failure);
+                return response;
+            }
+            try {
+                encoder.writeObject(text);
+                encoder.flush();
+            } catch (IOException e) {
+                // Writing to memory does not fail.
+                throw new IllegalStateException(e);
+            }
+            writes.add(ByteBuffer.wrap(encoded.toByteArray()));
+            encoded.reset();
+            pending.add(response);
+        }
+        io.execute(this::wantWrite);
+        return response;
+    }
+
+    /**
+     * Returns whether the connection has been closed or has broken.
+     *
+     * @return true once closed
+     */
+    public synchronized boolean isClosed() {
+        return failure != null;
+    }
+
+    /**
+     * Closes the connection. Outstanding requests fail.
+     */
+    @Override
+    public void close() {
+        fail(new IOException("Connection closed."));
+    }
+
+    private void register(InetSocketAddress address) {
+        try {
+            boolean done = channel.connect(address);
+            key = channel.register(io.selector, done ? SelectionKey.OP_READ : SelectionKey.OP_CONNECT, this);
+            if (done) {
+                inbox.execute(() -> connected.complete(this));
+            }
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    private void finishConnect() throws IOException {
+        if (channel.finishConnect()) {
+            key.interestOps(writes.isEmpty() ? SelectionKey.OP_READ : SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+            inbox.execute(() -> connected.complete(this));
+        }
+    }
+
+    private void wantWrite() {
+        if (key != null && key.isValid() && (key.interestOps() & SelectionKey.OP_CONNECT) == 0) {
+            key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+        }
+    }
+
+    private void writeReady() throws IOException {
+        ByteBuffer buffer;
+        while ((buffer = writes.peek()) != null) {
+            channel.write(buffer);
+            if (buffer.hasRemaining()) {
+                return;
+            }
+            writes.poll();
+        }
+        // A request queued after this point schedules wantWrite again.
+        key.interestOps(SelectionKey.OP_READ);
+    }
+
+    private void readReady(ByteBuffer buffer) throws IOException {
+        while (true) {
+            buffer.clear();
+            int read = channel.read(buffer);
+            if (read < 0) {
+                throw new IOException("Connection closed by server.");
+            }
+            if (read == 0) {
+                return;
+            }
+            byte[] bytes = buffer.array();
+            int start = 0;
+            for (int i = 0; i < read; i++) {
+                if (bytes[i] == '\n') {
+                    append(bytes, start, i - start);
+                    byte[] line = Arrays.copyOf(partial, partialLength);
+                    partialLength = 0;
+                    if (partial.length > MAX_IDLE_LINE_BUFFER) {
+                        // Do not keep an image-sized buffer around between responses.
+                        partial = new byte[256];
+                    }
+                    inbox.execute(() -> deliver(line));
+                    start = i + 1;
+                }
+            }
+            append(bytes, start, read - start);
+        }
+    }
+
+    private void append(byte[] bytes, int offset, int length) {
+        if (partialLength + length > partial.length) {
+            partial = Arrays.copyOf(partial, Math.max(partial.length * 2, partialLength + length));
+        }
+        System.arraycopy(bytes, offset, partial, partialLength, length);
+        partialLength += length;
+    }
+
+    /**
+     * Handles one message from the server. Runs on the connection's callback executor.
+     */
+    private void deliver(byte[] line) {
+        JSONObject message;
+        try {
+            message = new JSONObject(new String(line, StandardCharsets.UTF_8));
+        } catch (Exception e) {
+            logger.error("Unreadable message from server", e);
+            fail(new IOException("Unreadable message from server: " + e.getMessage(), e));
+            return;
+        }
+        if (PUSH_TYPES.contains(message.optString("type", ""))) {
+            try {
+                onPush.accept(message);
+            } catch (Exception e) {
+                logger.error("Error handling pushed {} message", message.optString("type", ""), e);
+            }
+            return;
+        }
+        CompletableFuture<JSONObject> response = pending.poll();
+        if (response == null) {
+            logger.warn("Dropping a response nobody asked for: {}", message.optString("type", ""));
+        } else {
+            response.complete(message);
+        }
+    }
+
+    private void fail(IOException cause) {
+        synchronized (this) {
+            if (failure != null) {
+                return;
+            }
+            failure = cause;
+            writes.clear();
+        }
+        try {
+            // Also cancels the selection key.
+            channel.close();
+        } catch (IOException e) {
+            logger.debug("Error closing connection: {}", e.getMessage());
+        }
+        // Behind any response already read, so those still complete normally.
+        inbox.execute(() -> {
+            connected.completeExceptionally(cause);
+            CompletableFuture<JSONObject> response;
+            while ((response = pending.poll()) != null) {
+                response.completeExceptionally(cause);
+            }
+        });
+    }
+
+    /**
+     * The selector thread shared by all connections.
+     */
+    private static final class IoLoop implements Runnable {
+        private final Selector selector;
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        private final ByteBuffer readBuffer = ByteBuffer.allocate(64 * 1024);
+
+        IoLoop() {
+            try {
+                selector = Selector.open();
+            } catch (IOException e) {
+                throw new IllegalStateException("Cannot open a selector", e);
+            }
+            Thread t = new Thread(this, "client-io");
+            t.setDaemon(true);
+            t.start();
+        }
+
+        /**
+         * Runs a task on the I/O thread, which alone touches selection keys.
+         */
+        void execute(Runnable task) {
+            tasks.add(task);
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                try {
+                    selector.select();
+                    Runnable task;
+                    while ((task = tasks.poll()) != null) {
+                        task.run();
+                    }
+                    Iterator<SelectionKey> selected = selector.selectedKeys().iterator();
+                    while (selected.hasNext()) {
+                        SelectionKey ready = selected.next();
+                        selected.remove();
+                        ClientConnection connection = (ClientConnection) ready.attachment();
+                        try {
+                            if (ready.isConnectable()) {
+                                connection.finishConnect();
+                            }
+                            if (ready.isValid() && ready.isWritable()) {
+                                connection.writeReady();
+                            }
+                            if (ready.isValid() && ready.isReadable()) {
+                                connection.readReady(readBuffer);
+                            }
+                        } catch (IOException e) {
+                            connection.fail(e);
+                        } catch (CancelledKeyException e) {
+                            // Closed by another thread meanwhile.
+                        }
+                    }
+                } catch (Exception e) {
+                    logger.error("Error in client I/O loop", e);
+                }
+            }
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package Assign32starter;
 
+import Assign32starter.enums.GameType;
+import org.json.JSONArray;
 import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -7,8 +9,8 @@ import org.slf4j.LoggerFactory;
 import javax.swing.*;
 import java.awt.*;
 import java.io.*;
-import java.net.Socket;
-import java.util.Base64;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 
 /**
@@ -41,17 +43,18 @@ public class ClientGui implements Assign32starter.OutputPanel.EventHandlers {
     PicturePanel picPanel;
     OutputPanel outputPanel;
     String currentMess;
-    Socket sock;
-    OutputStream out;
-    ObjectOutputStream os;
-    BufferedReader bufferedReader;
+    // The game session; its requests complete off the event dispatch thread.
+    private final GameClient client;
     String host;
     int port;
     boolean registered = false; // Flag to check if the player is registered
-    private String sessionID = null;
     private String gameLength = "short"; // default game length
     private Timer gameTimer;
     private int remainingSeconds; // duration determined from the game length.
+    private long leaderboardVersion = -1; // version of the leaderboard shown in the Leaderboard tab
+    private PushConnection leaderboardConnection; // pushes changes while the Leaderboard tab is shown
+    private PushConnection roomConnection; // the multiplayer room joined from the Game menu, if any
+    private static final int LEADERBOARD_PAGE_SIZE = 25;
 
     /**
      * Constructs a ClientGui object, initializes the GUI components, establishes
@@ -66,6 +69,21 @@ public class ClientGui implements Assign32starter.OutputPanel.EventHandlers {
     public ClientGui(String host, int port) throws IOException, PicturePanel.InvalidCoordinateException {
         this.host = host;
         this.port = port;
+        this.client = new GameClient(host, port);
+        client.setListener(new GameClient.Listener() {
+            @Override
+            public void reconnecting(long backoffMillis) {
+                SwingUtilities.invokeLater(() -> outputPanel.appendOutput("Connection lost. Reconnecting in " + backoffMillis + " ms..."));
+            }
+
+            @Override
+            public void resumed(JSONObject resumed) {
+                SwingUtilities.invokeLater(() -> {
+                    registered = !resumed.optString("playerName", "").isEmpty();
+                    outputPanel.appendOutput(resumed.optString("value", "Reconnected."));
+                });
+            }
+        });
 
         frame = new JDialog();
         frame.setLayout(new BorderLayout());
@@ -106,13 +124,18 @@ public class ClientGui implements Assign32starter.OutputPanel.EventHandlers {
         // Create and add the leaderboard panel as the second tab.
         leaderboardPanel = new LeaderboardPanel();
         tabbedPane.addTab("Leaderboard", leaderboardPanel);
+        // Versions are per selection, so a new selection always fetches fresh data.
+        leaderboardPanel.setSelectionListener(() -> {
+            leaderboardVersion = -1;
+            subscribeLeaderboard();
+        });
 
-        // Add a ChangeListener so that when the leaderboard tab is selected,
-        // the client sends a request to update the leaderboard.
+        // While the leaderboard tab is shown, the server pushes changes to the selected view.
         tabbedPane.addChangeListener(e -> {
             if (tabbedPane.getSelectedComponent() == leaderboardPanel) {
-                // When the leaderboard tab is active, request updated data from the server.
-                submitCommand("leaderboard");
+                subscribeLeaderboard();
+            } else {
+                unsubscribeLeaderboard();
             }
         });
 
@@ -120,37 +143,23 @@ public class ClientGui implements Assign32starter.OutputPanel.EventHandlers {
         frame.add(tabbedPane, BorderLayout.CENTER);
 
 
-        open(); // opening server connection here
-        currentMess = "{'type': 'start'}"; // very initial start message for the connection
-        try {
-            os.writeObject(currentMess);
-            os.flush();
-        } catch (IOException e) {
-            logger.error("Error writing to output stream", e);
-        }
-
-        //Wait for the server to respond
+        // Connect and say hello in the background; the window is usable meanwhile.
+        show(client.startAsync(), this::showGreeting);
+    }
 
-        String string = this.bufferedReader.readLine();
-        logger.info("Server sent: " + string);
-        JSONObject response = new JSONObject(string);
+    /**
+     * Shows the server's greeting and welcome image. Runs on the event dispatch thread.
+     */
+    private void showGreeting(JSONObject response) {
         outputPanel.appendOutput(response.getString("value")); // putting the message in the outputpanel
-
-        // reading out the image (abstracted here as just a string)
-        logger.info("Pretend I got an image: " + response.getString("image"));
-        // Assuming the server sends sessionID along with the greeting.
-        if (response.has("sessionID")) {
-            sessionID = response.getString("sessionID");
-            logger.debug("Session ID: " + sessionID);
-        }
         // Decode and display the welcome image:
         if (response.has("image")) {
-            String imgBase64 = response.getString("image");
-            byte[] imageBytes = Base64.getDecoder().decode(imgBase64);
-            ByteArrayInputStream bais = new ByteArrayInputStream(imageBytes);
-            picPanel.insertImage(bais, 0, 0);
+            try {
+                picPanel.showImage(response.getString("image"), 0, 0);
+            } catch (Exception e) {
+                logger.error("Error showing the welcome image", e);
+            }
         }
-
     }
 
 
@@ -252,84 +261,77 @@ public class ClientGui implements Assign32starter.OutputPanel.EventHandlers {
     /**
      * Submit button handling
      * <p>
-     * Right now this method opens and closes the connection after every interaction, if you want to keep that or not is up to you.
+     * Builds the request for the typed command and queues it on the game connection. The response is
+     * shown when it arrives; the window stays responsive in the meantime.
      */
     @Override
     public void submitClicked() {
         try {
 
             String input = outputPanel.getInputText().trim();
-            JSONObject request = new JSONObject();
-            request.put("sessionID", sessionID);
 
+            // While in a multiplayer room, guesses go to the room.
+            if (roomConnection != null && !roomConnection.isClosed() && input.toLowerCase().startsWith("guess:")) {
+                JSONObject guess = new JSONObject();
+                guess.put("type", "room");
+                guess.put("command", "guess");
+                guess.put("guess", input.substring(6).trim());
+                roomConnection.send(guess);
+                return;
+            }
+
+            CompletableFuture<JSONObject> response;
             // Use the state flag to decide if it's registration or game command.
             if (!registered) {
                 // First input is assumed to be the player's name.
-                request.put("type", "name");
-                request.put("value", input);
-                // Send the registration request.
-                os.writeObject(request.toString());
-                os.flush();
-
-                // Wait for the response.
-                String responseStr = bufferedReader.readLine();
-                if (responseStr == null) {
-                    outputPanel.appendOutput("Error: No response received from server during registration.");
-                    logger.error("Received null response during registration. SessionID: " + sessionID);
-                    close();
-                    return;
-                }
-                JSONObject response = new JSONObject(responseStr);
-
-                // Display the greeting.
-                outputPanel.appendOutput(response.getString("value"));
+                // Further input is a game command, even before the greeting arrives.
                 registered = true;
+                show(client.nameAsync(input), greeting -> outputPanel.appendOutput(greeting.getString("value")));
+                return;
             } else if (input.equalsIgnoreCase("play")) {
                 // Start or restart the game.
-                request.put("type", "gameStart");
-                request.put("gameLength", gameLength);  // New field added here
-            } else {
+                response = client.playAsync(GameType.valueOf(gameLength.toUpperCase()));
+            } else if (input.toLowerCase().startsWith("guess:")) {
                 // Process in-game commands.
-                request.put("type", "game");
-                if (input.toLowerCase().startsWith("guess:")) {
-                    request.put("command", "guess");
-                    String answer = input.substring(6).trim();
-                    if (answer.isEmpty() || answer.isBlank()) {
-                        answer = "test"; // Default answer if empty
-                    }
-                    request.put("guess", answer);
-                } else if (input.equalsIgnoreCase("next")) {
-                    request.put("command", "next");
-                } else if (input.equalsIgnoreCase("skip")) {
-                    request.put("command", "skip");
-                } else if (input.equalsIgnoreCase("remaining")) {
-                    request.put("command", "remaining");
-                } else if (input.equalsIgnoreCase("leaderboard")) {
-                    request.put("command", "leaderboard");
-                } else if (input.equalsIgnoreCase("quit")) {
-                    request.put("command", "quit");
-                } else if (input.equalsIgnoreCase("help")) {
-                    outputPanel.appendOutput("Available commands: 'guess: [your answer]', 'next', 'skip', 'remaining', 'quit'.");
-                    return;
-                } else {
-                    outputPanel.appendOutput("Unknown command. Try 'guess: [your answer]', 'next', 'skip', 'remaining', 'quit'.");
-                    return;
+                String answer = input.substring(6).trim();
+                if (answer.isEmpty() || answer.isBlank()) {
+                    answer = "test"; // Default answer if empty
                 }
+                response = client.guessAsync(answer);
+            } else if (input.equalsIgnoreCase("next")) {
+                response = client.nextAsync();
+            } else if (input.equalsIgnoreCase("skip")) {
+                response = client.skipAsync();
+            } else if (input.equalsIgnoreCase("remaining")) {
+                response = client.remainingAsync();
+            } else if (input.equalsIgnoreCase("leaderboard")) {
+                response = client.leaderboardAsync(leaderboardPanel.getSelectedGameType(),
+                        leaderboardPanel.getSelectedWindow(), LEADERBOARD_PAGE_SIZE, leaderboardVersion);
+            } else if (input.equalsIgnoreCase("quit")) {
+                response = client.quitAsync();
+            } else if (input.equalsIgnoreCase("help")) {
+                outputPanel.appendOutput("Available commands: 'guess: [your answer]', 'next', 'skip', 'remaining', 'quit'.");
+                return;
+            } else {
+                outputPanel.appendOutput("Unknown command. Try 'guess: [your answer]', 'next', 'skip', 'remaining', 'quit'.");
+                return;
             }
 
-            // Send the request to the server:
-            os.writeObject(request.toString());
-            os.flush();
+            show(response, this::showResponse);
+        } catch (Exception e) {
+            outputPanel.appendOutput("Error: " + e.getMessage());
+            logger.error("Error occurred during submit button handling", e);
+        }
+    }
 
-            // Wait for response from server:
-            String responseStr = bufferedReader.readLine();
-            if (responseStr == null) {
-                outputPanel.appendOutput("Error: No response received from server.");
-                logger.error("Received null response from server for sessionID: " + sessionID);
-                return;
+    /**
+     * Shows the response to a game command. Runs on the event dispatch thread.
+     */
+    private void showResponse(JSONObject response) {
+        try {
+            if (response.optBoolean("responseLost", false)) {
+                outputPanel.appendOutput("Your last command went through, but its reply was lost in the reconnect.");
             }
-            JSONObject response = new JSONObject(responseStr);
-
             // Display the main greeting or message from the server:
             if (response.has("value")) {
                 outputPanel.appendOutput(response.getString("value"));
@@ -337,13 +339,9 @@ public class ClientGui implements Assign32starter.OutputPanel.EventHandlers {
                 outputPanel.appendOutput(response.getString("message"));
             }
 
-            // If there's an image in the response, decode and display it:
+            // If there's an image in the response, display it; it is decoded in the background.
             if (response.has("image")) {
-                String imgBase64 = response.getString("image");
-                byte[] imageBytes = Base64.getDecoder().decode(imgBase64);
-                ByteArrayInputStream bais = new ByteArrayInputStream(imageBytes);
-                this.newGame(1);
-                picPanel.insertImage(bais, 0, 0);
+                picPanel.showImage(response.getString("image"), 0, 0);
             }
 
             // Optional: handle additional response content.
@@ -361,9 +359,27 @@ public class ClientGui implements Assign32starter.OutputPanel.EventHandlers {
                 outputPanel.appendOutput("Final Score: " + String.format("%.2f", finalScore));
             }
             if (response.optString("type", "").equals("leaderboard")) {
-                String lbText = response.getString("leaderboard");
-                leaderboardPanel.updateLeaderboard(lbText);
-                outputPanel.appendOutput("Leaderboard updated.");
+                if (response.optBoolean("notModified", false)) {
+                    outputPanel.appendOutput("Leaderboard is up to date.");
+                } else {
+                    if (response.has("entries")) {
+                        leaderboardPanel.showEntries("Top " + LEADERBOARD_PAGE_SIZE + " (" + leaderboardPanel.getSelectionLabel() + ")",
+                                response.getJSONArray("entries"),
+                                response.optInt("total", -1));
+                    } else {
+                        leaderboardPanel.updateLeaderboard(response.getString("leaderboard"));
+                    }
+                    leaderboardVersion = response.optLong("version", -1);
+                    outputPanel.appendOutput("Leaderboard updated.");
+                }
+            }
+            if (response.has("leaderboardWindow")) {
+                if (response.has("rank")) {
+                    outputPanel.appendOutput("Your rank: " + response.getInt("rank"));
+                }
+                leaderboardPanel.showEntries("Around you", response.getJSONArray("leaderboardWindow"), -1);
+                // The panel no longer shows the top view, so the next tab switch must fetch it again.
+                leaderboardVersion = -1;
             }
 
 
@@ -391,39 +407,36 @@ public class ClientGui implements Assign32starter.OutputPanel.EventHandlers {
         }
     }
 
-    public void open() throws IOException {
-        this.sock = new Socket(host, port); // connect to host and socket
-
-        // get output channel
-        this.out = sock.getOutputStream();
-        // create an object output writer (Java only)
-        this.os = new ObjectOutputStream(out);
-        this.bufferedReader = new BufferedReader(new InputStreamReader(sock.getInputStream()));
-
+    /**
+     * Hands the response to a game command to the given handler on the event dispatch thread.
+     *
+     * @param response   the pending response
+     * @param onResponse shows the response
+     */
+    private void show(CompletableFuture<JSONObject> response, Consumer<JSONObject> onResponse) {
+        response.whenComplete((result, e) -> SwingUtilities.invokeLater(() -> {
+            if (e != null) {
+                outputPanel.appendOutput("Error: No response received from server.");
+                logger.error("No response from server for sessionID: {}", client.getSessionID(), e);
+                return;
+            }
+            try {
+                onResponse.accept(result);
+            } catch (Exception ex) {
+                outputPanel.appendOutput("Error: " + ex.getMessage());
+                logger.error("Error showing response", ex);
+            }
+        }));
     }
 
     /**
-     * Closes resources associated with the ClientGui, including the output stream,
-     * buffered reader, and socket. If an error occurs during the closing of any resource,
-     * it is logged without re-throwing the exception to ensure that the method completes
-     * execution for all resources.
+     * Closes the connections of the ClientGui: the leaderboard subscription, the room connection and
+     * the game connection. Requests still waiting for a response fail.
      */
     public void close() {
-        try {
-            if (out != null) out.close();
-        } catch (IOException e) {
-            logger.error("Error closing output stream", e);
-        }
-        try {
-            if (bufferedReader != null) bufferedReader.close();
-        } catch (IOException e) {
-            logger.error("Error closing buffered reader", e);
-        }
-        try {
-            if (sock != null) sock.close();
-        } catch (IOException e) {
-            logger.error("Error closing socket", e);
-        }
+        unsubscribeLeaderboard();
+        leaveRoom();
+        client.close();
     }
 
     /**
@@ -449,9 +462,9 @@ public class ClientGui implements Assign32starter.OutputPanel.EventHandlers {
         JMenu sessionMenu = new JMenu("Session");
         JMenuItem sessionInfo = new JMenuItem("Session Info");
         sessionInfo.addActionListener(e -> {
-            String info = "Session ID: " + (sessionID != null ? sessionID : "None") + "\n" +
+            String info = "Session ID: " + (client.getSessionID() != null ? client.getSessionID() : "None") + "\n" +
                     "Player: " + (registered ? outputPanel.getInputText() : "Not registered") + "\n" +
-                    "Connected: " + (sock != null && sock.isConnected());
+                    "Connected: " + client.isConnected();
             JOptionPane.showMessageDialog(frame, info, "Session Info", JOptionPane.INFORMATION_MESSAGE);
         });
         sessionMenu.add(sessionInfo);
@@ -499,6 +512,31 @@ public class ClientGui implements Assign32starter.OutputPanel.EventHandlers {
         });
         gameMenu.add(startGame);
 
+        // Multiplayer rooms: everyone in a room races to guess the same movie.
+        JMenuItem joinRoom = new JMenuItem("Join Room");
+        joinRoom.addActionListener(e -> {
+            String room = JOptionPane.showInputDialog(frame, "Room name:", "Join Room", JOptionPane.QUESTION_MESSAGE);
+            if (room == null || room.isBlank()) {
+                return;
+            }
+            String[] roles = {"Player", "Spectator"};
+            String role = (String) JOptionPane.showInputDialog(frame, "Join as:", "Join Room",
+                    JOptionPane.QUESTION_MESSAGE, null, roles, roles[0]);
+            if (role != null) {
+                joinRoom(room.trim(), role.toLowerCase());
+            }
+        });
+        gameMenu.add(joinRoom);
+        JMenuItem findMatch = new JMenuItem("Find Match");
+        findMatch.addActionListener(e -> findMatch());
+        gameMenu.add(findMatch);
+        JMenuItem leaveRoom = new JMenuItem("Leave Room");
+        leaveRoom.addActionListener(e -> {
+            leaveRoom();
+            outputPanel.appendOutput("You left the room.");
+        });
+        gameMenu.add(leaveRoom);
+
         // Quit game option.
         JMenuItem quitGame = new JMenuItem("Quit");
         quitGame.addActionListener(e -> submitCommand("quit"));
@@ -520,6 +558,140 @@ public class ClientGui implements Assign32starter.OutputPanel.EventHandlers {
         submitClicked(); // Use the existing submission logic.
     }
 
+    /**
+     * Subscribes to the top of the leaderboard selected in the Leaderboard tab, replacing any previous
+     * subscription. The first update fills the panel; later ones only change what moved.
+     */
+    private void subscribeLeaderboard() {
+        unsubscribeLeaderboard();
+        JSONObject request = new JSONObject();
+        request.put("type", "subscribe");
+        request.put("view", "top");
+        request.put("n", LEADERBOARD_PAGE_SIZE);
+        request.put("window", leaderboardPanel.getSelectedWindow().getValue());
+        request.put("gameType", leaderboardPanel.getSelectedGameType().name().toLowerCase());
+        String title = "Top " + LEADERBOARD_PAGE_SIZE + " (" + leaderboardPanel.getSelectionLabel() + ")";
+        leaderboardPanel.showEntries(title, new JSONArray(), -1);
+        try {
+            leaderboardConnection = new PushConnection(client.getHost(), client.getPort(), request, update -> {
+                if (update.optString("type").equals("leaderboardUpdate")) {
+                    SwingUtilities.invokeLater(() -> leaderboardPanel.applyUpdate(title, update));
+                }
+            });
+        } catch (IOException e) {
+            logger.warn("Could not subscribe to the leaderboard, fetching it once instead", e);
+            submitCommand("leaderboard");
+        }
+    }
+
+    /**
+     * Joins a multiplayer room on a separate connection. Room images and results arrive as they are
+     * broadcast; "guess:" input goes to the room until it is left.
+     *
+     * @param room the room name
+     * @param role "player" or "spectator"
+     */
+    private void joinRoom(String room, String role) {
+        leaveRoom();
+        JSONObject request = new JSONObject();
+        request.put("type", "room");
+        request.put("command", "join");
+        request.put("room", room);
+        request.put("role", role);
+        request.put("gameLength", gameLength);
+        if (client.getSessionID() != null) {
+            request.put("sessionID", client.getSessionID());
+        }
+        try {
+            roomConnection = new PushConnection(client.getHost(), client.getPort(), request,
+                    message -> SwingUtilities.invokeLater(() -> showRoomMessage(message)));
+            outputPanel.appendOutput("Joining room " + room + " as " + role + "...");
+        } catch (IOException e) {
+            outputPanel.appendOutput("Could not join room " + room + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Queues for a head-to-head match of the current game length on the room connection. Once matched,
+     * the connection is a player in the match's room, and the match plays like any room.
+     */
+    private void findMatch() {
+        leaveRoom();
+        JSONObject request = new JSONObject();
+        request.put("type", "queue");
+        request.put("command", "join");
+        request.put("gameLength", gameLength);
+        if (client.getSessionID() != null) {
+            request.put("sessionID", client.getSessionID());
+        }
+        try {
+            roomConnection = new PushConnection(client.getHost(), client.getPort(), request,
+                    message -> SwingUtilities.invokeLater(() -> showRoomMessage(message)));
+            outputPanel.appendOutput("Looking for an opponent...");
+        } catch (IOException e) {
+            outputPanel.appendOutput("Could not join the matchmaking queue: " + e.getMessage());
+        }
+    }
+
+    private void leaveRoom() {
+        if (roomConnection != null) {
+            roomConnection.close();
+            roomConnection = null;
+        }
+    }
+
+    /**
+     * Shows a message from the room connection. Runs on the event dispatch thread.
+     */
+    private void showRoomMessage(JSONObject message) {
+        try {
+            switch (message.optString("type")) {
+                case "roomImage":
+                    picPanel.showImage(message.getString("image"), 0, 0);
+                    outputPanel.appendOutput("Round " + message.getInt("round") + ", image " + message.getInt("imageVersion") + ".");
+                    break;
+                case "roomRound":
+                    outputPanel.appendOutput(message.has("winner")
+                            ? message.getString("winner") + " won round " + message.getInt("round") + " (" + message.getString("answer") + ")."
+                            : "Nobody got round " + message.getInt("round") + ". It was " + message.getString("answer") + ".");
+                    break;
+                case "roomJoined":
+                    outputPanel.appendOutput(message.getString("player") + " joined as " + message.getString("role")
+                            + " (" + message.getInt("members") + " in room).");
+                    break;
+                case "queue":
+                    if (message.optBoolean("ok") && message.optString("command").equals("join")) {
+                        outputPanel.appendOutput("Queued with " + message.getInt("depth") + " player(s) waiting.");
+                    } else if (message.has("message")) {
+                        outputPanel.appendOutput(message.getString("message"));
+                    }
+                    break;
+                case "matched":
+                    outputPanel.appendOutput("Matched after " + message.getLong("waitMillis") / 1000 + "s with "
+                            + (message.getJSONArray("players").length() - 1) + " other player(s) in " + message.getString("room")
+                            + ". Type guess: <title> to play.");
+                    break;
+                case "roomLeft":
+                    outputPanel.appendOutput(message.getString("player") + " left (" + message.getInt("members") + " in room).");
+                    break;
+                default:
+                    if (message.has("message")) {
+                        outputPanel.appendOutput(message.getString("message"));
+                    }
+                    break;
+            }
+        } catch (Exception e) {
+            logger.error("Error showing room message", e);
+        }
+    }
+
+    private void unsubscribeLeaderboard() {
+        if (leaderboardConnection != null) {
+            leaderboardConnection.close();
+            leaderboardConnection = null;
+        }
+    }
+
     private void startGameTimer(int durationSeconds) {
         remainingSeconds = durationSeconds;
         // Update the timerLabel immediately.
@@ -2,6 +2,7 @@ package Assign32starter;
 
 import Assign32starter.entity.GameState;
 import Assign32starter.enums.GameType;
+import Assign32starter.enums.LeaderboardWindow;
 import Assign32starter.enums.States;
 import org.json.JSONObject;
 import org.slf4j.Logger;
@@ -9,8 +10,8 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.io.ObjectInputStream;
-import java.io.PrintWriter;
 import java.net.Socket;
+import java.util.function.Function;
 
 /**
  * This class is responsible for handling client connections in a server application.
@@ -31,21 +32,40 @@ import java.net.Socket;
  * the user, and managing game-specific actions.
  * - Supports JSON as the primary format for both requests and responses.
  * Thread-Safety:
- * - Each ClientHandler instance handles a single client and uses a dedicated
- * GameState object, ensuring thread isolation for client-specific data.
+ * - A ClientHandler binds once to the live {@link GameSession} of its client and mutates that
+ * session's GameState in place. Requests are executed on the session's mailbox, so several
+ * connections sharing a session are serialized without a global lock.
  * Usage:
  * - Initialize the ClientHandler with a client socket when a new client connects.
  * - Execute the `run` method (usually by submitting the instance to a thread executor).
  */
 public class ClientHandler implements Runnable {
     private static final Logger logger = LoggerFactory.getLogger(ClientHandler.class);
+    // Neighbours on each side of the player in rank windows, and the default page size of leaderboard views.
+    private static final int RANK_WINDOW_RADIUS = 2;
+    private static final int DEFAULT_PAGE_SIZE = 20;
     private final Socket clientSocket;
-    // Each handler gets its own GameState object.
-    private final GameState gameState;
+    // The live state of the bound session; only touched from inside the session's mailbox (see readSession).
+    // Before a session is bound, and in token mode, it is this handler's own unshared state.
+    private GameState gameState;
+    // Session this connection is bound to, removed from the SessionManager when the connection ends.
+    private GameSession session;
+    private String sessionId;
+    // The connection's writer, and the leaderboard subscription pushing to it, if any.
+    private FrameWriter out;
+    private LeaderboardSubscriptions.Subscription subscription;
+    // This connection's place in a multiplayer room, if it joined one; set by the matchmaker thread for a match.
+    private volatile GameRoom.Member roomMember;
+    // This connection's matchmaking ticket while it waits for a match.
+    private Matchmaker.Ticket queueTicket;
+    // The next movie, chosen and prepared while the current one is played; only touched like gameState.
+    private ImagePrefetcher.Prefetch prefetch;
+    // Whether the client accepts prefetched images pushed ahead of the responses that use them.
+    private volatile boolean acceptsPrefetch = false;
 
     public ClientHandler(Socket clientSocket) {
         this.clientSocket = clientSocket;
-        // Initialize a new GameState for this client session.
+        // Until a session is bound, the handler works on a fresh, unshared GameState.
         this.gameState = new GameState();
     }
 
@@ -68,10 +88,11 @@ public class ClientHandler implements Runnable {
     public void run() {
         logger.info("ClientHandler started for client: {}", clientSocket.getRemoteSocketAddress());
         try (ObjectInputStream in = new ObjectInputStream(clientSocket.getInputStream());
-             PrintWriter out = new PrintWriter(clientSocket.getOutputStream(), true)) {
+             FrameWriter out = new FrameWriter(clientSocket)) {
+            this.out = out;
 
             // Continue reading requests until the game is over or the connection is terminated.
-            while (!gameState.getGameStage().equals(States.GAME_OVER)) {
+            while (!isGameOver()) {
                 String input;
                 try {
                     input = (String) in.readObject();
@@ -89,8 +110,7 @@ public class ClientHandler implements Runnable {
                 JSONObject response = processRequest(requestJson);
 
                 // Send the response back to the client:
-                out.println(response);
-                out.flush();
+                out.send(response);
                 logger.info("Response sent to client {}: {}", clientSocket.getRemoteSocketAddress(), response);
 
                 // If the response type indicates the session is over (e.g., for a "quit" command), break.
@@ -101,6 +121,24 @@ public class ClientHandler implements Runnable {
         } catch (Exception e) {
             logger.error("Error processing client {}: {}", clientSocket.getRemoteSocketAddress(), e.getMessage(), e);
         } finally {
+            if (subscription != null) {
+                LeaderboardSubscriptions.remove(subscription);
+            }
+            if (queueTicket != null) {
+                queueTicket.cancel();
+            }
+            if (roomMember != null) {
+                roomMember.leave();
+            }
+            dropPrefetch();
+            // A finished session is released right away. An unfinished one stays available for a
+            // "resume" after a dropped connection, until its idle TTL expires.
+            if (session != null) {
+                session.detach();
+                if (isGameOver()) {
+                    SessionManager.removeSession(sessionId);
+                }
+            }
             try {
                 clientSocket.close();
             } catch (IOException e) {
@@ -110,7 +148,9 @@ public class ClientHandler implements Runnable {
     }
 
     /**
-     * Processes the JSON request and uses the handler's gameState instance.
+     * Processes the JSON request. Every request except "start" must carry the sessionID of a live
+     * session; the handler binds to that session the first time it sees it and then runs the request
+     * on the session's mailbox, applying changes directly to the shared GameState.
      */
     private JSONObject processRequest(JSONObject requestJson) {
         JSONObject response = new JSONObject();
@@ -121,232 +161,750 @@ public class ClientHandler implements Runnable {
             }
             String requestType = requestJson.getString("type");
             logger.debug("Processing request type: {}", requestType);
+            if (requestJson.optBoolean("prefetch", false)) {
+                acceptsPrefetch = true;
+            }
 
             // For most requests (other than registration), a sessionID is required.
             // Here we assume the "name" request is for registration and does not include a sessionID.
-            if (!requestType.equals("start")) {
-                if (!requestJson.has("sessionID")) {
-                    response.put("type", "error");
-                    response.put("ok", false);
-                    response.put("message", "Missing sessionID. Please log in again.");
-                    return response;
-                }
-                String sessionID = requestJson.getString("sessionID");
-                // Retrieve the persistent GameState.
-                GameState state = SessionManager.getSession(sessionID);
-                if (state == null) {
+            if (requestType.equals("start")) {
+                return handleRequest(requestType, requestJson);
+            }
+            if (requestType.equals("cluster")) {
+                return ClusterManager.handle(requestJson);
+            }
+            if (requestType.equals("subscribe")) {
+                return subscribe(requestJson);
+            }
+            if (requestType.equals("room")) {
+                return room(requestJson);
+            }
+            if (requestType.equals("queue")) {
+                return queue(requestJson);
+            }
+            if (requestType.equals("stats")) {
+                response.put("type", "stats");
+                response.put("ok", true);
+                response.put("prefetch", ImagePrefetcher.stats());
+                return response;
+            }
+            if (!requestJson.has("sessionID")) {
+                response.put("type", "error");
+                response.put("ok", false);
+                response.put("message", "Missing sessionID. Please log in again.");
+                return response;
+            }
+            String sessionID = requestJson.getString("sessionID");
+            if (SessionTokens.isEnabled()) {
+                return processWithToken(requestType, requestJson, sessionID);
+            }
+            // Retrieve the persistent session.
+            GameSession live = SessionManager.getSession(sessionID);
+            if (live == null && !ClusterManager.isLocal(sessionID)) {
+                return ClusterManager.redirect(sessionID, ClusterManager.ownerOf(sessionID));
+            }
+            if (live == null) {
+                response.put("type", "error");
+                response.put("ok", false);
+                response.put("message", "Invalid session. Please log in again.");
+                return response;
+            }
+            // Bind to the live session once; later requests reuse the same GameState without copying.
+            if (live != this.session) {
+                live = SessionManager.attachSession(sessionID);
+                if (live == null) {
                     response.put("type", "error");
                     response.put("ok", false);
                     response.put("message", "Invalid session. Please log in again.");
                     return response;
                 }
-                // Replace the local gameState with the persistent one.
-                // For subsequent processing, use "state" to refer to the current game state.
-                this.gameState.copyFrom(state);
+                bind(live);
             }
+            // Clients number their requests so that, after a reconnect, they know which ones were applied.
+            long seq = requestJson.optLong("seq", 0);
+            GameSession bound = live;
+            return live.call(() -> {
+                // The session may have been handed over to another node while this request was queued.
+                if (bound.movedTo != null) {
+                    return ClusterManager.redirect(sessionID, bound.movedTo);
+                }
+                JSONObject result = handleRequest(requestType, requestJson);
+                if (seq > bound.lastSeq) {
+                    bound.lastSeq = seq;
+                }
+                return result;
+            });
+        } catch (Exception e) {
+            logger.error("Processing error: {}", e.getMessage(), e);
+            response.put("type", "error");
+            response.put("ok", false);
+            response.put("message", "Processing error: " + e.getMessage());
+        }
+        return response;
+    }
 
-            // Process the request by type.
-            switch (requestType) {
-                case "start":
-                    // Initial handshake: request the player's name.
-                    response.put("type", "hello");
-                    response.put("ok", true);
-                    response.put("value", "Hello, please tell me your name.");
-                    // Create a new persistent session.
-                    String sessionId = SessionManager.createSession(this.gameState);
-                    response.put("sessionID", sessionId);
-                    SockServer.sendImg("img/hi.png", response); // Sends a welcome image.
-                    break;
+    /**
+     * Processes a request in stateless token mode: the sessionID is a signed token holding the whole
+     * game state. The request runs against the decoded state, and the response carries the next token
+     * unless the game is over. No server-side session is involved. Verifying the token uses it up, so a
+     * request that fails is answered with an error that still carries the next token, issued for the
+     * state as it was before the request.
+     */
+    private JSONObject processWithToken(String requestType, JSONObject requestJson, String token) throws Exception {
+        SessionTokens.Token verified;
+        try {
+            verified = SessionTokens.verify(token);
+        } catch (IllegalArgumentException e) {
+            JSONObject response = new JSONObject();
+            response.put("type", "error");
+            response.put("ok", false);
+            response.put("message", e.getMessage());
+            return response;
+        }
+        GameState before = new GameState();
+        before.copyFrom(verified.state);
+        this.gameState = verified.state;
+        JSONObject response;
+        try {
+            response = handleRequest(requestType, requestJson);
+        } catch (Exception e) {
+            logger.error("Processing error: {}", e.getMessage(), e);
+            verified.state.copyFrom(before);
+            this.gameState = verified.state;
+            response = new JSONObject();
+            response.put("type", "error");
+            response.put("ok", false);
+            response.put("message", "Processing error: " + e.getMessage());
+            response.put("sessionID", SessionTokens.issueNext(verified));
+            return response;
+        }
+        if (gameState.getGameStage() != States.GAME_OVER) {
+            response.put("sessionID", SessionTokens.issueNext(verified));
+        }
+        return response;
+    }
 
-                case "name":
-                    // The client has provided their name.
-                    String playerName = requestJson.getString("value");
-                    // Save the player's name in the GameState.
-                    gameState.setPlayerName(playerName);
-                    response.put("type", "greeting");
-                    response.put("ok", true);
-                    response.put("value", "Welcome " + playerName
-                            + "! Please type 'play' to start the game, or 'quit' to exit.");
-                    break;
+    /**
+     * Reads the game state the way the bound session requires: on its mailbox, like every other access.
+     * Without a bound session, the handler's own state is read directly.
+     *
+     * @param read what to read from the state
+     * @param <T>  the result type
+     * @return the value read
+     */
+    private <T> T readSession(Function<GameState, T> read) throws Exception {
+        GameSession bound = session;
+        return bound == null ? read.apply(gameState) : bound.call(() -> read.apply(bound.getState()));
+    }
 
-                case "gameStart":
-                    // Initialize game state for the session.
-                    logger.info("Initializing game for client {}", clientSocket.getRemoteSocketAddress());
-
-                    // Check if the client has specified a gameLength; default to "short" if not.
-                    String gameLength = requestJson.optString("gameLength", "short").toLowerCase();
-                    // Determine duration and skip count based on gameLength.
-                    int duration;
-                    GameType type;
-                    switch (gameLength) {
-                        case "medium":
-                            duration = 60;
-                            type = GameType.MEDIUM;
-                            break;
-                        case "long":
-                            duration = 90;
-                            type = GameType.LONG;
-                            break;
-                        case "short":
-                        default:
-                            duration = 30;
-                            type = GameType.SHORT;
-                            break;
-                    }
-                    // Set game duration and skip count.
-                    gameState.setGameDuration(duration);
-                    gameState.setSkipsRemaining(type.getValue());
-                    // Set game start time.
-                    gameState.setGameStartTime(System.currentTimeMillis());
-
-                    // Choose a random movie
-                    Movie selected = SockServer.chooseRandomMovie();
-                    // Update the game state with the randomly selected movie.
-                    gameState.setGameStage(States.IN_GAME_WITH_IMAGE);
-                    gameState.setCurrentMovie(selected.getMovieName());
-                    gameState.setCurrentAnswer(selected.getCorrectAnswer());
-                    gameState.setImageVersion(1);  // Start with the first image
-                    response.put("type", "game");
-                    response.put("command", "start");
-                    response.put("ok", true);
-                    response.put("message", "Game started (" + gameLength + " mode). Here is your movie image. Enter your guess, or type 'next', 'skip', or 'remaining'.");
-                    response.put("imageVersion", gameState.getImageVersion());
-                    response.put("skipsRemaining", gameState.getSkipsRemaining());
-                    response.put("gameDuration", duration);
-                    SockServer.sendImg("img/" + gameState.getCurrentMovie() + "1.png", response);
-                    break;
+    /**
+     * Returns whether this connection's game is over.
+     *
+     * @return true once the game has ended
+     */
+    private boolean isGameOver() {
+        try {
+            return readSession(GameState::getGameStage) == States.GAME_OVER;
+        } catch (Exception e) {
+            logger.warn("Could not read the game stage: {}", e.getMessage());
+            return false;
+        }
+    }
 
-                case "game":
-                    // Process in-game commands.
-                    // The request should include a "command" field.
-                    String command = requestJson.optString("command", "");
-                    switch (command) {
-                        case "guess":
-                            // Check if the game is still within the allowed duration.
-                            long elapsed = System.currentTimeMillis() - gameState.getGameStartTime();
-                            if (elapsed > gameState.getGameDuration() * 1000L) {
-                                response.put("ok", false);
-                                response.put("message", "Time is up! Game over.");
-                                // Optionally compute and send the score, update leaderboard, etc.
-                                double score = gameState.computeScore();
-                                response.put("finalScore", score);
-                                // Leaderboard update logic (see below)
-                                response.put("leaderboard", Leaderboard.getFormattedLeaderboard());
-                                gameState.setGameStage(States.GAME_OVER);
-                                break;
-                            }
-                            // Otherwise process the guess:
-                            String clientGuess = requestJson.getString("guess").trim();
-                            if (clientGuess.equalsIgnoreCase(gameState.getCurrentAnswer())) {
-                                gameState.incrementCorrectGuesses();
-                                response.put("ok", true);
-                                response.put("result", true);
-                                response.put("message", "Correct! Here comes your next movie.");
-                                gameState.incrementCorrectGuesses();
-                                // Update state with a new movie for demonstration.
-                                selected = SockServer.chooseRandomMovie();
-                                gameState.setImageVersion(1);
-                                gameState.setCurrentMovie(selected.getMovieName());
-                                gameState.setCurrentAnswer(selected.getCorrectAnswer());
-                                SockServer.sendImg("img/" + gameState.getCurrentMovie() + "1.png", response);
-                            } else {
-                                // Incorrect guess.
-                                response.put("ok", true);
-                                response.put("result", false);
-                                response.put("message", "Incorrect. Try again.");
-                                // Optionally, repeat the current question.
-                                response.put("question", "What is your guess for the current movie?");
-                            }
-                            break;
+    /**
+     * Binds this connection to the given, already attached session, so the handler operates on
+     * its live GameState. Any previously bound session is released.
+     *
+     * @param session the session to play on
+     */
+    private void bind(GameSession session) {
+        if (this.session != null) {
+            this.session.detach();
+        }
+        this.session = session;
+        this.sessionId = session.getId();
+        this.gameState = session.getState();
+    }
 
-                        case "next":
-                            if (gameState.getCurrentMovie() == null) {
-                                response.put("ok", false);
-                                response.put("message", "Game not started. Please type 'play' to start the game.");
-                            } else if (gameState.getImageVersion() < 4) {
-                                gameState.setImageVersion(gameState.getImageVersion() + 1);
-                                response.put("ok", true);
-                                response.put("message", "Providing a clearer image.");
-                                response.put("imageVersion", gameState.getImageVersion());
-                                String imgFile = "img/" + gameState.getCurrentMovie() + gameState.getImageVersion() + ".png";
-                                SockServer.sendImg(imgFile, response);
-                            } else {
-                                response.put("ok", false);
-                                response.put("message", "No more 'next' images available for this movie.");
-                            }
-                            break;
+    /**
+     * Executes a single request against the bound session's gameState.
+     * Apart from "start", this always runs on the session's mailbox.
+     */
+    private JSONObject handleRequest(String requestType, JSONObject requestJson) throws Exception {
+        JSONObject response = new JSONObject();
+        // Process the request by type.
+        switch (requestType) {
+            case "start":
+                // Initial handshake: request the player's name.
+                response.put("type", "hello");
+                response.put("ok", true);
+                response.put("value", "Hello, please tell me your name.");
+                if (SessionTokens.isEnabled()) {
+                    // Stateless mode: the whole session travels in the signed token.
+                    gameState = new GameState();
+                    response.put("sessionID", SessionTokens.issueNew(gameState));
+                } else {
+                    // Create a new persistent session and bind this connection to it.
+                    GameSession created = SessionManager.createSession(new GameState());
+                    created.attach();
+                    bind(created);
+                    response.put("sessionID", sessionId);
+                }
+                SockServer.sendImg("img/hi.png", response); // Sends a welcome image.
+                break;
 
-                        case "skip":
-                            if (gameState.getSkipsRemaining() > 0) {
-                                gameState.setSkipsRemaining(gameState.getSkipsRemaining() - 1);
-                                // Choose a new movie and reset the image version.
-                                selected = SockServer.chooseRandomMovie();
-                                gameState.setImageVersion(1);
-                                gameState.setCurrentMovie(selected.getMovieName());
-                                gameState.setCurrentAnswer(selected.getCorrectAnswer());
-                                response.put("ok", true);
-                                response.put("message", "Movie skipped. Here is your new movie image.");
-                                response.put("skipsRemaining", gameState.getSkipsRemaining());
-                                SockServer.sendImg("img/" + gameState.getCurrentMovie() + "1.png", response);
-                            } else {
-                                response.put("ok", false);
-                                response.put("message", "No skips remaining.");
-                            }
-                            break;
+            case "resume":
+                // Reconnect to an existing session without repeating start, name and the welcome image.
+                resume(requestJson, response);
+                break;
 
-                        case "remaining":
-                            // Return the number of skips remaining.
-                            response.put("ok", true);
-                            response.put("skipsRemaining", gameState.getSkipsRemaining());
-                            break;
+            case "name":
+                // The client has provided their name.
+                String playerName = requestJson.getString("value");
+                // Save the player's name in the GameState.
+                gameState.setPlayerName(playerName);
+                response.put("type", "greeting");
+                response.put("ok", true);
+                response.put("value", "Welcome " + playerName
+                        + "! Please type 'play' to start the game, or 'quit' to exit.");
+                break;
 
-                        case "quit":
-                            // End the game session.
-                            response.put("ok", true);
-                            response.put("command", "quit");
+            case "gameStart":
+                // Initialize game state for the session.
+                logger.info("Initializing game for client {}", clientSocket.getRemoteSocketAddress());
+
+                // Check if the client has specified a gameLength; default to "short" if not.
+                String gameLength = requestJson.optString("gameLength", "short").toLowerCase();
+                // Determine duration and skip count based on gameLength.
+                int duration;
+                GameType type;
+                switch (gameLength) {
+                    case "medium":
+                        duration = 60;
+                        type = GameType.MEDIUM;
+                        break;
+                    case "long":
+                        duration = 90;
+                        type = GameType.LONG;
+                        break;
+                    case "short":
+                    default:
+                        duration = 30;
+                        type = GameType.SHORT;
+                        break;
+                }
+                // Set game duration and skip count.
+                gameState.setGameDuration(duration);
+                gameState.setGameType(type);
+                gameState.setSkipsRemaining(type.getValue());
+                // Set game start time.
+                gameState.setGameStartTime(System.currentTimeMillis());
+
+                // Choose a random movie; a speculation left over from an earlier game is of no use.
+                dropPrefetch();
+                Movie selected = SockServer.chooseRandomMovie(type);
+                // Update the game state with the randomly selected movie.
+                gameState.setGameStage(States.IN_GAME_WITH_IMAGE);
+                gameState.setCurrentMovie(selected.getMovieName());
+                gameState.setCurrentAnswer(selected.getCorrectAnswer());
+                gameState.setImageVersion(1);  // Start with the first image
+                response.put("type", "game");
+                response.put("command", "start");
+                response.put("ok", true);
+                response.put("message", "Game started (" + gameLength + " mode). Here is your movie image. Enter your guess, or type 'next', 'skip', or 'remaining'.");
+                response.put("imageVersion", gameState.getImageVersion());
+                response.put("skipsRemaining", gameState.getSkipsRemaining());
+                response.put("gameDuration", duration);
+                SockServer.sendImg("img/" + gameState.getCurrentMovie() + "1.png", response);
+                speculate();
+                break;
+
+            case "game":
+                // Process in-game commands.
+                // The request should include a "command" field.
+                String command = requestJson.optString("command", "");
+                switch (command) {
+                    case "guess":
+                        // Check if the game is still within the allowed duration.
+                        long elapsed = System.currentTimeMillis() - gameState.getGameStartTime();
+                        if (elapsed > gameState.getGameDuration() * 1000L) {
+                            response.put("ok", false);
+                            response.put("message", "Time is up! Game over.");
+                            // Optionally compute and send the score, update leaderboard, etc.
                             double score = gameState.computeScore();
                             response.put("finalScore", score);
-                            // Create a unique key for the leaderboard using the player's name and IP address.
-                            String playerKey = gameState.getPlayerName() + "@" +
-                                    ((java.net.InetSocketAddress) clientSocket.getRemoteSocketAddress()).getAddress().getHostAddress();
-                            Leaderboard.updateScore(playerKey, score);
-                            response.put("leaderboard", Leaderboard.getFormattedLeaderboard());
-                            response.put("message", "Thank you for playing. Your score: " + String.format("%.2f", score));
+                            // Leaderboard update logic (see below)
+                            response.put("leaderboardWindow", Leaderboard.around(gameState.getGameType(), LeaderboardWindow.ALL_TIME, playerKey(), RANK_WINDOW_RADIUS));
                             gameState.setGameStage(States.GAME_OVER);
-                            // Optionally, remove the session.
-                            // SessionManager.removeSession(sessionID);
+                            dropPrefetch();
                             break;
-                        case "leaderboard":
-                            // Respond with persistent leaderboard information.
+                        }
+                        // Otherwise process the guess:
+                        String clientGuess = requestJson.getString("guess").trim();
+                        if (clientGuess.equalsIgnoreCase(gameState.getCurrentAnswer())) {
+                            gameState.incrementCorrectGuesses();
                             response.put("ok", true);
-                            response.put("type", "leaderboard");
-                            response.put("leaderboard", Leaderboard.getFormattedLeaderboard());
-                            break;
+                            response.put("result", true);
+                            response.put("message", "Correct! Here comes your next movie.");
+                            gameState.incrementCorrectGuesses();
+                            // Feed the solve level back into the movie weighting.
+                            SockServer.getMovieSelector().recordSolved(gameState.getCurrentMovie(), gameState.getImageVersion());
+                            // Move on to the next movie, prepared while this one was being guessed.
+                            nextMovie(response);
+                        } else {
+                            // Incorrect guess.
+                            response.put("ok", true);
+                            response.put("result", false);
+                            response.put("message", "Incorrect. Try again.");
+                            // Optionally, repeat the current question.
+                            response.put("question", "What is your guess for the current movie?");
+                        }
+                        break;
 
+                    case "next":
+                        if (gameState.getCurrentMovie() == null) {
+                            response.put("ok", false);
+                            response.put("message", "Game not started. Please type 'play' to start the game.");
+                        } else if (gameState.getImageVersion() < 4) {
+                            gameState.setImageVersion(gameState.getImageVersion() + 1);
+                            response.put("ok", true);
+                            response.put("message", "Providing a clearer image.");
+                            response.put("imageVersion", gameState.getImageVersion());
+                            String imgFile = "img/" + gameState.getCurrentMovie() + gameState.getImageVersion() + ".png";
+                            SockServer.sendImg(imgFile, response);
+                        } else {
+                            response.put("ok", false);
+                            response.put("message", "No more 'next' images available for this movie.");
+                        }
+                        break;
 
-                        default:
+                    case "skip":
+                        if (gameState.getSkipsRemaining() > 0) {
+                            gameState.setSkipsRemaining(gameState.getSkipsRemaining() - 1);
+                            SockServer.getMovieSelector().recordSkipped(gameState.getCurrentMovie());
+                            response.put("ok", true);
+                            response.put("message", "Movie skipped. Here is your new movie image.");
+                            response.put("skipsRemaining", gameState.getSkipsRemaining());
+                            // Move on to the next movie and reset the image version.
+                            nextMovie(response);
+                        } else {
                             response.put("ok", false);
-                            response.put("message", "Unknown game command: " + command);
+                            response.put("message", "No skips remaining.");
+                        }
+                        break;
+
+                    case "remaining":
+                        // Return the number of skips remaining.
+                        response.put("ok", true);
+                        response.put("skipsRemaining", gameState.getSkipsRemaining());
+                        break;
+
+                    case "quit":
+                        // End the game session.
+                        response.put("ok", true);
+                        response.put("command", "quit");
+                        double score = gameState.computeScore();
+                        response.put("finalScore", score);
+                        // Create a unique key for the leaderboard using the player's name and IP address.
+                        String playerKey = playerKey();
+                        GameType played = gameState.getGameType();
+                        int rank = Leaderboard.updateScore(played, playerKey, score);
+                        response.put("gameType", played.name().toLowerCase());
+                        // The score is applied in the background; the rank is what it will be once it is.
+                        response.put("rank", rank);
+                        response.put("provisional", true);
+                        // Only the player's neighbourhood, so the response size does not grow with the leaderboard.
+                        response.put("leaderboardWindow", Leaderboard.around(played, LeaderboardWindow.ALL_TIME, playerKey, RANK_WINDOW_RADIUS));
+                        response.put("message", "Thank you for playing. Your score: " + String.format("%.2f", score));
+                        gameState.setGameStage(States.GAME_OVER);
+                        dropPrefetch();
+                        SessionManager.removeSession(sessionId);
+                        break;
+                    case "leaderboard":
+                        // Respond with persistent leaderboard information, unless the client already has this version.
+                        response.put("ok", true);
+                        response.put("type", "leaderboard");
+                        GameType partition = leaderboardPartition(requestJson, gameState.getGameType());
+                        LeaderboardWindow window = LeaderboardWindow.fromValue(requestJson.optString("window", ""));
+                        long version = Leaderboard.getVersion(partition, window);
+                        response.put("gameType", partition.name().toLowerCase());
+                        response.put("window", window.getValue());
+                        response.put("version", version);
+                        if (requestJson.optLong("version", -1) == version) {
+                            response.put("notModified", true);
                             break;
-                    }
+                        }
+                        String view = requestJson.optString("view", "");
+                        switch (view) {
+                            case "top":
+                                response.put("entries", Leaderboard.top(partition, window, requestJson.optInt("n", DEFAULT_PAGE_SIZE)));
+                                break;
+                            case "page":
+                                response.put("entries", Leaderboard.page(partition, window, requestJson.optInt("offset", 0),
+                                        requestJson.optInt("limit", DEFAULT_PAGE_SIZE)));
+                                break;
+                            case "around":
+                                response.put("entries", Leaderboard.around(partition, window, playerKey(),
+                                        requestJson.optInt("radius", RANK_WINDOW_RADIUS)));
+                                break;
+                            default:
+                                if (window == LeaderboardWindow.ALL_TIME) {
+                                    // Older clients get the whole leaderboard as text.
+                                    response.put("leaderboard", Leaderboard.getFormattedLeaderboard(partition));
+                                } else {
+                                    view = "top";
+                                    response.put("entries", Leaderboard.top(partition, window, DEFAULT_PAGE_SIZE));
+                                }
+                                break;
+                        }
+                        if (response.has("entries")) {
+                            response.put("view", view);
+                            response.put("total", Leaderboard.size(partition, window));
+                        }
+                        break;
+
+
+                    default:
+                        response.put("ok", false);
+                        response.put("message", "Unknown game command: " + command);
+                        break;
+                }
+                // Keep a more specific type (such as "leaderboard") set by the command.
+                if (!response.has("type")) {
                     response.put("type", "game");
+                }
+                break;
+
+            default:
+                response.put("type", "error");
+                response.put("ok", false);
+                response.put("message", "Unknown request type: " + requestType);
+                logger.warn("Unknown request type received: {}", requestType);
+                break;
+        }
+        return response;
+    }
+
+    /**
+     * Starts the next round of the current game with its first image. The movie prepared by the last
+     * speculation is used if there is one for this game length; otherwise one is chosen and read now.
+     * The round after this one is then speculated on.
+     *
+     * @param response the response to put the image, or a reference to the pushed image, in
+     */
+    private void nextMovie(JSONObject response) throws Exception {
+        ImagePrefetcher.Prefetch next = prefetch;
+        prefetch = null;
+        if (next != null && !next.fits(gameState.getGameType())) {
+            next.discard();
+            next = null;
+        }
+        if (next == null) {
+            ImagePrefetcher.recordMiss();
+        }
+        Movie selected = next != null ? next.getMovie() : SockServer.chooseRandomMovie(gameState.getGameType());
+        gameState.setImageVersion(1);
+        gameState.setCurrentMovie(selected.getMovieName());
+        gameState.setCurrentAnswer(selected.getCorrectAnswer());
+        if (next != null) {
+            next.apply(response);
+        } else {
+            SockServer.sendImg("img/" + gameState.getCurrentMovie() + "1.png", response);
+        }
+        speculate();
+    }
+
+    /**
+     * Chooses the next movie of the current game in advance and prepares its image, pushing it to the
+     * client if the client accepts that.
+     */
+    private void speculate() {
+        dropPrefetch();
+        prefetch = ImagePrefetcher.speculate(gameState.getGameType(), acceptsPrefetch ? out : null);
+    }
+
+    private void dropPrefetch() {
+        if (prefetch != null) {
+            prefetch.discard();
+            prefetch = null;
+        }
+    }
+
+    /**
+     * Turns this connection into a leaderboard subscription. Leaderboards are public, so no session
+     * is needed; an "around" view is centred on the given player name at this connection's address.
+     * From now on the connection receives "leaderboardUpdate" messages, starting with the whole view.
+     *
+     * @param requestJson the subscribe request
+     * @return the acknowledgement
+     */
+    private JSONObject subscribe(JSONObject requestJson) throws Exception {
+        JSONObject response = new JSONObject();
+        response.put("type", "subscribed");
+        String view = requestJson.optString("view", "top");
+        if (!view.equals("top") && !view.equals("around")) {
+            response.put("ok", false);
+            response.put("message", "Unknown leaderboard view: " + view);
+            return response;
+        }
+        if (subscription != null) {
+            LeaderboardSubscriptions.remove(subscription);
+        }
+        GameType partition = leaderboardPartition(requestJson, readSession(GameState::getGameType));
+        LeaderboardWindow window = LeaderboardWindow.fromValue(requestJson.optString("window", ""));
+        int size = view.equals("top")
+                ? Math.min(requestJson.optInt("n", DEFAULT_PAGE_SIZE), Leaderboard.MAX_PAGE_SIZE)
+                : Math.min(requestJson.optInt("radius", RANK_WINDOW_RADIUS), Leaderboard.MAX_PAGE_SIZE / 2);
+        String player = requestJson.optString("player", readSession(GameState::getPlayerName));
+        subscription = new LeaderboardSubscriptions.Subscription(partition, window, view, size, playerKey(player), out);
+        LeaderboardSubscriptions.add(subscription);
+        response.put("ok", true);
+        response.put("gameType", partition.name().toLowerCase());
+        response.put("window", window.getValue());
+        response.put("view", view);
+        return response;
+    }
+
+    /**
+     * Handles a multiplayer room request: "join", "guess" or "leave". A player joins under the name of
+     * their session (see {@link #sessionPlayerName(JSONObject)}); spectators need none. Once joined, the
+     * connection receives the room's broadcasts between the responses to its own requests.
+     *
+     * @param requestJson the room request
+     * @return the response
+     */
+    private JSONObject room(JSONObject requestJson) throws Exception {
+        JSONObject response = new JSONObject();
+        response.put("type", "room");
+        String command = requestJson.optString("command", "");
+        response.put("command", command);
+        switch (command) {
+            case "join":
+                String roomName = requestJson.getString("room");
+                boolean player = !requestJson.optString("role", "player").equals("spectator");
+                String name = sessionPlayerName(requestJson);
+                if (player && name == null) {
+                    response.put("ok", false);
+                    response.put("message", "Players need a session. Send the sessionID of your game.");
+                    break;
+                }
+                // After cancel() the matchmaker has either placed this connection already, so it is
+                // left below, or never will.
+                if (queueTicket != null) {
+                    queueTicket.cancel();
+                    queueTicket = null;
+                }
+                if (roomMember != null) {
+                    roomMember.leave();
+                }
+                roomMember = RoomManager.join(roomName, gameLength(requestJson),
+                        name != null ? playerKey(name) : "spectator", player, out);
+                response.put("ok", true);
+                response.put("room", roomName);
+                response.put("role", player ? "player" : "spectator");
+                break;
+            case "guess":
+                if (roomMember == null) {
+                    response.put("ok", false);
+                    response.put("message", "Join a room first.");
                     break;
+                }
+                boolean won = roomMember.guess(requestJson.optString("guess", ""));
+                response.put("ok", true);
+                response.put("result", won);
+                response.put("message", won ? "Correct! You win this round." : "Not it. Keep guessing.");
+                break;
+            case "leave":
+                if (roomMember != null) {
+                    roomMember.leave();
+                    roomMember = null;
+                }
+                response.put("ok", true);
+                break;
+            default:
+                response.put("ok", false);
+                response.put("message", "Unknown room command: " + command);
+                break;
+        }
+        return response;
+    }
 
-                default:
-                    response.put("type", "error");
+    /**
+     * Handles a matchmaking request: "join", "leave" or "stats". A player queues under the name of their
+     * session (see {@link #sessionPlayerName(JSONObject)}), which is also whose skill is matched. A joined
+     * connection waits for a "matched" message and is then a player in the match's room, so it guesses
+     * with "room" requests like any room member.
+     *
+     * @param requestJson the queue request
+     * @return the response
+     */
+    private JSONObject queue(JSONObject requestJson) throws Exception {
+        JSONObject response = new JSONObject();
+        response.put("type", "queue");
+        String command = requestJson.optString("command", "");
+        response.put("command", command);
+        switch (command) {
+            case "join":
+                GameType type = gameLength(requestJson);
+                int size = requestJson.optInt("size", 2);
+                if (size < 2 || size > Matchmaker.MAX_GROUP_SIZE) {
                     response.put("ok", false);
-                    response.put("message", "Unknown request type: " + requestType);
-                    logger.warn("Unknown request type received: {}", requestType);
+                    response.put("message", "Group size must be between 2 and " + Matchmaker.MAX_GROUP_SIZE + ".");
                     break;
-            }
-        } catch (Exception e) {
-            logger.error("Processing error: {}", e.getMessage(), e);
-            response.put("type", "error");
-            response.put("ok", false);
-            response.put("message", "Processing error: " + e.getMessage());
+                }
+                String name = sessionPlayerName(requestJson);
+                if (name == null) {
+                    response.put("ok", false);
+                    response.put("message", "Matchmaking needs a session. Send the sessionID of your game.");
+                    break;
+                }
+                if (queueTicket != null) {
+                    queueTicket.cancel();
+                }
+                if (roomMember != null) {
+                    roomMember.leave();
+                    roomMember = null;
+                }
+                queueTicket = Matchmaker.enqueue(type, size, playerKey(name), out, member -> roomMember = member);
+                response.put("ok", true);
+                response.put("gameLength", type.name().toLowerCase());
+                response.put("size", size);
+                response.put("depth", Matchmaker.depth());
+                if (!Double.isNaN(queueTicket.getSkill())) {
+                    response.put("skill", queueTicket.getSkill());
+                }
+                break;
+            case "leave":
+                if (queueTicket != null) {
+                    queueTicket.cancel();
+                    queueTicket = null;
+                }
+                response.put("ok", true);
+                break;
+            case "stats":
+                response.put("ok", true);
+                response.put("stats", Matchmaker.stats());
+                break;
+            default:
+                response.put("ok", false);
+                response.put("message", "Unknown queue command: " + command);
+                break;
         }
         return response;
     }
-}
 
+    /**
+     * Returns the name of the player a room or queue request acts for: the player of the session named
+     * by its "sessionID", or else of the session this connection is bound to. The name is never taken
+     * from the request itself, so nobody can play or be ranked under another player's name. The session
+     * is only read, on its mailbox, not bound: it stays with the player's game connection, and a token
+     * is checked but not spent.
+     *
+     * @param requestJson the request
+     * @return the player name, or null if the request names no valid session or the player has no name yet
+     */
+    private String sessionPlayerName(JSONObject requestJson) throws Exception {
+        String sessionID = requestJson.optString("sessionID", null);
+        String name;
+        if (sessionID == null) {
+            name = session == null ? null : readSession(GameState::getPlayerName);
+        } else if (SessionTokens.isEnabled()) {
+            try {
+                name = SessionTokens.peek(sessionID).state.getPlayerName();
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+        } else {
+            GameSession live = SessionManager.getSession(sessionID);
+            name = live == null ? null : live.call(() -> live.getState().getPlayerName());
+        }
+        return name == null || name.isEmpty() ? null : name;
+    }
 
+    /**
+     * Returns the game length a room or queue request asks for: its "gameLength" field ("short",
+     * "medium" or "long"), short by default.
+     *
+     * @param requestJson the request
+     * @return the game length
+     */
+    private static GameType gameLength(JSONObject requestJson) {
+        for (GameType candidate : GameType.values()) {
+            if (candidate.name().equalsIgnoreCase(requestJson.optString("gameLength", ""))) {
+                return candidate;
+            }
+        }
+        return GameType.SHORT;
+    }
+
+    /**
+     * Fills in the response to a "resume" request: the session's current state, the highest
+     * sequence number already applied, and the current image if the client's last pending
+     * request was applied (its response, and therefore the image, was lost with the connection).
+     *
+     * @param requestJson the resume request, optionally carrying "pendingSeq"
+     * @param response    the response to fill in
+     */
+    private void resume(JSONObject requestJson, JSONObject response) throws Exception {
+        // In token mode there is no server-side session; the caller adds the next token instead.
+        long lastSeq = session == null ? 0 : session.lastSeq;
+        response.put("type", "resumed");
+        response.put("ok", true);
+        if (sessionId != null) {
+            response.put("sessionID", sessionId);
+        }
+        response.put("lastSeq", lastSeq);
+        response.put("playerName", gameState.getPlayerName());
+        response.put("gameStage", gameState.getGameStage().name());
+        response.put("value", "Welcome back " + gameState.getPlayerName() + "! Your session has been restored.");
+        if (gameState.getGameStage() == States.IN_GAME_WITH_IMAGE) {
+            long elapsed = System.currentTimeMillis() - gameState.getGameStartTime();
+            response.put("remainingSeconds", Math.max(0, gameState.getGameDuration() - elapsed / 1000));
+            response.put("imageVersion", gameState.getImageVersion());
+            response.put("skipsRemaining", gameState.getSkipsRemaining());
+            response.put("gameDuration", gameState.getGameDuration());
+            long pendingSeq = requestJson.optLong("pendingSeq", 0);
+            if (pendingSeq > 0 && pendingSeq <= lastSeq) {
+                SockServer.sendImg("img/" + gameState.getCurrentMovie() + gameState.getImageVersion() + ".png", response);
+            }
+        }
+    }
+
+    /**
+     * Builds this player's leaderboard key from the player's name and IP address.
+     *
+     * @return the leaderboard key
+     */
+    private String playerKey() {
+        return playerKey(gameState.getPlayerName());
+    }
+
+    /**
+     * Builds the leaderboard key of the given player name at this connection's IP address.
+     *
+     * @param playerName the player's name
+     * @return the leaderboard key
+     */
+    private String playerKey(String playerName) {
+        return playerName + "@" +
+                ((java.net.InetSocketAddress) clientSocket.getRemoteSocketAddress()).getAddress().getHostAddress();
+    }
+
+    /**
+     * Returns the leaderboard partition a request asks for: its "gameType" field ("short", "medium"
+     * or "long"), or else the game length the player last chose.
+     *
+     * @param requestJson the leaderboard request
+     * @param chosen      the game length the player last chose
+     * @return the partition to query
+     */
+    private static GameType leaderboardPartition(JSONObject requestJson, GameType chosen) {
+        String requested = requestJson.optString("gameType", "");
+        for (GameType type : GameType.values()) {
+            if (type.name().equalsIgnoreCase(requested)) {
+                return type;
+            }
+        }
+        return chosen;
+    }
+}
@@ -0,0 +1,117 @@
+package Assign32starter;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The ClusterAuth class signs and verifies the {@code cluster} requests that nodes and operators send,
+ * since they arrive on the same public port as game traffic and can change membership, leaderboards and
+ * session state.
+ * <p>
+ * A signed request is {@code {"type":"cluster","signed":"<command JSON>","mac":"<Base64>"}}: the command
+ * is sent as a string so the MAC covers its exact bytes, and the MAC is HMAC-SHA256 under the secret
+ * shared by all members ({@code cluster.secret}, or the {@code CLUSTER_SECRET} environment variable).
+ * The command carries the time it was sent, and commands more than {@value #MAX_SKEW_SECONDS} seconds
+ * old or ahead are refused, which bounds how long a captured request can be replayed.
+ */
+public class ClusterAuth {
+    private static final long MAX_SKEW_SECONDS = 30;
+    private static final long MAX_SKEW_MILLIS = TimeUnit.SECONDS.toMillis(MAX_SKEW_SECONDS);
+    private static final SecretKeySpec KEY = loadKey();
+    private static final ThreadLocal<Mac> MACS = ThreadLocal.withInitial(() -> {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(KEY);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 is not available", e);
+        }
+    });
+
+    /**
+     * Returns whether a cluster secret is configured. Cluster mode is refused without one.
+     *
+     * @return true if requests can be signed and verified
+     */
+    public static boolean isConfigured() {
+        return KEY != null;
+    }
+
+    /**
+     * Wraps a cluster command in a signed request.
+     *
+     * @param command the command, e.g. {@code {"command":"join","node":"host:port"}}
+     * @return the request to send
+     */
+    public static JSONObject seal(JSONObject command) {
+        return seal(command, System.currentTimeMillis());
+    }
+
+    static JSONObject seal(JSONObject command, long now) {
+        if (!isConfigured()) {
+            throw new IllegalStateException("No cluster.secret configured.");
+        }
+        JSONObject body = new JSONObject(command.toString());
+        body.put("type", "cluster");
+        body.put("sentAt", now);
+        String signed = body.toString();
+        JSONObject request = new JSONObject();
+        request.put("type", "cluster");
+        request.put("signed", signed);
+        request.put("mac", Base64.getEncoder().encodeToString(sign(signed)));
+        return request;
+    }
+
+    /**
+     * Verifies a signed request and returns the command inside it.
+     *
+     * @param request the request as received
+     * @return the command, or {@code null} if the request is unsigned, forged or too old
+     */
+    public static JSONObject open(JSONObject request) {
+        return open(request, System.currentTimeMillis());
+    }
+
+    static JSONObject open(JSONObject request, long now) {
+        if (!isConfigured()) {
+            return null;
+        }
+        String signed = request.optString("signed", null);
+        String mac = request.optString("mac", null);
+        if (signed == null || mac == null) {
+            return null;
+        }
+        try {
+            if (!MessageDigest.isEqual(Base64.getDecoder().decode(mac), sign(signed))) {
+                return null;
+            }
+            JSONObject command = new JSONObject(signed);
+            if (Math.abs(now - command.optLong("sentAt", 0)) > MAX_SKEW_MILLIS) {
+                return null;
+            }
+            return command;
+        } catch (IllegalArgumentException | JSONException e) {
+            return null;
+        }
+    }
+
+    private static byte[] sign(String signed) {
+        return MACS.get().doFinal(signed.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static SecretKeySpec loadKey() {
+        String configured = System.getProperty("cluster.secret", "");
+        if (configured.isEmpty() && System.getenv("CLUSTER_SECRET") != null) {
+            configured = System.getenv("CLUSTER_SECRET");
+        }
+        return configured.isEmpty() ? null : new SecretKeySpec(configured.getBytes(StandardCharsets.UTF_8), "HmacSHA256");
+    }
+}
@@ -0,0 +1,380 @@
+package Assign32starter;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.ObjectOutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * The ClusterManager class lets several SockServer processes share the session load.
+ * <p>
+ * Cluster mode is enabled with the system property {@code cluster.nodes}, a comma-separated list of
+ * {@code host:port} addresses; {@code cluster.self} names this process (default {@code localhost:<port>}).
+ * Every node owns the session IDs that a {@link ConsistentHashRing} maps to it. New sessions are always
+ * created with an ID the local node owns. A request for a session that is neither present locally nor
+ * owned here is answered with a {@code redirect} naming the owner; the client then reconnects there and
+ * resumes the session.
+ * <p>
+ * Membership changes arrive as {@code cluster} requests ({@code join} or {@code leave}), are forwarded
+ * once to the other members, and trigger a rebalance: every local session that now belongs elsewhere
+ * is encoded on its own mailbox, sent to its new owner off the mailbox, and removed here once the owner
+ * has it, provided no request changed it in the meantime. Only the slice whose owner changed moves.
+ * <p>
+ * Cluster requests arrive on the public port, so every one must be signed with the shared
+ * {@code cluster.secret} (see {@link ClusterAuth}); unsigned ones are refused and cluster mode does
+ * not start without a secret. Operators send signed commands with {@link #main(String[])}.
+ * <p>
+ * Leaderboards are not partitioned by node: every node keeps a full copy, and the
+ * {@link LeaderboardReplicator} exchanges deltas so all copies converge.
+ */
+public class ClusterManager {
+    private static final Logger logger = LoggerFactory.getLogger(ClusterManager.class);
+    private static final int CONNECT_TIMEOUT_MILLIS = 2000;
+    // Times a handoff is re-sent because the session changed while it was in flight.
+    private static final int HANDOFF_ATTEMPTS = 3;
+    private static volatile String self;
+    private static volatile ConsistentHashRing ring;
+    private static final ExecutorService rebalancer = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "cluster-rebalance");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /**
+     * Reads the cluster configuration. Without {@code cluster.nodes} the server runs stand-alone.
+     *
+     * @param port the port this server listens on
+     */
+    public static void init(int port) {
+        String nodes = System.getProperty("cluster.nodes", "").trim();
+        if (nodes.isEmpty()) {
+            return;
+        }
+        if (!ClusterAuth.isConfigured()) {
+            throw new IllegalStateException("Cluster mode needs a shared secret: set cluster.secret or CLUSTER_SECRET on every node.");
+        }
+        self = System.getProperty("cluster.self", "localhost:" + port);
+        Set<String> members = new LinkedHashSet<>(Arrays.asList(nodes.split("\\s*,\\s*")));
+        members.add(self);
+        ring = new ConsistentHashRing(members);
+        logger.info("Cluster mode: this node is {}, members {}", self, ring.getNodes());
+        // Sessions restored from a snapshot may belong to another node by now.
+        rebalanceAsync();
+        LeaderboardReplicator.start();
+    }
+
+    /**
+     * Returns the other members of the cluster.
+     *
+     * @return the members other than this node; empty when stand-alone
+     */
+    public static List<String> peers() {
+        if (self == null) {
+            return new ArrayList<>();
+        }
+        List<String> peers = new ArrayList<>(ring.getNodes());
+        peers.remove(self);
+        return peers;
+    }
+
+    /**
+     * Returns whether cluster mode is enabled.
+     *
+     * @return true if this server is part of a cluster
+     */
+    public static boolean isEnabled() {
+        return self != null;
+    }
+
+    /**
+     * Returns whether the given session ID belongs to this node. Always true when stand-alone.
+     *
+     * @param sessionId the session ID
+     * @return true if this node owns the session
+     */
+    public static boolean isLocal(String sessionId) {
+        return self == null || self.equals(ring.ownerOf(sessionId));
+    }
+
+    /**
+     * Returns whether new sessions may be created here: always when stand-alone, and in cluster mode
+     * as long as this node has not left the ring.
+     *
+     * @return true if this node owns part of the ring
+     */
+    public static boolean acceptsNewSessions() {
+        return self == null || ring.getNodes().contains(self);
+    }
+
+    /**
+     * Returns the node owning the given session ID.
+     *
+     * @param sessionId the session ID
+     * @return the owner's {@code host:port}, or {@code null} when stand-alone
+     */
+    public static String ownerOf(String sessionId) {
+        return self == null ? null : ring.ownerOf(sessionId);
+    }
+
+    /**
+     * Builds the response telling a client to continue the session on another node.
+     *
+     * @param sessionId the session ID
+     * @param owner     the owning node
+     * @return the redirect response
+     */
+    public static JSONObject redirect(String sessionId, String owner) {
+        JSONObject response = new JSONObject();
+        response.put("type", "redirect");
+        response.put("ok", false);
+        response.put("sessionID", sessionId);
+        response.put("node", owner);
+        response.put("message", "Session is served by " + owner + ". Please reconnect there.");
+        return response;
+    }
+
+    /**
+     * Sends a signed cluster command to a node and prints the response.
+     * The secret is read from {@code cluster.secret} or the {@code CLUSTER_SECRET} environment variable.
+     *
+     * @param args the node ({@code host:port}), the command ({@code members}, {@code join} or
+     *             {@code leave}) and, for join and leave, the node to add or remove
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2 || (!args[1].equals("members") && args.length < 3)) {
+            System.err.println("Usage: ClusterManager <host:port> members|join|leave [<node host:port>]");
+            System.exit(2);
+        }
+        JSONObject command = new JSONObject();
+        command.put("command", args[1]);
+        if (args.length > 2) {
+            command.put("node", args[2]);
+        }
+        try (Peer connection = new Peer(args[0])) {
+            JSONObject response = connection.send(command);
+            System.out.println(response.toString(2));
+            System.exit(response.optBoolean("ok", false) ? 0 : 1);
+        }
+    }
+
+    /**
+     * Handles a signed {@code cluster} request: {@code members}, {@code join}, {@code leave},
+     * {@code handoff} or {@code leaderboardDelta}.
+     *
+     * @param signedRequest the request received from an operator or another node
+     * @return the response to send back
+     */
+    public static JSONObject handle(JSONObject signedRequest) throws IOException {
+        JSONObject response = new JSONObject();
+        response.put("type", "cluster");
+        if (!isEnabled()) {
+            response.put("ok", false);
+            response.put("message", "Cluster mode is not enabled on this server.");
+            return response;
+        }
+        JSONObject request = ClusterAuth.open(signedRequest);
+        if (request == null) {
+            logger.warn("Refused a cluster request that is unsigned, forged or too old.");
+            response.put("ok", false);
+            response.put("message", "Cluster requests must be signed with the cluster secret.");
+            return response;
+        }
+        String command = request.optString("command", "");
+        switch (command) {
+            case "members":
+                response.put("ok", true);
+                break;
+            case "join":
+            case "leave":
+                String node = request.getString("node");
+                changeMembership(command, node, request.optBoolean("forwarded", false));
+                response.put("ok", true);
+                break;
+            case "leaderboardDelta":
+                response.put("received", LeaderboardReplicator.merge(request));
+                response.put("ok", true);
+                break;
+            case "handoff":
+                String sessionId = request.getString("sessionID");
+                byte[] record = Base64.getDecoder().decode(request.getString("record"));
+                // A handoff re-sent because the session changed in flight replaces the earlier copy.
+                SessionManager.removeSession(sessionId);
+                response.put("ok", SessionSnapshotter.restoreFromBytes(sessionId, record));
+                break;
+            default:
+                response.put("ok", false);
+                response.put("message", "Unknown cluster command: " + command);
+                return response;
+        }
+        response.put("self", self);
+        response.put("members", new JSONArray(ring.getNodes()));
+        return response;
+    }
+
+    /**
+     * Applies a join or leave, forwards it to the other members unless it was already forwarded,
+     * and starts a rebalance.
+     */
+    private static synchronized void changeMembership(String command, String node, boolean forwarded) {
+        ConsistentHashRing before = ring;
+        ring = command.equals("join") ? before.with(node) : before.without(node);
+        logger.info("Cluster {} of {}: members now {}", command, node, ring.getNodes());
+        if (!forwarded) {
+            Set<String> peers = new LinkedHashSet<>(before.getNodes());
+            peers.addAll(ring.getNodes());
+            peers.remove(self);
+            for (String peer : peers) {
+                JSONObject forward = new JSONObject();
+                forward.put("command", command);
+                forward.put("node", node);
+                forward.put("forwarded", true);
+                try (Peer connection = new Peer(peer)) {
+                    connection.send(forward);
+                } catch (IOException e) {
+                    logger.warn("Could not forward {} of {} to {}: {}", command, node, peer, e.getMessage());
+                }
+            }
+        }
+        rebalanceAsync();
+    }
+
+    private static void rebalanceAsync() {
+        rebalancer.execute(() -> {
+            try {
+                rebalance();
+            } catch (Exception e) {
+                logger.error("Error rebalancing sessions: ", e);
+            }
+        });
+    }
+
+    /**
+     * Hands every local session that this node no longer owns over to its owner. Each session is encoded
+     * on its own mailbox, so the record is a state between two requests, and sent to the owner off the
+     * mailbox, so requests keep being served meanwhile. Back on the mailbox the session is marked moved and
+     * removed only if no request changed it since it was encoded; otherwise the newer state is sent again.
+     * Requests queued behind the removal see that the session has moved and are redirected.
+     */
+    private static void rebalance() {
+        List<String> moving = new ArrayList<>();
+        for (GameSession session : SessionManager.liveSessions()) {
+            if (!isLocal(session.getId())) {
+                moving.add(session.getId());
+            }
+        }
+        SessionManager.forEachParked((id, entry) -> {
+            if (!isLocal(id)) {
+                moving.add(id);
+            }
+        });
+        if (moving.isEmpty()) {
+            return;
+        }
+        int moved = 0;
+        for (String sessionId : moving) {
+            String owner = ownerOf(sessionId);
+            GameSession session = SessionManager.getSession(sessionId);
+            if (session == null || owner == null || owner.equals(self)) {
+                continue;
+            }
+            try {
+                if (handOver(session, owner)) {
+                    moved++;
+                } else {
+                    logger.warn("Session {} kept changing while being handed over to {}; it stays here.", sessionId, owner);
+                }
+            } catch (Exception e) {
+                logger.warn("Could not hand session {} over to {}: {}", sessionId, owner, e.getMessage());
+            }
+        }
+        logger.info("Rebalance moved {} of {} sessions to other nodes.", moved, moving.size());
+    }
+
+    /**
+     * Sends one session to its new owner and removes it here once the owner holds its latest state.
+     *
+     * @return false if the session changed during every attempt
+     */
+    private static boolean handOver(GameSession session, String owner) throws Exception {
+        String sessionId = session.getId();
+        for (int attempt = 0; attempt < HANDOFF_ATTEMPTS; attempt++) {
+            long[] encodedAt = new long[1];
+            byte[] record = session.call(() -> {
+                encodedAt[0] = session.changes;
+                return SessionSnapshotter.toBytes(session.getState(), session.getCreatedAt(), session.lastAccess, session.lastSeq);
+            });
+            JSONObject handoff = new JSONObject();
+            handoff.put("command", "handoff");
+            handoff.put("sessionID", sessionId);
+            handoff.put("record", Base64.getEncoder().encodeToString(record));
+            try (Peer connection = new Peer(owner)) {
+                JSONObject response = connection.send(handoff);
+                if (!response.optBoolean("ok", false)) {
+                    throw new IOException(response.optString("message", "Handoff refused."));
+                }
+            }
+            boolean done = session.call(() -> {
+                // The encoding call itself counted as one change.
+                if (session.changes != encodedAt[0] + 1) {
+                    return false;
+                }
+                session.movedTo = owner;
+                SessionManager.removeSession(sessionId);
+                return true;
+            });
+            if (done) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * A short-lived connection to another node, speaking the normal client protocol. Every request sent
+     * is a cluster command, signed on the way out.
+     */
+    static final class Peer implements AutoCloseable {
+        private final Socket socket;
+        private final ObjectOutputStream out;
+        private final BufferedReader in;
+
+        Peer(String node) throws IOException {
+            int colon = node.lastIndexOf(':');
+            socket = new Socket();
+            socket.connect(new InetSocketAddress(node.substring(0, colon), Integer.parseInt(node.substring(colon + 1))),
+                    CONNECT_TIMEOUT_MILLIS);
+            out = new ObjectOutputStream(socket.getOutputStream());
+            in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+        }
+
+        JSONObject send(JSONObject command) throws IOException {
+            out.writeObject(ClusterAuth.seal(command).toString());
+            out.flush();
+            String line = in.readLine();
+            if (line == null) {
+                throw new IOException("Connection closed by peer.");
+            }
+            return new JSONObject(line);
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+}
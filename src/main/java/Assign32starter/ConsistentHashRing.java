@@ -0,0 +1,134 @@
+package Assign32starter;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.UUID;
+
+/**
+ * An immutable consistent-hash ring mapping session IDs to the cluster node that owns them.
+ * Each node is placed on the ring at {@value #VIRTUAL_NODES} pseudo-random points, so adding or removing
+ * one node only moves the keys of the arcs it gains or loses, about 1/n of all sessions.
+ * Lookups binary-search a sorted {@code long[]} and need no locking; membership changes build a new ring.
+ */
+public class ConsistentHashRing {
+    private static final int VIRTUAL_NODES = 128;
+
+    private final long[] points;
+    private final String[] owners;
+    private final List<String> nodes;
+
+    /**
+     * Constructs a ring over the given nodes.
+     *
+     * @param nodes node addresses in {@code host:port} form
+     */
+    public ConsistentHashRing(Collection<String> nodes) {
+        TreeMap<Long, String> ring = new TreeMap<>();
+        TreeSet<String> sorted = new TreeSet<>(nodes);
+        for (String node : sorted) {
+            for (int i = 0; i < VIRTUAL_NODES; i++) {
+                ring.putIfAbsent(hash(node + "#" + i), node);
+            }
+        }
+        this.points = new long[ring.size()];
+        this.owners = new String[ring.size()];
+        int i = 0;
+        for (Map.Entry<Long, String> point : ring.entrySet()) {
+            points[i] = point.getKey();
+            owners[i] = point.getValue();
+            i++;
+        }
+        this.nodes = List.copyOf(sorted);
+    }
+
+    /**
+     * Returns the node owning the given session ID: the first node point clockwise from the ID's hash.
+     *
+     * @param sessionId the session ID
+     * @return the owning node's address, or {@code null} if the ring is empty
+     */
+    public String ownerOf(String sessionId) {
+        if (points.length == 0) {
+            return null;
+        }
+        int index = Arrays.binarySearch(points, keyHash(sessionId));
+        if (index < 0) {
+            index = -index - 1;
+        }
+        return owners[index == points.length ? 0 : index];
+    }
+
+    /**
+     * Returns the nodes on this ring.
+     *
+     * @return the node addresses, sorted
+     */
+    public List<String> getNodes() {
+        return nodes;
+    }
+
+    /**
+     * Returns a ring with the given node added.
+     *
+     * @param node the node address to add
+     * @return the new ring
+     */
+    public ConsistentHashRing with(String node) {
+        List<String> next = new ArrayList<>(nodes);
+        if (!next.contains(node)) {
+            next.add(node);
+        }
+        return new ConsistentHashRing(next);
+    }
+
+    /**
+     * Returns a ring with the given node removed.
+     *
+     * @param node the node address to remove
+     * @return the new ring
+     */
+    public ConsistentHashRing without(String node) {
+        List<String> next = new ArrayList<>(nodes);
+        next.remove(node);
+        return new ConsistentHashRing(next);
+    }
+
+    /**
+     * Hashes a session ID. Session IDs are random UUIDs, so their bits only need mixing.
+     */
+    private static long keyHash(String sessionId) {
+        try {
+            UUID id = UUID.fromString(sessionId);
+            return mix(id.getMostSignificantBits() ^ Long.rotateLeft(id.getLeastSignificantBits(), 32));
+        } catch (IllegalArgumentException e) {
+            return hash(sessionId);
+        }
+    }
+
+    /**
+     * 64-bit FNV-1a over the UTF-8 bytes, finished with a mixing step.
+     */
+    private static long hash(String value) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b;
+            h *= 0x100000001b3L;
+        }
+        return mix(h);
+    }
+
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,71 @@
+package Assign32starter;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The FrameWriter class writes newline-terminated JSON frames to one client connection.
+ * <p>
+ * Every write takes the writer's lock, so responses written by the connection's handler and frames
+ * pushed by other threads (leaderboard updates, room broadcasts) never interleave. A frame meant for
+ * many connections is encoded once with {@link #encode(Object)} and the same immutable bytes are
+ * handed to every writer, so fan-out costs one socket write per member and no per-member serialization.
+ */
+public class FrameWriter implements AutoCloseable {
+    private final Socket socket;
+    private final OutputStream out;
+
+    /**
+     * Constructs a writer for a connection.
+     *
+     * @param socket the connection
+     * @throws IOException if the connection's output stream cannot be opened
+     */
+    public FrameWriter(Socket socket) throws IOException {
+        this.socket = socket;
+        this.out = new BufferedOutputStream(socket.getOutputStream());
+    }
+
+    /**
+     * Encodes a message as one frame: its text in UTF-8 followed by a newline.
+     * The returned array must not be modified once it is shared.
+     *
+     * @param message the message, usually a JSONObject
+     * @return the frame bytes
+     */
+    public static byte[] encode(Object message) {
+        return (message + "\n").getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Encodes and writes one message.
+     *
+     * @param message the message, usually a JSONObject
+     * @throws IOException if the connection is broken
+     */
+    public void send(Object message) throws IOException {
+        write(encode(message));
+    }
+
+    /**
+     * Writes an already encoded frame and flushes it.
+     *
+     * @param frame the frame bytes from {@link #encode(Object)}
+     * @throws IOException if the connection is broken
+     */
+    public synchronized void write(byte[] frame) throws IOException {
+        out.write(frame);
+        out.flush();
+    }
+
+    /**
+     * Closes the connection. A write blocked on a stalled client fails at once instead of waiting.
+     */
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+}
@@ -0,0 +1,519 @@
+package Assign32starter;
+
+import Assign32starter.enums.GameType;
+import Assign32starter.enums.LeaderboardWindow;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Base64;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The GameClient class is the client side of the game protocol, without any user interface. The Swing
+ * {@link ClientGui} is built on it, and so can bots, tests and load tools.
+ * <p>
+ * Every command has an asynchronous variant, which returns a future at once, and a blocking one. A
+ * client sends one command at a time: a command issued while another is outstanding is sent once that
+ * one is answered, so the session ID and sequence numbers always follow the server's latest response.
+ * The client handles the session ID (including the rotating tokens of token mode), numbers requests,
+ * accepts images the server pushes ahead of time and puts them back into the responses that refer to
+ * them, follows cluster redirects, and reconnects and resumes the session with exponential backoff if
+ * the connection drops. A command that the server applied but whose response was lost completes with
+ * the resume response instead, marked {@code "responseLost": true}.
+ * <p>
+ * A GameClient holds no thread of its own: connections share the {@link ClientConnection} I/O thread
+ * and callback pool, and backoff waits are scheduled rather than slept. So thousands of clients can run
+ * in one JVM. Futures complete on the callback pool; code that waits on one of them there stalls the
+ * other clients sharing that thread, so chain further commands with {@code thenCompose} instead.
+ */
+public class GameClient implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(GameClient.class);
+    private static final int MAX_RECONNECT_ATTEMPTS = 6;
+    private static final long INITIAL_BACKOFF_MILLIS = 250;
+    private static final long MAX_BACKOFF_MILLIS = 8000;
+
+    private volatile String host;
+    private volatile int port;
+    private volatile Listener listener = new Listener() {
+    };
+    private volatile ClientConnection connection;
+    private volatile String sessionID;
+    // The tail of the queue of commands: each one is sent once the one before it is answered.
+    private CompletableFuture<?> inFlight = CompletableFuture.completedFuture(null);
+    // Only touched by the command being sent, one at a time.
+    private long nextSeq = 1;
+    // The next movie's image, pushed by the server ahead of time; set and used on the callback pool.
+    private volatile long prefetchedToken = -1;
+    private volatile String prefetchedImage;
+
+    /**
+     * Observes what the client does on its own: reconnecting and resuming. Called on the callback pool.
+     */
+    public interface Listener {
+        /**
+         * The connection was lost and the client will try again after a pause.
+         *
+         * @param backoffMillis the pause before the next attempt
+         */
+        default void reconnecting(long backoffMillis) {
+        }
+
+        /**
+         * The client reconnected and the server answered its resume request.
+         *
+         * @param resumed the resume response, carrying the session's state
+         */
+        default void resumed(JSONObject resumed) {
+        }
+    }
+
+    /**
+     * Constructs a client for a server. It connects when the first command is sent.
+     *
+     * @param host the server host
+     * @param port the server port
+     */
+    public GameClient(String host, int port) {
+        this.host = host;
+        this.port = port;
+    }
+
+    /**
+     * Sets the listener told about reconnects.
+     *
+     * @param listener the listener
+     */
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Returns the current session ID or token.
+     *
+     * @return the session ID, or {@code null} before "start" is answered
+     */
+    public String getSessionID() {
+        return sessionID;
+    }
+
+    /**
+     * Returns the server host, which changes when the session is redirected to another cluster node.
+     *
+     * @return the host
+     */
+    public String getHost() {
+        return host;
+    }
+
+    /**
+     * Returns the server port, which changes when the session is redirected to another cluster node.
+     *
+     * @return the port
+     */
+    public int getPort() {
+        return port;
+    }
+
+    /**
+     * Returns whether the client currently has an open connection.
+     *
+     * @return true if connected
+     */
+    public boolean isConnected() {
+        ClientConnection current = connection;
+        return current != null && !current.isClosed();
+    }
+
+    /**
+     * Opens a session; the response carries the greeting and the welcome image.
+     *
+     * @return the response
+     */
+    public CompletableFuture<JSONObject> startAsync() {
+        return requestAsync(new JSONObject().put("type", "start"));
+    }
+
+    /**
+     * Registers the player's name.
+     *
+     * @param name the player name
+     * @return the greeting
+     */
+    public CompletableFuture<JSONObject> nameAsync(String name) {
+        return requestAsync(new JSONObject().put("type", "name").put("value", name));
+    }
+
+    /**
+     * Starts a game; the response carries the first image.
+     *
+     * @param type the game length
+     * @return the response
+     */
+    public CompletableFuture<JSONObject> playAsync(GameType type) {
+        return requestAsync(new JSONObject().put("type", "gameStart").put("gameLength", type.name().toLowerCase()));
+    }
+
+    /**
+     * Guesses the current movie; a correct guess is answered with the next movie's image.
+     *
+     * @param guess the guessed title
+     * @return the response, with {@code result} true if the guess was right
+     */
+    public CompletableFuture<JSONObject> guessAsync(String guess) {
+        return requestAsync(game("guess").put("guess", guess));
+    }
+
+    /**
+     * Asks for a clearer image of the current movie.
+     *
+     * @return the response
+     */
+    public CompletableFuture<JSONObject> nextAsync() {
+        return requestAsync(game("next"));
+    }
+
+    /**
+     * Skips the current movie.
+     *
+     * @return the response, with the next movie's image if a skip was left
+     */
+    public CompletableFuture<JSONObject> skipAsync() {
+        return requestAsync(game("skip"));
+    }
+
+    /**
+     * Asks how many skips are left.
+     *
+     * @return the response
+     */
+    public CompletableFuture<JSONObject> remainingAsync() {
+        return requestAsync(game("remaining"));
+    }
+
+    /**
+     * Fetches the top of a leaderboard.
+     *
+     * @param type    the game length partition
+     * @param window  the leaderboard window
+     * @param n       the number of entries
+     * @param version the version the caller already has, or -1; an unchanged leaderboard is then
+     *                answered with {@code notModified}
+     * @return the response
+     */
+    public CompletableFuture<JSONObject> leaderboardAsync(GameType type, LeaderboardWindow window, int n, long version) {
+        return requestAsync(game("leaderboard").put("view", "top").put("window", window.getValue())
+                .put("gameType", type.name().toLowerCase()).put("n", n).put("version", version));
+    }
+
+    /**
+     * Ends the game and records the score.
+     *
+     * @return the response, with the final score and rank
+     */
+    public CompletableFuture<JSONObject> quitAsync() {
+        return requestAsync(game("quit"));
+    }
+
+    /**
+     * Blocking {@link #startAsync()}.
+     *
+     * @return the response
+     * @throws IOException if the server cannot be reached
+     */
+    public JSONObject start() throws IOException {
+        return await(startAsync());
+    }
+
+    /**
+     * Blocking {@link #nameAsync(String)}.
+     *
+     * @param name the player name
+     * @return the response
+     * @throws IOException if the server cannot be reached
+     */
+    public JSONObject name(String name) throws IOException {
+        return await(nameAsync(name));
+    }
+
+    /**
+     * Blocking {@link #playAsync(GameType)}.
+     *
+     * @param type the game length
+     * @return the response
+     * @throws IOException if the server cannot be reached
+     */
+    public JSONObject play(GameType type) throws IOException {
+        return await(playAsync(type));
+    }
+
+    /**
+     * Blocking {@link #guessAsync(String)}.
+     *
+     * @param guess the guessed title
+     * @return the response
+     * @throws IOException if the server cannot be reached
+     */
+    public JSONObject guess(String guess) throws IOException {
+        return await(guessAsync(guess));
+    }
+
+    /**
+     * Blocking {@link #nextAsync()}.
+     *
+     * @return the response
+     * @throws IOException if the server cannot be reached
+     */
+    public JSONObject next() throws IOException {
+        return await(nextAsync());
+    }
+
+    /**
+     * Blocking {@link #skipAsync()}.
+     *
+     * @return the response
+     * @throws IOException if the server cannot be reached
+     */
+    public JSONObject skip() throws IOException {
+        return await(skipAsync());
+    }
+
+    /**
+     * Blocking {@link #remainingAsync()}.
+     *
+     * @return the response
+     * @throws IOException if the server cannot be reached
+     */
+    public JSONObject remaining() throws IOException {
+        return await(remainingAsync());
+    }
+
+    /**
+     * Blocking {@link #leaderboardAsync(GameType, LeaderboardWindow, int, long)}.
+     *
+     * @param type    the game length partition
+     * @param window  the leaderboard window
+     * @param n       the number of entries
+     * @param version the version the caller already has, or -1
+     * @return the response
+     * @throws IOException if the server cannot be reached
+     */
+    public JSONObject leaderboard(GameType type, LeaderboardWindow window, int n, long version) throws IOException {
+        return await(leaderboardAsync(type, window, n, version));
+    }
+
+    /**
+     * Blocking {@link #quitAsync()}.
+     *
+     * @return the response
+     * @throws IOException if the server cannot be reached
+     */
+    public JSONObject quit() throws IOException {
+        return await(quitAsync());
+    }
+
+    /**
+     * Returns the image a response carries.
+     *
+     * @param response a response
+     * @return the image file bytes, or {@code null} if the response has no image
+     */
+    public static byte[] imageOf(JSONObject response) {
+        return response.has("image") ? Base64.getDecoder().decode(response.getString("image")) : null;
+    }
+
+    /**
+     * Sends any session request, queued behind the commands already outstanding. The session ID,
+     * a sequence number and the prefetch opt-in are added when it is sent.
+     *
+     * @param request the request
+     * @return the response, or a future failed with an {@link IOException} if the server could not be
+     * reached again
+     */
+    public synchronized CompletableFuture<JSONObject> requestAsync(JSONObject request) {
+        CompletableFuture<JSONObject> response = inFlight
+                .handle((ignored, e) -> null)
+                .thenCompose(ignored -> exchange(request));
+        inFlight = response;
+        return response;
+    }
+
+    /**
+     * Closes the connection. Outstanding commands fail; a later command connects again.
+     */
+    @Override
+    public void close() {
+        ClientConnection current = connection;
+        if (current != null) {
+            current.close();
+        }
+    }
+
+    private static JSONObject game(String command) {
+        return new JSONObject().put("type", "game").put("command", command);
+    }
+
+    private static JSONObject await(CompletableFuture<JSONObject> response) throws IOException {
+        try {
+            return response.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Sends a session request and completes with the server's response. Every request gets a sequence number.
+     * If the connection drops, the client reconnects with exponential backoff and sends a "resume" request.
+     * If the server answers with a "redirect" (cluster mode), the client switches to the named node and
+     * resumes there right away. If the server has not applied this request yet, it is sent again. If it
+     * was applied but its response was lost, the resume response takes its place, including the current
+     * image, marked with {@code "responseLost": true}: the result, command and score of the lost response
+     * are not part of it.
+     */
+    private CompletableFuture<JSONObject> exchange(JSONObject request) {
+        long seq = nextSeq++;
+        request.put("seq", seq);
+        CompletableFuture<JSONObject> first = connection == null
+                ? CompletableFuture.failedFuture(new IOException("Not connected."))
+                : send(request);
+        return first
+                .thenCompose(response -> followRedirect(response)
+                        ? recover(request, seq, 0, true)
+                        : CompletableFuture.completedFuture(response))
+                .handle((response, e) -> {
+                    if (e == null) {
+                        return CompletableFuture.completedFuture(response);
+                    }
+                    if (connection != null) {
+                        logger.warn("Connection lost while sending seq {}: {}", seq, e.getMessage());
+                    }
+                    // The very first request connects without waiting.
+                    return recover(request, seq, 0, connection == null);
+                })
+                .thenCompose(response -> response);
+    }
+
+    /**
+     * One reconnect attempt of {@link #exchange(JSONObject)}, followed by the next one if it fails.
+     */
+    private CompletableFuture<JSONObject> recover(JSONObject request, long seq, int attempt, boolean immediately) {
+        if (attempt >= MAX_RECONNECT_ATTEMPTS) {
+            return CompletableFuture.failedFuture(new IOException("Server " + host + ":" + port + " could not be reached."));
+        }
+        Executor delay = Runnable::run;
+        if (!immediately) {
+            long backoff = Math.min(MAX_BACKOFF_MILLIS, INITIAL_BACKOFF_MILLIS << attempt);
+            listener.reconnecting(backoff);
+            delay = CompletableFuture.delayedExecutor(backoff, TimeUnit.MILLISECONDS);
+        }
+        return CompletableFuture.supplyAsync(this::open, delay)
+                .thenCompose(opened -> opened)
+                .thenCompose(opened -> {
+                    if (sessionID == null) {
+                        // Nothing to resume yet; just send the request.
+                        return send(request).thenCompose(response -> followRedirect(response)
+                                ? recover(request, seq, attempt + 1, true)
+                                : CompletableFuture.completedFuture(response));
+                    }
+                    JSONObject resume = new JSONObject();
+                    resume.put("type", "resume");
+                    resume.put("pendingSeq", seq);
+                    return send(resume).thenCompose(resumed -> {
+                        if (followRedirect(resumed)) {
+                            return recover(request, seq, attempt + 1, true);
+                        }
+                        if (!resumed.optBoolean("ok", false)) {
+                            // The session is gone (expired or finished); nothing to resume.
+                            return CompletableFuture.completedFuture(resumed);
+                        }
+                        listener.resumed(resumed);
+                        if (resumed.optLong("lastSeq", 0) >= seq) {
+                            // The request was applied; callers must not take the session state for its response.
+                            resumed.put("responseLost", true);
+                            return CompletableFuture.completedFuture(resumed);
+                        }
+                        return send(request).thenCompose(response -> followRedirect(response)
+                                ? recover(request, seq, attempt + 1, true)
+                                : CompletableFuture.completedFuture(response));
+                    });
+                })
+                .handle((response, e) -> {
+                    if (e == null) {
+                        return CompletableFuture.completedFuture(response);
+                    }
+                    logger.warn("Reconnect attempt {} failed: {}", attempt + 1, e.getMessage());
+                    return recover(request, seq, attempt + 1, false);
+                })
+                .thenCompose(response -> response);
+    }
+
+    /**
+     * Switches host and port if the response is a cluster redirect.
+     *
+     * @return true if the client must reconnect to another node
+     */
+    private boolean followRedirect(JSONObject response) {
+        if (!response.optString("type", "").equals("redirect")) {
+            return false;
+        }
+        String node = response.getString("node");
+        int colon = node.lastIndexOf(':');
+        host = node.substring(0, colon);
+        port = Integer.parseInt(node.substring(colon + 1));
+        logger.info("Session {} is served by {}; switching.", sessionID, node);
+        return true;
+    }
+
+    /**
+     * Sends one request on the current connection. Images the server pushes ahead of time are kept
+     * until a response refers to them, and then put in that response.
+     */
+    private CompletableFuture<JSONObject> send(JSONObject request) {
+        ClientConnection current = connection;
+        if (current == null) {
+            return CompletableFuture.failedFuture(new IOException("Not connected."));
+        }
+        // The session ID is read only now, since in token mode it changes with every response.
+        request.put("sessionID", sessionID);
+        request.put("prefetch", true);
+        return current.request(request).thenApply(response -> {
+            if (response.has("prefetched")) {
+                if (response.getLong("prefetched") != prefetchedToken) {
+                    throw new CompletionException(new IOException("Server referred to an image it did not send."));
+                }
+                response.put("image", prefetchedImage);
+                prefetchedImage = null;
+            }
+            // In stateless token mode every response carries the next session token.
+            if (response.has("sessionID")) {
+                sessionID = response.getString("sessionID");
+            }
+            return response;
+        });
+    }
+
+    /**
+     * Keeps an image the server pushed ahead of the response that will use it.
+     */
+    private void onPush(JSONObject message) {
+        if (message.optString("type", "").equals("prefetch")) {
+            prefetchedToken = message.getLong("token");
+            prefetchedImage = message.getString("image");
+        }
+    }
+
+    /**
+     * Replaces the connection with a new one to the current host and port.
+     */
+    private CompletableFuture<Void> open() {
+        close();
+        return ClientConnection.connect(host, port, this::onPush).thenAccept(opened -> connection = opened);
+    }
+}
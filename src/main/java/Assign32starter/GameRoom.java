@@ -0,0 +1,341 @@
+package Assign32starter;
+
+import Assign32starter.enums.GameType;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The GameRoom class runs one shared game for many connections.
+ * <p>
+ * All members of a room see the same movie at the same time. The room reveals a clearer image every
+ * {@code room.revealMillis} milliseconds; the first player to guess the movie wins the round and
+ * scores more the fewer images were needed, and after a short pause the next round starts. Spectators
+ * receive everything but cannot guess.
+ * <p>
+ * Every message is built and encoded once per room, with {@link FrameWriter#encode(Object)}, and the
+ * same bytes are queued to every member. Each member drains its queue on its own {@link SerialExecutor}
+ * over a shared writer pool, so the room never waits on a member's socket. A member that falls more
+ * than {@value #MAX_PENDING_FRAMES} frames behind is disconnected. A member who joins mid-round gets
+ * the frame of the current image, already encoded.
+ * <p>
+ * Room state changes under the room's monitor, on the guessing handler or on the room timeline thread;
+ * the work done under it is a few field updates and queueing frames. Reading and encoding an image is
+ * the slow part, so it runs on the writer pool and only publishing the frame goes back to the timeline
+ * thread, which every room shares. A guess that ends the round meanwhile simply discards the frame.
+ */
+public class GameRoom {
+    private static final Logger logger = LoggerFactory.getLogger(GameRoom.class);
+    private static final long REVEAL_MILLIS = Long.getLong("room.revealMillis", 5000);
+    private static final long ROUND_PAUSE_MILLIS = Long.getLong("room.pauseMillis", 3000);
+    private static final int MAX_IMAGE_VERSION = 4;
+    private static final int MAX_PENDING_FRAMES = 64;
+    private static final int SCOREBOARD_SIZE = 10;
+
+    private final String name;
+    private final GameType type;
+    private final Set<Member> members = new CopyOnWriteArraySet<>();
+    private final Map<String, Integer> scores = new HashMap<>();
+    private Movie movie;
+    private int round = 0;
+    private int imageVersion = 0;
+    private boolean open = false;
+    private byte[] imageFrame;
+    private ScheduledFuture<?> nextStep;
+    private boolean closed = false;
+
+    /**
+     * Constructs an empty room.
+     *
+     * @param name the room name
+     * @param type the game length whose movies the room plays
+     */
+    GameRoom(String name, GameType type) {
+        this.name = name;
+        this.type = type;
+    }
+
+    /**
+     * Returns the room name.
+     *
+     * @return the name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the number of members, players and spectators.
+     *
+     * @return the member count
+     */
+    public int size() {
+        return members.size();
+    }
+
+    /**
+     * Adds a member and brings them up to date with the current image. The first player starts the game.
+     *
+     * @param member the new member
+     * @return false if the room has already been closed, in which case the caller should create a new one
+     */
+    synchronized boolean join(Member member) {
+        if (closed) {
+            return false;
+        }
+        members.add(member);
+        broadcast(event("roomJoined").put("player", member.name).put("role", member.player ? "player" : "spectator"));
+        if (imageFrame != null) {
+            member.deliver(imageFrame);
+        } else if (member.player && nextStep == null) {
+            startRound();
+        }
+        return true;
+    }
+
+    /**
+     * Removes a member. The last member to leave closes the room.
+     *
+     * @param member the member
+     */
+    synchronized void leave(Member member) {
+        if (!members.remove(member)) {
+            return;
+        }
+        if (members.isEmpty()) {
+            closed = true;
+            if (nextStep != null) {
+                nextStep.cancel(false);
+            }
+            RoomManager.remove(this);
+            return;
+        }
+        broadcast(event("roomLeft").put("player", member.name));
+    }
+
+    /**
+     * Checks a player's guess. A correct guess ends the round for everyone; guesses made before the
+     * round's first image is shown do not count.
+     *
+     * @param member the guessing member
+     * @param guess  the guessed title
+     * @return true if the guess won the round
+     */
+    synchronized boolean guess(Member member, String guess) {
+        if (!member.player || !open || imageVersion == 0 || !guess.trim().equalsIgnoreCase(movie.getCorrectAnswer())) {
+            return false;
+        }
+        int points = MAX_IMAGE_VERSION + 1 - imageVersion;
+        scores.merge(member.name, points, Integer::sum);
+        SockServer.getMovieSelector().recordSolved(movie.getMovieName(), imageVersion);
+        endRound(member.name, points);
+        return true;
+    }
+
+    /**
+     * Opens a new round. Its first image is shown by the timeline thread.
+     */
+    private void startRound() {
+        movie = SockServer.chooseRandomMovie(type);
+        round++;
+        imageVersion = 0;
+        open = true;
+        nextStep = RoomManager.schedule(this::reveal, 0);
+    }
+
+    /**
+     * Starts loading the next image, or ends the round unsolved after the last one. Runs on the timeline
+     * thread; the image is read and encoded on the writer pool without holding the monitor.
+     */
+    private void reveal() {
+        Movie shown;
+        int shownRound;
+        int version;
+        synchronized (this) {
+            if (closed || !open) {
+                return;
+            }
+            if (imageVersion == MAX_IMAGE_VERSION) {
+                endRound(null, 0);
+                return;
+            }
+            shown = movie;
+            shownRound = round;
+            version = imageVersion + 1;
+        }
+        RoomManager.load(() -> {
+            JSONObject image = event("roomImage").put("round", shownRound).put("imageVersion", version);
+            try {
+                SockServer.sendImg("img/" + shown.getMovieName() + version + ".png", image);
+            } catch (Exception e) {
+                logger.error("Room {} could not load an image: {}", name, e.getMessage());
+            }
+            byte[] frame = FrameWriter.encode(image);
+            RoomManager.schedule(() -> publish(shownRound, version, frame), 0);
+        });
+    }
+
+    /**
+     * Shows a loaded image and schedules the next one. Runs on the timeline thread.
+     */
+    private synchronized void publish(int shownRound, int version, byte[] frame) {
+        if (closed || !open || round != shownRound) {
+            return; // The round was won while the image was loading.
+        }
+        imageVersion = version;
+        imageFrame = frame;
+        broadcast(frame);
+        nextStep = RoomManager.schedule(this::reveal, REVEAL_MILLIS);
+    }
+
+    private void endRound(String winner, int points) {
+        open = false;
+        imageFrame = null;
+        if (nextStep != null) {
+            nextStep.cancel(false);
+        }
+        JSONObject result = event("roomRound").put("round", round).put("answer", movie.getCorrectAnswer())
+                .put("scores", scoreboard());
+        if (winner != null) {
+            result.put("winner", winner).put("points", points);
+        }
+        broadcast(result);
+        nextStep = RoomManager.schedule(this::nextRound, ROUND_PAUSE_MILLIS);
+    }
+
+    private synchronized void nextRound() {
+        if (closed) {
+            return;
+        }
+        for (Member member : members) {
+            if (member.player) {
+                startRound();
+                return;
+            }
+        }
+        // Only spectators are left; the next player to join starts a round.
+        nextStep = null;
+    }
+
+    /**
+     * Returns the best room scores as {@code [player, points]} arrays.
+     */
+    private JSONArray scoreboard() {
+        List<Map.Entry<String, Integer>> entries = new ArrayList<>(scores.entrySet());
+        entries.sort((a, b) -> b.getValue() - a.getValue());
+        JSONArray board = new JSONArray();
+        for (Map.Entry<String, Integer> entry : entries.subList(0, Math.min(SCOREBOARD_SIZE, entries.size()))) {
+            board.put(new JSONArray().put(entry.getKey()).put(entry.getValue()));
+        }
+        return board;
+    }
+
+    private JSONObject event(String type) {
+        JSONObject event = new JSONObject();
+        event.put("type", type);
+        event.put("room", name);
+        event.put("members", members.size());
+        return event;
+    }
+
+    private void broadcast(JSONObject message) {
+        broadcast(FrameWriter.encode(message));
+    }
+
+    private void broadcast(byte[] frame) {
+        for (Member member : members) {
+            member.deliver(frame);
+        }
+    }
+
+    /**
+     * One connection in a room, with its own queue of frames still to write.
+     */
+    public static final class Member {
+        private final String name;
+        private final boolean player;
+        private final FrameWriter out;
+        private final SerialExecutor mailbox;
+        private final AtomicInteger pending = new AtomicInteger();
+        private volatile GameRoom room;
+
+        Member(String name, boolean player, FrameWriter out, SerialExecutor mailbox) {
+            this.name = name;
+            this.player = player;
+            this.out = out;
+            this.mailbox = mailbox;
+        }
+
+        /**
+         * Returns the room this member is in.
+         *
+         * @return the room
+         */
+        public GameRoom getRoom() {
+            return room;
+        }
+
+        void setRoom(GameRoom room) {
+            this.room = room;
+        }
+
+        /**
+         * Submits a guess to the member's room.
+         *
+         * @param guess the guessed title
+         * @return true if the guess won the round
+         */
+        public boolean guess(String guess) {
+            return room.guess(this, guess);
+        }
+
+        /**
+         * Leaves the room.
+         */
+        public void leave() {
+            room.leave(this);
+        }
+
+        /**
+         * Queues a shared frame for this member. Never blocks.
+         */
+        void deliver(byte[] frame) {
+            if (pending.incrementAndGet() > MAX_PENDING_FRAMES) {
+                pending.decrementAndGet();
+                logger.warn("Dropping {} from room {}: too far behind.", name, room.name);
+                disconnect();
+                return;
+            }
+            mailbox.execute(() -> {
+                try {
+                    out.write(frame);
+                } catch (IOException e) {
+                    disconnect();
+                } finally {
+                    pending.decrementAndGet();
+                }
+            });
+        }
+
+        private void disconnect() {
+            // Leave from the timeline thread, not from inside the broadcast that is iterating the members.
+            RoomManager.schedule(this::leave, 0);
+            try {
+                out.close();
+            } catch (IOException e) {
+                logger.debug("Error closing room member {}: {}", name, e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package Assign32starter;
+
+import Assign32starter.entity.GameState;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A live game session held by the {@link SessionManager}.
+ * Connections bind to a GameSession once and mutate its {@link GameState} in place. All work on the
+ * state goes through {@link #call(Callable)}, which runs it on the session's own mailbox, so several
+ * connections resuming the same session never interleave their updates. When nothing else is running
+ * for the session, which is nearly always, the work runs on the calling thread without a hand-off.
+ */
+public class GameSession {
+    private final String id;
+    private final GameState state;
+    private final SerialExecutor mailbox;
+    private final long createdAt;
+    volatile long lastAccess;
+    // CLOCK reference bit, set on every access and cleared when the eviction hand passes.
+    volatile boolean referenced;
+    // Set to the new owner once the session has been handed over to another cluster node.
+    volatile String movedTo;
+    // Highest client sequence number applied to this session; used to resend safely after a reconnect.
+    volatile long lastSeq;
+    // Counts the mailbox tasks run, each of which may have changed the state; a new session counts as changed.
+    volatile long changes = 1;
+    // The value of changes that the snapshot file holds; only written by the snapshot thread and on restore.
+    volatile long savedChanges = 0;
+    // Number of connections bound to this session, or PARKED once it has moved off-heap.
+    private final AtomicInteger attachments = new AtomicInteger();
+    private static final int PARKED = -1;
+
+    /**
+     * Constructs a GameSession.
+     *
+     * @param id      the session identifier handed to the client
+     * @param state   the game state owned by this session
+     * @param workers the shared executor that runs mailbox tasks
+     * @param now     the creation time in milliseconds
+     */
+    GameSession(String id, GameState state, Executor workers, long now) {
+        this.id = id;
+        this.state = state;
+        this.mailbox = new SerialExecutor(workers);
+        this.createdAt = now;
+        this.lastAccess = now;
+    }
+
+    /**
+     * Retrieves the session identifier.
+     *
+     * @return the session ID as a String
+     */
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * Retrieves the live game state of this session.
+     * Only read or modify it from inside {@link #call(Callable)}.
+     *
+     * @return the session's GameState
+     */
+    public GameState getState() {
+        return state;
+    }
+
+    /**
+     * Runs the task on this session's mailbox and waits for its result.
+     * Tasks for the same session run one at a time in submission order. If the mailbox is idle the
+     * task runs right here on the calling thread; otherwise it is queued behind the running one.
+     *
+     * @param task the work to perform against the session state
+     * @param <T>  the result type
+     * @return the task's result
+     * @throws Exception the exception thrown by the task, or an InterruptedException if the caller was interrupted
+     */
+    public <T> T call(Callable<T> task) throws Exception {
+        if (mailbox.tryClaim()) {
+            try {
+                return task.call();
+            } finally {
+                changes++;
+                mailbox.release();
+            }
+        }
+        CompletableFuture<T> result = new CompletableFuture<>();
+        mailbox.execute(() -> {
+            try {
+                result.complete(task.call());
+            } catch (Throwable t) {
+                result.completeExceptionally(t);
+            } finally {
+                changes++;
+            }
+        });
+        try {
+            return result.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    /**
+     * Runs the task right here if the mailbox is idle, and otherwise does nothing. Unlike
+     * {@link #call(Callable)} the task does not count as a change, so it must only read the state.
+     * For background readers that would rather come back later than queue behind a busy session.
+     *
+     * @param task the read to perform against the session state
+     * @param <T>  the result type
+     * @return the task's result, or {@code null} if the mailbox was busy
+     * @throws Exception the exception thrown by the task
+     */
+    <T> T tryRead(Callable<T> task) throws Exception {
+        if (!mailbox.tryClaim()) {
+            return null;
+        }
+        try {
+            return task.call();
+        } finally {
+            mailbox.release();
+        }
+    }
+
+    /**
+     * Runs the task on this session's mailbox without waiting for it.
+     *
+     * @param task the work to perform against the session state
+     */
+    void submit(Runnable task) {
+        mailbox.execute(task);
+    }
+
+    /**
+     * Registers a connection as bound to this session, which keeps it from being parked.
+     *
+     * @return false if the session was parked in the meantime and must be looked up again
+     */
+    boolean attach() {
+        int current;
+        do {
+            current = attachments.get();
+            if (current == PARKED) {
+                return false;
+            }
+        } while (!attachments.compareAndSet(current, current + 1));
+        return true;
+    }
+
+    /**
+     * Unregisters a connection previously registered with {@link #attach()}.
+     */
+    void detach() {
+        attachments.decrementAndGet();
+    }
+
+    /**
+     * Marks the session as parked if no connection is bound to it. A parked session object is
+     * never used again; its state lives on in the off-heap store.
+     *
+     * @return true if the session may now be moved off-heap
+     */
+    boolean tryPark() {
+        return attachments.compareAndSet(0, PARKED);
+    }
+
+    /**
+     * Reverts {@link #tryPark()} when the session could not be moved after all.
+     */
+    void cancelPark() {
+        attachments.compareAndSet(PARKED, 0);
+    }
+
+    /**
+     * Returns whether the state may have changed since it was last written to the snapshot file.
+     *
+     * @return true if the session needs to be snapshotted
+     */
+    boolean isDirty() {
+        return changes != savedChanges;
+    }
+
+    /**
+     * Records that the snapshot file holds the state as it was after the given number of changes.
+     * Changes made since then keep the session dirty.
+     *
+     * @param upTo the value of {@code changes} when the written record was encoded
+     */
+    void markSaved(long upTo) {
+        savedChanges = upTo;
+    }
+
+    long getCreatedAt() {
+        return createdAt;
+    }
+
+    void touch(long now) {
+        lastAccess = now;
+        referenced = true;
+    }
+
+    boolean isExpired(long now) {
+        return now - lastAccess > SessionManager.IDLE_TTL_MILLIS || now - createdAt > SessionManager.MAX_LIFETIME_MILLIS;
+    }
+}
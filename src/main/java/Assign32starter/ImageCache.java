@@ -0,0 +1,79 @@
+package Assign32starter;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The ImageCache class keeps the most recently used decoded images, keyed by their content.
+ * <p>
+ * The server sends images as Base64 text without naming them, so an image is identified by a digest
+ * of that text. The same movie image sent again, in a later round or another game, is recognised and
+ * its decoded form reused instead of being decoded again. The least recently used image is evicted
+ * once more than {@code client.imageCacheSize} images (default 16) are held.
+ */
+public class ImageCache {
+    private static final int CAPACITY = Integer.getInteger("client.imageCacheSize", 16);
+    private final Map<String, BufferedImage> images = new LinkedHashMap<String, BufferedImage>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, BufferedImage> eldest) {
+            return size() > CAPACITY;
+        }
+    };
+
+    /**
+     * Returns the identity of an encoded image.
+     *
+     * @param base64 the image as sent by the server
+     * @return a digest of the text
+     */
+    public static String keyOf(String base64) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return Base64.getEncoder().encodeToString(digest.digest(base64.getBytes(StandardCharsets.ISO_8859_1)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * Returns a cached image.
+     *
+     * @param key the image identity from {@link #keyOf(String)}
+     * @return the decoded image, or {@code null} if it is not cached
+     */
+    public synchronized BufferedImage get(String key) {
+        return images.get(key);
+    }
+
+    /**
+     * Returns the decoded form of an encoded image, decoding and caching it if needed. Call it off the
+     * event dispatch thread: decoding a large image takes a while.
+     *
+     * @param key    the image identity from {@link #keyOf(String)}
+     * @param base64 the image as sent by the server
+     * @return the decoded image
+     * @throws IOException if the data is not an image
+     */
+    public BufferedImage decode(String key, String base64) throws IOException {
+        BufferedImage image = get(key);
+        if (image != null) {
+            return image;
+        }
+        image = ImageIO.read(new ByteArrayInputStream(Base64.getDecoder().decode(base64)));
+        if (image == null) {
+            throw new IOException("Not a readable image.");
+        }
+        synchronized (this) {
+            images.put(key, image);
+        }
+        return image;
+    }
+}
@@ -0,0 +1,221 @@
+package Assign32starter;
+
+import Assign32starter.enums.GameType;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The ImagePrefetcher class prepares a player's next movie while they are still guessing the current one.
+ * <p>
+ * As soon as a round starts, the next movie is chosen and its first image is read and Base64-encoded on a
+ * background pool. When the player then guesses right or skips, the round switches to that movie and the
+ * encoded image is ready, instead of being read and encoded while the player waits. A client that asks
+ * for it with {@code "prefetch": true} also gets the image pushed ahead of time as a {@code prefetch}
+ * message, and the round's response then names the pushed image instead of carrying it again. Pushes are
+ * written on their own pool, never under a speculation's lock, so a stalled client holds up neither the
+ * preparing threads nor its own round; a round that starts before its image is ready reads it directly.
+ * <p>
+ * A speculation is a hit when its round is played, and wasted when the game ends or the connection closes
+ * first. Hits, misses and the bytes pushed for nothing are reported by {@link #stats()}. Set
+ * {@code prefetch.enabled=false} to turn speculation off and {@code prefetch.push=false} to prepare images
+ * without pushing them.
+ */
+public class ImagePrefetcher {
+    private static final Logger logger = LoggerFactory.getLogger(ImagePrefetcher.class);
+    private static final boolean ENABLED = Boolean.parseBoolean(System.getProperty("prefetch.enabled", "true"));
+    private static final boolean PUSH = Boolean.parseBoolean(System.getProperty("prefetch.push", "true"));
+    private static final ExecutorService workers = Executors.newFixedThreadPool(Integer.getInteger("prefetch.threads", 2), r -> {
+        Thread t = new Thread(r, "image-prefetch");
+        t.setDaemon(true);
+        return t;
+    });
+    private static final ExecutorService pushers = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "image-prefetch-push");
+        t.setDaemon(true);
+        return t;
+    });
+    private static final AtomicLong tokens = new AtomicLong();
+    private static final AtomicLong speculations = new AtomicLong();
+    private static final AtomicLong hits = new AtomicLong();
+    private static final AtomicLong misses = new AtomicLong();
+    private static final AtomicLong wasted = new AtomicLong();
+    private static final AtomicLong pushedBytes = new AtomicLong();
+    private static final AtomicLong wastedBytes = new AtomicLong();
+
+    /**
+     * Chooses the next movie for a game and starts preparing its first image.
+     *
+     * @param type the game length
+     * @param out  the connection to push the image to, or {@code null} to only prepare it
+     * @return the speculation, or {@code null} if prefetching is disabled
+     */
+    public static Prefetch speculate(GameType type, FrameWriter out) {
+        if (!ENABLED) {
+            return null;
+        }
+        speculations.incrementAndGet();
+        Prefetch prefetch = new Prefetch(type, SockServer.chooseRandomMovie(type), PUSH ? out : null);
+        workers.execute(prefetch::prepare);
+        return prefetch;
+    }
+
+    /**
+     * Counts a round that started without a usable speculation.
+     */
+    public static void recordMiss() {
+        misses.incrementAndGet();
+    }
+
+    /**
+     * Reports how well speculation is doing.
+     *
+     * @return {@code speculations}, {@code hits}, {@code misses}, {@code wasted}, {@code hitRate},
+     * {@code pushedBytes} and {@code wastedBytes}
+     */
+    public static JSONObject stats() {
+        long hit = hits.get();
+        long miss = misses.get();
+        JSONObject stats = new JSONObject();
+        stats.put("speculations", speculations.get());
+        stats.put("hits", hit);
+        stats.put("misses", miss);
+        stats.put("wasted", wasted.get());
+        stats.put("hitRate", hit + miss == 0 ? 0.0 : (double) hit / (hit + miss));
+        stats.put("pushedBytes", pushedBytes.get());
+        stats.put("wastedBytes", wastedBytes.get());
+        return stats;
+    }
+
+    /**
+     * One speculatively chosen next movie and its first image.
+     */
+    public static final class Prefetch {
+        private final long token = tokens.incrementAndGet();
+        private final GameType type;
+        private final Movie movie;
+        private final FrameWriter out;
+        private final CompletableFuture<String> image = new CompletableFuture<>();
+        // Guarded by this: the size of the pushed frame once written, and whether the speculation was used or dropped.
+        private int pushed = 0;
+        private boolean settled = false;
+
+        private Prefetch(GameType type, Movie movie, FrameWriter out) {
+            this.type = type;
+            this.movie = movie;
+            this.out = out;
+        }
+
+        /**
+         * Returns the movie chosen for the next round.
+         *
+         * @return the movie
+         */
+        public Movie getMovie() {
+            return movie;
+        }
+
+        /**
+         * Returns whether this speculation can start the next round of a game of the given length.
+         *
+         * @param type the game length being played
+         * @return true if it was made for that game length
+         */
+        public boolean fits(GameType type) {
+            return this.type == type;
+        }
+
+        private void prepare() {
+            try {
+                String encoded = SockServer.sendImg("img/" + movie.getMovieName() + "1.png", new JSONObject()).getString("image");
+                image.complete(encoded);
+                if (out != null) {
+                    pushers.execute(() -> push(encoded));
+                }
+            } catch (Exception e) {
+                logger.warn("Could not prefetch {}: {}", movie.getMovieName(), e.getMessage());
+                image.completeExceptionally(e);
+            }
+        }
+
+        private void push(String encoded) {
+            synchronized (this) {
+                if (settled) {
+                    return;
+                }
+            }
+            JSONObject message = new JSONObject();
+            message.put("type", "prefetch");
+            message.put("token", token);
+            message.put("image", encoded);
+            byte[] frame = FrameWriter.encode(message);
+            try {
+                out.write(frame);
+            } catch (Exception e) {
+                logger.debug("Could not push prefetched image: {}", e.getMessage());
+                return;
+            }
+            pushedBytes.addAndGet(frame.length);
+            boolean late;
+            synchronized (this) {
+                late = settled;
+                if (!late) {
+                    pushed = frame.length;
+                }
+            }
+            if (late) {
+                // The round started while the frame was being written, so its response carried the image too.
+                wastedBytes.addAndGet(frame.length);
+            }
+        }
+
+        /**
+         * Uses this speculation for the round that is starting and puts its image in the response: a
+         * reference to the pushed image if the client already has it, the encoded image otherwise. An image
+         * still being prepared is not waited for but read here, as it would be without a speculation.
+         *
+         * @param response the response starting the round
+         * @throws Exception if the image could not be read
+         */
+        public void apply(JSONObject response) throws Exception {
+            boolean alreadyPushed;
+            synchronized (this) {
+                settled = true;
+                alreadyPushed = pushed > 0;
+            }
+            hits.incrementAndGet();
+            if (alreadyPushed) {
+                response.put("prefetched", token);
+                return;
+            }
+            if (image.isDone() && !image.isCompletedExceptionally()) {
+                response.put("image", image.join());
+            } else {
+                // Not ready yet, or the speculation failed; read the image the usual way, which reports any error.
+                SockServer.sendImg("img/" + movie.getMovieName() + "1.png", response);
+            }
+        }
+
+        /**
+         * Drops this speculation, because its game ended or its connection closed. Any image already
+         * pushed counts as wasted.
+         */
+        public void discard() {
+            int bytes;
+            synchronized (this) {
+                if (settled) {
+                    return;
+                }
+                settled = true;
+                bytes = pushed;
+            }
+            wasted.incrementAndGet();
+            wastedBytes.addAndGet(bytes);
+        }
+    }
+}
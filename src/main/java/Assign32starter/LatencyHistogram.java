@@ -0,0 +1,96 @@
+package Assign32starter;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The LatencyHistogram class counts latencies in log-linear buckets, in the manner of an HDR histogram.
+ * <p>
+ * Values are recorded in microseconds. Values below {@value #SUB_BUCKETS} are counted exactly; above
+ * that, each power-of-two range is split into {@value #HALF_BUCKETS} equal buckets, so every value is
+ * known to within 1/64 (about 1.6%) whatever its magnitude, from a microsecond to several hours, in a
+ * fixed 2048 counters. Recording is a single atomic increment and never allocates, so any number of
+ * threads can record into one histogram while it is being read.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKETS = 128;
+    private static final int HALF_BUCKETS = SUB_BUCKETS / 2;
+    // Above this, values are counted as this: about 19 hours in microseconds.
+    private static final long MAX_VALUE = (1L << 36) - 1;
+    private static final int BUCKETS = SUB_BUCKETS + (36 - 7) * HALF_BUCKETS + HALF_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records one latency.
+     *
+     * @param micros the latency in microseconds; negative values count as zero
+     */
+    public void record(long micros) {
+        long value = Math.max(0, Math.min(MAX_VALUE, micros));
+        counts.incrementAndGet(indexOf(value));
+        total.incrementAndGet();
+        max.accumulateAndGet(value, Math::max);
+    }
+
+    /**
+     * Returns the number of recorded values.
+     *
+     * @return the count
+     */
+    public long getCount() {
+        return total.get();
+    }
+
+    /**
+     * Returns the largest recorded value.
+     *
+     * @return the maximum in microseconds, or 0 if nothing was recorded
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Returns the value below which the given share of recorded values fall, as the upper end of the
+     * bucket it lies in (never more than the maximum recorded).
+     *
+     * @param percentile the share, from 0 to 100, e.g. 99.9
+     * @return the value in microseconds, or 0 if nothing was recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+        long count = total.get();
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(highestValueIn(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    private static int indexOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        // The shift that brings the value into [64, 128).
+        int shift = 63 - Long.numberOfLeadingZeros(value) - 6;
+        return SUB_BUCKETS + (shift - 1) * HALF_BUCKETS + (int) (value >>> shift) - HALF_BUCKETS;
+    }
+
+    private static long highestValueIn(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = (index - SUB_BUCKETS) / HALF_BUCKETS + 1;
+        long sub = (index - SUB_BUCKETS) % HALF_BUCKETS + HALF_BUCKETS;
+        return ((sub + 1) << shift) - 1;
+    }
+}
@@ -1,118 +1,310 @@
 package Assign32starter;
 
+import Assign32starter.enums.GameType;
+import Assign32starter.enums.LeaderboardWindow;
 import org.json.JSONArray;
-import org.json.JSONObject;
 import org.slf4j.LoggerFactory;
 
-import java.io.*;
-import java.util.Comparator;
-import java.util.HashMap;
+import java.io.File;
+import java.util.EnumMap;
 import java.util.Map;
 
 /**
  * The Leaderboard class manages a leaderboard consisting of player names and their corresponding high scores.
  * It provides thread-safe operations for updating scores and retrieving a formatted leaderboard.
+ * <p>
+ * Scores are a per-second rate, which behaves differently for 30, 60 and 90 second games, so there is
+ * one partition per {@link GameType}. Each partition has its own {@link ScoreBoard} and its own
+ * {@link LeaderboardLog} segment ({@code leaderboard-<type>.json} and {@code leaderboard-<type>.log}),
+ * so updates to one partition never contend with another.
+ * <p>
+ * Scores enter a partition through its {@link ScoreAggregator}: handlers queue the score without
+ * locking and return, and the partition's single aggregator thread applies scores in coalesced
+ * batches and appends each batch to the partition's log. The JSON snapshot is rewritten only when the
+ * log is compacted. Scores are kept in {@link RankedScores} structures, so rank lookups are O(log n)
+ * and readers never wait for the writer. Every query targets a {@link LeaderboardWindow}: all-time, or
+ * the rolling daily and weekly windows, whose expired buckets the aggregator drops once a minute.
+ * <p>
+ * Each board carries a version that grows with every change. The formatted text is rendered at most
+ * once per version and cached, so repeated reads of an unchanged board cost nothing. Structured
+ * queries ({@link #top}, {@link #page} and {@link #around}) return at most {@value #MAX_PAGE_SIZE}
+ * entries as compact {@code [rank, playerKey, score]} arrays, so their size does not grow with the
+ * number of players.
  */
 public class Leaderboard {
-    private static final String LEADERBOARD_FILE = "leaderboard.json";
-    // Use a map to store leaderboard entries: key = playerName + ipAddress, value = score
-    private static final Map<String, Double> scores = new HashMap<>();
+    private static final String FILE_PREFIX = System.getProperty("leaderboard.filePrefix", "leaderboard");
+    /**
+     * The largest number of entries a structured query returns.
+     */
+    public static final int MAX_PAGE_SIZE = 100;
     private static final org.slf4j.Logger logger = LoggerFactory.getLogger(Leaderboard.class);
+    // Player keys are interned once for every partition and window.
+    private static final PlayerDictionary players =
+            new PlayerDictionary(Integer.getInteger("leaderboard.expectedPlayers", 1024),
+                    Integer.getInteger("leaderboard.maxPlayers", Integer.MAX_VALUE));
+    // One partition per game length: key = playerName + ipAddress, value = best score
+    private static final Map<GameType, Partition> partitions = new EnumMap<>(GameType.class);
 
     static {
-        loadLeaderboard();
+        migrateSharedFiles();
+        for (GameType type : GameType.values()) {
+            Partition partition = new Partition(type);
+            partition.log.recover();
+            partition.aggregator.setListener(changed -> LeaderboardReplicator.recordChanges(type, changed));
+            partition.aggregator.start();
+            partitions.put(type, partition);
+        }
     }
 
     /**
-     * Updates the score for a specific player in the leaderboard if the new score is higher than
-     * the existing score or if the player does not already exist in the leaderboard.
-     * If an update occurs, the leaderboard is saved persistently.
+     * Submits a score for a specific player. The partition's aggregator keeps it if it is higher than
+     * the player's existing score or if the player does not already exist in the leaderboard, and
+     * counts it in every window as a score made now.
+     * This method does not wait for the score to be applied or written; it returns the all-time rank
+     * the player holds once it is, computed from the current ranking.
      *
+     * @param type      the game length the score was made in
      * @param playerKey the unique identifier for the player whose score is being updated.
      * @param newScore  the new score to be compared with the existing score for the player.
+     * @return the player's provisional all-time rank in the partition
      */
-    public static synchronized void updateScore(String playerKey, double newScore) {
-        if (!scores.containsKey(playerKey) || newScore > scores.get(playerKey)) {
-            scores.put(playerKey, newScore);
-            saveLeaderboard();
+    public static int updateScore(GameType type, String playerKey, double newScore) {
+        Partition partition = partitions.get(type);
+        partition.aggregator.submit(playerKey, newScore, System.currentTimeMillis());
+        RankedScores scores = partition.board.ranking(LeaderboardWindow.ALL_TIME);
+        double best = scores.getScore(playerKey);
+        double effective = Double.isNaN(best) ? newScore : Math.max(best, newScore);
+        return scores.snapshot().rankOf(playerKey, effective);
+    }
+
+    /**
+     * Merges a score received from another cluster node. It is applied like a local score, but keeps
+     * the time it was made at and is not replicated to other nodes again.
+     *
+     * @param type      the game length partition
+     * @param playerKey the unique identifier for the player
+     * @param score     the score
+     * @param time      when the score was made, in milliseconds, or 0 for an all-time entry only
+     */
+    public static void merge(GameType type, String playerKey, double score, long time) {
+        partitions.get(type).aggregator.submitRemote(playerKey, score, time);
+    }
+
+    /**
+     * Visits every entry of a partition: each all-time entry with time 0, then each rolling-window
+     * bucket entry with its bucket's start time. Offering all of them to an empty board rebuilds this one.
+     *
+     * @param type    the game length partition
+     * @param visitor receives each entry
+     */
+    public static void forEachEntry(GameType type, EntryVisitor visitor) {
+        ScoreBoard board = partitions.get(type).board;
+        board.ranking(LeaderboardWindow.ALL_TIME).snapshot().forEach((key, score) -> visitor.visit(key, score, 0));
+        for (WindowedScores windowed : board.rollingWindows().values()) {
+            windowed.forEachBucket((bucketStart, entries) ->
+                    entries.forEach((key, score) -> visitor.visit(key, score, bucketStart)));
         }
     }
 
+    /**
+     * Returns a player's best score.
+     *
+     * @param type      the game length partition
+     * @param window    the leaderboard window
+     * @param playerKey the unique identifier for the player
+     * @return the score, or {@link Double#NaN} if the player has no score in the window
+     */
+    public static double getScore(GameType type, LeaderboardWindow window, String playerKey) {
+        return ranking(type, window).getScore(playerKey);
+    }
+
+    /**
+     * Returns the 1-based rank of a player on the leaderboard.
+     *
+     * @param type      the game length partition
+     * @param window    the leaderboard window
+     * @param playerKey the unique identifier for the player
+     * @return the player's rank, or -1 if the player has no score in the window
+     */
+    public static int getRank(GameType type, LeaderboardWindow window, String playerKey) {
+        RankedScores scores = ranking(type, window);
+        double score = scores.getScore(playerKey);
+        return Double.isNaN(score) ? -1 : scores.snapshot().rankOf(playerKey, score);
+    }
+
+    /**
+     * Returns the number of players on the leaderboard.
+     *
+     * @param type   the game length partition
+     * @param window the leaderboard window
+     * @return the number of players with a score in the window
+     */
+    public static int size(GameType type, LeaderboardWindow window) {
+        return ranking(type, window).size();
+    }
+
+    /**
+     * Returns the best players.
+     *
+     * @param type   the game length partition
+     * @param window the leaderboard window
+     * @param n      the number of entries, at most {@value #MAX_PAGE_SIZE}
+     * @return {@code [rank, playerKey, score]} entries, best first
+     */
+    public static JSONArray top(GameType type, LeaderboardWindow window, int n) {
+        return page(type, window, 0, n);
+    }
+
+    /**
+     * Returns one page of the leaderboard.
+     *
+     * @param type   the game length partition
+     * @param window the leaderboard window
+     * @param offset the 0-based position of the first entry
+     * @param limit  the number of entries, at most {@value #MAX_PAGE_SIZE}
+     * @return {@code [rank, playerKey, score]} entries, best first
+     */
+    public static JSONArray page(GameType type, LeaderboardWindow window, int offset, int limit) {
+        return entries(ranking(type, window).snapshot(), Math.max(0, offset), limit);
+    }
+
+    /**
+     * Returns a player's entry together with up to {@code radius} neighbours above and below it.
+     * If the player has no score yet, the top of the leaderboard is returned instead.
+     *
+     * @param type      the game length partition
+     * @param window    the leaderboard window
+     * @param playerKey the unique identifier for the player
+     * @param radius    the number of neighbours on each side
+     * @return {@code [rank, playerKey, score]} entries, best first
+     */
+    public static JSONArray around(GameType type, LeaderboardWindow window, String playerKey, int radius) {
+        RankedScores scores = ranking(type, window);
+        RankedScores.Snapshot snapshot = scores.snapshot();
+        int limit = 2 * Math.max(0, radius) + 1;
+        double score = scores.getScore(playerKey);
+        if (Double.isNaN(score)) {
+            return entries(snapshot, 0, limit);
+        }
+        int position = snapshot.rankOf(playerKey, score) - 1;
+        return entries(snapshot, Math.max(0, position - radius), limit);
+    }
+
+    private static JSONArray entries(RankedScores.Snapshot snapshot, int offset, int limit) {
+        JSONArray entries = new JSONArray();
+        int[] rank = {offset};
+        snapshot.forEachInRange(offset, Math.min(limit, MAX_PAGE_SIZE), (key, score) -> {
+            JSONArray entry = new JSONArray();
+            entry.put(++rank[0]);
+            entry.put(key);
+            entry.put(score);
+            entries.put(entry);
+        });
+        return entries;
+    }
+
+    /**
+     * Returns the current leaderboard version. Clients send back the version they hold so an
+     * unchanged leaderboard does not have to be sent again.
+     *
+     * @param type   the game length partition
+     * @param window the leaderboard window
+     * @return the version, which changes with every change to the window
+     */
+    public static long getVersion(GameType type, LeaderboardWindow window) {
+        return ranking(type, window).version();
+    }
+
     /**
      * Generates a formatted string representation of the leaderboard, showing player names
      * and their scores in descending order of scores.
      * The scores are displayed with two decimal places.
+     * The text covers the all-time window and is cached per leaderboard version, so it is only rebuilt after a change.
      *
+     * @param type the game length partition
      * @return a string representing the leaderboard with player names and scores
      */
-    public static synchronized String getFormattedLeaderboard() {
-        // Sort entries descending by score.
-        StringBuilder sb = new StringBuilder("Leaderboard:\n");
-        scores.entrySet().stream()
-                .sorted(Map.Entry.comparingByValue(Comparator.reverseOrder()))
-                .forEach(entry -> sb.append(entry.getKey()).append(": ").append(String.format("%.2f", entry.getValue())).append("\n"));
-        return sb.toString();
+    public static String getFormattedLeaderboard(GameType type) {
+        Partition partition = partitions.get(type);
+        RankedScores.Snapshot snapshot = partition.board.ranking(LeaderboardWindow.ALL_TIME).snapshot();
+        Rendered cached = partition.rendered;
+        if (cached.version == snapshot.version()) {
+            return cached.text;
+        }
+        // Entries are already held in descending score order.
+        StringBuilder sb = new StringBuilder("Leaderboard (" + type.name().toLowerCase() + " games):\n");
+        snapshot.forEach((key, score) -> sb.append(key).append(": ").append(String.format("%.2f", score)).append("\n"));
+        String text = sb.toString();
+        // Concurrent renders of the same version are harmless; never replace a newer rendering.
+        if (partition.rendered.version < snapshot.version()) {
+            partition.rendered = new Rendered(snapshot.version(), text);
+        }
+        return text;
+    }
+
+    private static RankedScores ranking(GameType type, LeaderboardWindow window) {
+        return partitions.get(type).board.ranking(window);
     }
 
     /**
-     * Loads the leaderboard data from a file and populates the in-memory scores map.
-     * This method reads the leaderboard file specified by the `LEADERBOARD_FILE` constant.
-     * If the file does not exist, the method simply returns without performing any operation.
-     * If the file exists, it parses the JSON content and extracts player keys and their corresponding scores,
-     * adding them to the `scores` map.
-     * The method is synchronized to ensure thread safety when accessing or modifying
-     * shared resources such as the `scores` map.
-     * Exception handling is provided to log any errors that might occur during file reading
-     * or JSON parsing operations.
+     * Moves the files of the former single, unpartitioned leaderboard to the SHORT partition, the
+     * default game length, unless that partition already has files of its own.
      */
-    private static synchronized void loadLeaderboard() {
-        File file = new File(LEADERBOARD_FILE);
-        if (!file.exists()) {
-            return; // No leaderboard file yet.
+    private static void migrateSharedFiles() {
+        File sharedSnapshot = new File(FILE_PREFIX + ".json");
+        File sharedLog = new File(FILE_PREFIX + ".log");
+        File shortSnapshot = new File(Partition.snapshotFile(GameType.SHORT));
+        File shortLog = new File(Partition.logFile(GameType.SHORT));
+        if ((!sharedSnapshot.exists() && !sharedLog.exists()) || shortSnapshot.exists() || shortLog.exists()) {
+            return;
         }
-        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
-            StringBuilder jsonStr = new StringBuilder();
-            String line;
-            while ((line = reader.readLine()) != null) {
-                jsonStr.append(line);
-            }
-            JSONObject jsonObject = new JSONObject(jsonStr.toString());
-            JSONArray leaderboardArray = jsonObject.getJSONArray("leaderboard");
-            for (int i = 0; i < leaderboardArray.length(); i++) {
-                JSONObject entry = leaderboardArray.getJSONObject(i);
-                String key = entry.getString("playerKey");
-                double score = entry.getDouble("score");
-                scores.put(key, score);
-            }
-        } catch (Exception e) {
-            logger.error("Error loading leaderboard: ", e);
+        boolean moved = (!sharedSnapshot.exists() || sharedSnapshot.renameTo(shortSnapshot))
+                && (!sharedLog.exists() || sharedLog.renameTo(shortLog));
+        if (moved) {
+            logger.info("Moved the shared leaderboard into the {} partition.", GameType.SHORT);
+        } else {
+            logger.warn("Could not move the shared leaderboard files into the {} partition.", GameType.SHORT);
         }
     }
 
     /**
-     * Saves the current state of the leaderboard to a persistent storage file.
-     * The leaderboard data is serialized into JSON format and written to the specified file.
-     * Each player's score is represented as a JSON object containing their unique key and score value.
-     * If an IOException occurs during writing, it is logged as an error.
-     * A success message is logged after the operation completes.
-     * This method is synchronized to ensure thread safety when accessing and writing the leaderboard data.
+     * The leaderboard of one game length: its windows, its log segment, its writer and its cached text.
      */
-    private static synchronized void saveLeaderboard() {
-        JSONArray array = new JSONArray();
-        for (Map.Entry<String, Double> entry : scores.entrySet()) {
-            JSONObject obj = new JSONObject();
-            obj.put("playerKey", entry.getKey());
-            obj.put("score", entry.getValue());
-            array.put(obj);
+    private static final class Partition {
+        final ScoreBoard board = new ScoreBoard(players);
+        final LeaderboardLog log;
+        final ScoreAggregator aggregator;
+        // The last rendered leaderboard text and the version it was rendered from.
+        volatile Rendered rendered = new Rendered(-1, null);
+
+        Partition(GameType type) {
+            this.log = new LeaderboardLog(board, snapshotFile(type), logFile(type));
+            this.aggregator = new ScoreAggregator(board, log, "leaderboard-" + type.name().toLowerCase());
+        }
+
+        static String snapshotFile(GameType type) {
+            return FILE_PREFIX + "-" + type.name().toLowerCase() + ".json";
+        }
+
+        static String logFile(GameType type) {
+            return FILE_PREFIX + "-" + type.name().toLowerCase() + ".log";
         }
-        JSONObject root = new JSONObject();
-        root.put("leaderboard", array);
-        try (PrintWriter writer = new PrintWriter(new FileWriter(LEADERBOARD_FILE))) {
-            writer.write(root.toString(2));
-        } catch (IOException e) {
-            logger.error("Error saving leaderboard: ", e);
-        } finally {
-            logger.info("Leaderboard saved successfully.");
+    }
+
+    /**
+     * Visitor for {@link #forEachEntry(GameType, EntryVisitor)}.
+     */
+    public interface EntryVisitor {
+        void visit(String playerKey, double score, long time);
+    }
+
+    private static final class Rendered {
+        final long version;
+        final String text;
+
+        Rendered(long version, String text) {
+            this.version = version;
+            this.text = text;
         }
     }
 }
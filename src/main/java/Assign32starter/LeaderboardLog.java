@@ -0,0 +1,413 @@
+package Assign32starter;
+
+import Assign32starter.enums.LeaderboardWindow;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * The LeaderboardLog class persists a {@link ScoreBoard} as a snapshot plus an append-only log.
+ * <p>
+ * Every improved score is appended to the log as one small record; the snapshot (the JSON file the
+ * leaderboard has always used) is only rewritten when the log has grown well past the number of
+ * players, and is swapped in atomically. Appends are group-committed: the partition's
+ * {@link ScoreAggregator} thread, the only thread that uses the log after recovery, writes each batch
+ * of changes in one call and then syncs according to the {@code leaderboard.fsync} policy:
+ * <ul>
+ *     <li>{@code always} (default): fsync after every batch.</li>
+ *     <li>{@code interval}: fsync at most every {@code leaderboard.fsyncMillis} (default 1000) milliseconds.</li>
+ *     <li>{@code never}: leave flushing to the operating system.</li>
+ * </ul>
+ * Recovery loads the snapshot and replays the log. Scores are max-registers, so replaying records
+ * that the snapshot already contains is harmless. A torn or corrupt tail, for example from a crash
+ * mid-write, is detected by the per-record checksum and cut off.
+ * <p>
+ * The snapshot holds the all-time entries under {@code "leaderboard"} and the live buckets of each
+ * rolling window under {@code "windows"}; every log record carries the time its score was made, so
+ * replay puts it into the right buckets.
+ * <p>
+ * Log format: a 4-byte magic, a 1-byte version, then records of
+ * {@code [time:8][score:8][key:UTF][crc32:4]}, where the checksum covers the time, score and key bytes.
+ */
+public class LeaderboardLog {
+    private static final Logger logger = LoggerFactory.getLogger(LeaderboardLog.class);
+    private static final int MAGIC = 0x4C424C47; // "LBLG"
+    private static final byte FORMAT_VERSION = 2;
+    private static final int HEADER_BYTES = 5;
+    private static final String FSYNC_POLICY = System.getProperty("leaderboard.fsync", "always");
+    private static final long FSYNC_INTERVAL_MILLIS = Long.getLong("leaderboard.fsyncMillis", 1000);
+
+    private final ScoreBoard board;
+    private final File snapshotFile;
+    private final File logFile;
+
+    // Only touched by the aggregator thread after recovery.
+    private FileChannel channel;
+    private long recordsInLog = 0;
+    private long lastSync = 0;
+
+    /**
+     * Constructs a log for the given board.
+     *
+     * @param board        the board to recover into and compact from
+     * @param snapshotFile the path of the JSON snapshot
+     * @param logFile      the path of the append-only log
+     */
+    public LeaderboardLog(ScoreBoard board, String snapshotFile, String logFile) {
+        this.board = board;
+        this.snapshotFile = new File(snapshotFile);
+        this.logFile = new File(logFile);
+    }
+
+    /**
+     * Loads the snapshot and replays the log into the board, then opens the log for appending.
+     *
+     * @return the number of log records replayed
+     */
+    public long recover() {
+        long start = System.nanoTime();
+        loadSnapshot();
+        long goodBytes = HEADER_BYTES;
+        if (logFile.exists()) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(logFile), 1 << 16))) {
+                int magic = in.readInt();
+                byte version = in.readByte();
+                if (magic != MAGIC || version != FORMAT_VERSION) {
+                    logger.warn("Ignoring {}: unknown format. It is kept as {}.corrupt.", logFile, logFile);
+                    goodBytes = 0;
+                } else {
+                    CRC32 crc = new CRC32();
+                    while (true) {
+                        long time;
+                        try {
+                            time = in.readLong();
+                        } catch (EOFException end) {
+                            break;
+                        }
+                        double score = in.readDouble();
+                        String key = in.readUTF();
+                        if (in.readInt() != checksum(crc, time, score, key)) {
+                            logger.warn("Corrupt record in {}; keeping the {} records read so far.", logFile, recordsInLog);
+                            break;
+                        }
+                        board.offer(key, score, time);
+                        recordsInLog++;
+                        goodBytes += recordBytes(key);
+                    }
+                }
+            } catch (EOFException e) {
+                logger.warn("{} ends in a partial record; it was ignored.", logFile);
+            } catch (IOException e) {
+                logger.warn("Unreadable record in {} ({}); keeping the {} records read so far.", logFile, e.getMessage(), recordsInLog);
+            }
+        }
+        try {
+            if (goodBytes < HEADER_BYTES) {
+                Files.move(logFile.toPath(), new File(logFile.getPath() + ".corrupt").toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            openLog(goodBytes);
+        } catch (IOException e) {
+            logger.error("Error opening leaderboard log: ", e);
+        }
+        logger.info("Recovered {} leaderboard entries ({} log records) in {} ms.", allTimeSize(), recordsInLog,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        return recordsInLog;
+    }
+
+    /**
+     * Appends one batch of changed scores with a single write, then syncs under the {@code always} policy.
+     *
+     * @param records the changes to append
+     * @throws IOException if the log cannot be written
+     */
+    public void write(List<Record> records) throws IOException {
+        if (records.isEmpty()) {
+            return;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(records.size() * 48);
+        DataOutputStream out = new DataOutputStream(bytes);
+        CRC32 crc = new CRC32();
+        for (Record r : records) {
+            out.writeLong(r.time);
+            out.writeDouble(r.score);
+            out.writeUTF(r.key);
+            out.writeInt(checksum(crc, r.time, r.score, r.key));
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        recordsInLog += records.size();
+        if ("always".equals(FSYNC_POLICY)) {
+            channel.force(false);
+            lastSync = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Syncs the log if the {@code interval} policy is due, or unconditionally when forced.
+     *
+     * @param force true to sync regardless of the policy
+     * @throws IOException if the log cannot be synced
+     */
+    public void sync(boolean force) throws IOException {
+        long now = System.currentTimeMillis();
+        if ((force || "interval".equals(FSYNC_POLICY)) && now - lastSync >= (force ? 0 : FSYNC_INTERVAL_MILLIS)) {
+            channel.force(false);
+            lastSync = now;
+        }
+    }
+
+    /**
+     * Compacts the log if it holds many more records than there are players.
+     *
+     * @throws IOException if the snapshot or the new log cannot be written
+     */
+    public void compactIfDue() throws IOException {
+        if (recordsInLog > 2L * allTimeSize() + 1024) {
+            compact();
+        }
+    }
+
+    /**
+     * Syncs and closes the log.
+     */
+    public void close() {
+        try {
+            sync(true);
+            channel.close();
+        } catch (IOException e) {
+            logger.error("Error closing leaderboard log: ", e);
+        }
+    }
+
+    /**
+     * Writes the whole board as a new snapshot, swaps it in atomically and starts an empty log.
+     * Every record in the old log is already reflected in the board, so nothing is lost.
+     */
+    private void compact() throws IOException {
+        long before = recordsInLog;
+        JSONArray array = toJson(board.ranking(LeaderboardWindow.ALL_TIME).snapshot());
+        JSONObject windows = new JSONObject();
+        board.rollingWindows().forEach((window, windowed) -> {
+            JSONArray buckets = new JSONArray();
+            windowed.forEachBucket((bucketStart, entries) -> {
+                JSONObject bucket = new JSONObject();
+                bucket.put("start", bucketStart);
+                bucket.put("entries", toJson(entries));
+                buckets.put(bucket);
+            });
+            windows.put(window.getValue(), buckets);
+        });
+        JSONObject root = new JSONObject();
+        root.put("leaderboard", array);
+        root.put("windows", windows);
+        File temp = new File(snapshotFile.getPath() + ".tmp");
+        try (FileOutputStream fos = new FileOutputStream(temp)) {
+            Writer writer = new OutputStreamWriter(fos, StandardCharsets.UTF_8);
+            writer.write(root.toString(2));
+            writer.flush();
+            fos.getFD().sync();
+        }
+        Files.move(temp.toPath(), snapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        channel.close();
+        openLog(0);
+        logger.info("Compacted {} log records into {} ({} entries).", before, snapshotFile, array.length());
+    }
+
+    /**
+     * Opens the log for appending, cutting it to the given length. A length shorter than the header
+     * starts a fresh log.
+     */
+    private void openLog(long length) throws IOException {
+        channel = FileChannel.open(logFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        if (length < HEADER_BYTES || channel.size() < HEADER_BYTES) {
+            channel.truncate(0);
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).putInt(MAGIC).put(FORMAT_VERSION);
+            header.flip();
+            channel.write(header);
+            channel.force(false);
+            recordsInLog = 0;
+        } else if (channel.size() > length) {
+            channel.truncate(length);
+            channel.force(false);
+        }
+        channel.position(channel.size());
+    }
+
+    private void loadSnapshot() {
+        if (!snapshotFile.exists()) {
+            return; // No leaderboard file yet.
+        }
+        try {
+            JSONObject jsonObject = new JSONObject(new String(Files.readAllBytes(snapshotFile.toPath()), StandardCharsets.UTF_8));
+            JSONArray leaderboardArray = jsonObject.getJSONArray("leaderboard");
+            for (int i = 0; i < leaderboardArray.length(); i++) {
+                JSONObject entry = leaderboardArray.getJSONObject(i);
+                // Time 0 keeps all-time entries out of the rolling windows.
+                board.offer(entry.getString("playerKey"), entry.getDouble("score"), 0);
+            }
+            JSONObject windows = jsonObject.optJSONObject("windows");
+            if (windows != null) {
+                for (String name : windows.keySet()) {
+                    JSONArray buckets = windows.getJSONArray(name);
+                    WindowedScores windowed = board.rollingWindows().get(LeaderboardWindow.fromValue(name));
+                    for (int b = 0; windowed != null && b < buckets.length(); b++) {
+                        JSONObject bucket = buckets.getJSONObject(b);
+                        JSONArray entries = bucket.getJSONArray("entries");
+                        for (int i = 0; i < entries.length(); i++) {
+                            JSONObject entry = entries.getJSONObject(i);
+                            windowed.offer(entry.getString("playerKey"), entry.getDouble("score"), bucket.getLong("start"));
+                        }
+                    }
+                }
+            }
+        } catch (Exception e) {
+            logger.error("Error loading leaderboard: ", e);
+        }
+    }
+
+    private int allTimeSize() {
+        return board.ranking(LeaderboardWindow.ALL_TIME).size();
+    }
+
+    private static JSONArray toJson(RankedScores.Snapshot entries) {
+        JSONArray array = new JSONArray();
+        entries.forEach((key, score) -> {
+            JSONObject obj = new JSONObject();
+            obj.put("playerKey", key);
+            obj.put("score", score);
+            array.put(obj);
+        });
+        return array;
+    }
+
+    private static int checksum(CRC32 crc, long time, double score, String key) {
+        crc.reset();
+        ByteBuffer fixed = ByteBuffer.allocate(Long.BYTES + Double.BYTES);
+        fixed.putLong(time);
+        fixed.putDouble(score);
+        crc.update(fixed.array(), 0, fixed.position());
+        crc.update(key.getBytes(StandardCharsets.UTF_8));
+        return (int) crc.getValue();
+    }
+
+    private static long recordBytes(String key) {
+        return Long.BYTES + Double.BYTES + 2 + modifiedUtf8Length(key) + Integer.BYTES;
+    }
+
+    /**
+     * Returns the length {@link DataOutputStream#writeUTF(String)} uses for the string's characters.
+     */
+    private static int modifiedUtf8Length(String s) {
+        int length = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            length += (c >= 0x0001 && c <= 0x007F) ? 1 : (c <= 0x07FF ? 2 : 3);
+        }
+        return length;
+    }
+
+    /**
+     * One score change: the player key, the new score and the time it was made.
+     */
+    public static final class Record {
+        // The smallest bucket of any rolling window; every larger bucket is a whole number of these.
+        private static final long SLOT_MILLIS = Arrays.stream(LeaderboardWindow.values())
+                .mapToLong(LeaderboardWindow::getBucketMillis).filter(millis -> millis > 0).min().orElse(1);
+
+        final String key;
+        final double score;
+        final long time;
+        // Received from another cluster node rather than scored here, so it is not replicated again.
+        final boolean remote;
+
+        public Record(String key, double score, long time) {
+            this(key, score, time, false);
+        }
+
+        public Record(String key, double score, long time, boolean remote) {
+            this.key = key;
+            this.score = score;
+            this.time = time;
+            this.remote = remote;
+        }
+
+        /**
+         * Returns what records are merged by. Two records for the same player whose times fall in the
+         * same slot land in the same bucket of every rolling window, so only the better one matters;
+         * records from different slots count in different windows and are never merged. All-time
+         * entries, which travel with time 0, have a slot of their own.
+         *
+         * @return the merge key
+         */
+        Slot slot() {
+            return new Slot(key, time - Math.floorMod(time, SLOT_MILLIS));
+        }
+
+        /**
+         * The max-register merge of two records in the same slot: the higher score wins, and on a tie
+         * the later time, so windows keep it longest.
+         *
+         * @param a one record
+         * @param b the other record
+         * @return the record to keep
+         */
+        static Record best(Record a, Record b) {
+            if (a.score != b.score) {
+                return a.score > b.score ? a : b;
+            }
+            return a.time >= b.time ? a : b;
+        }
+    }
+
+    /**
+     * A player key and the start of the slot a record's time falls in. See {@link Record#slot()}.
+     */
+    static final class Slot {
+        final String key;
+        final long start;
+
+        Slot(String key, long start) {
+            this.key = key;
+            this.start = start;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Slot)) {
+                return false;
+            }
+            Slot other = (Slot) o;
+            return start == other.start && key.equals(other.key);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * key.hashCode() + Long.hashCode(start);
+        }
+    }
+}
@@ -1,7 +1,13 @@
 package Assign32starter;
 
+import Assign32starter.enums.GameType;
+import Assign32starter.enums.LeaderboardWindow;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
 import javax.swing.*;
 import java.awt.*;
+import java.util.TreeMap;
 
 public class LeaderboardPanel extends JPanel {
     /**
@@ -10,14 +16,33 @@ public class LeaderboardPanel extends JPanel {
      * JScrollPane to allow scrolling when the content exceeds the visible area.
      */
     private final JTextArea leaderboardArea;
+    /**
+     * Selects the game length partition the leaderboard is shown for.
+     */
+    private final JComboBox<String> gameTypeSelector = new JComboBox<>(new String[]{"Short", "Medium", "Long"});
+    /**
+     * Selects the time window the leaderboard is shown for.
+     */
+    private final JComboBox<String> windowSelector = new JComboBox<>(new String[]{"All time", "Weekly", "Daily"});
+    /**
+     * The entries of the subscribed view by rank, kept up to date by pushed updates.
+     */
+    private final TreeMap<Integer, JSONArray> subscribed = new TreeMap<>();
 
     /**
      * Constructs a new LeaderboardPanel object, which is a specialized JPanel
      * designed to display leaderboard information in a read-only format.
-     * The panel uses a BorderLayout and contains a scrollable, non-editable text area.
+     * The panel uses a BorderLayout and contains game length and window selectors above a scrollable,
+     * non-editable text area.
      */
     public LeaderboardPanel() {
         setLayout(new BorderLayout());
+        JPanel selectors = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        selectors.add(new JLabel("Game:"));
+        selectors.add(gameTypeSelector);
+        selectors.add(new JLabel("Window:"));
+        selectors.add(windowSelector);
+        add(selectors, BorderLayout.NORTH);
         leaderboardArea = new JTextArea();
         leaderboardArea.setEditable(false); // Read-only display
         JScrollPane scrollPane = new JScrollPane(leaderboardArea);
@@ -33,4 +58,95 @@ public class LeaderboardPanel extends JPanel {
     public void updateLeaderboard(String leaderboardText) {
         leaderboardArea.setText(leaderboardText);
     }
+
+    /**
+     * Registers a callback run whenever the user picks a different leaderboard selection.
+     *
+     * @param listener the callback
+     */
+    public void setSelectionListener(Runnable listener) {
+        gameTypeSelector.addActionListener(e -> listener.run());
+        windowSelector.addActionListener(e -> listener.run());
+    }
+
+    /**
+     * Returns the selected game length partition.
+     *
+     * @return the game type chosen in the selector
+     */
+    public GameType getSelectedGameType() {
+        return GameType.values()[gameTypeSelector.getSelectedIndex()];
+    }
+
+    /**
+     * Returns the selected time window.
+     *
+     * @return the window chosen in the selector
+     */
+    public LeaderboardWindow getSelectedWindow() {
+        switch (windowSelector.getSelectedIndex()) {
+            case 1:
+                return LeaderboardWindow.WEEKLY;
+            case 2:
+                return LeaderboardWindow.DAILY;
+            default:
+                return LeaderboardWindow.ALL_TIME;
+        }
+    }
+
+    /**
+     * Returns a short label for the current selection, used as a heading.
+     *
+     * @return the selection label
+     */
+    public String getSelectionLabel() {
+        return gameTypeSelector.getSelectedItem() + " games, " + windowSelector.getSelectedItem();
+    }
+
+    /**
+     * Updates the leaderboard display from structured entries, one line per entry.
+     *
+     * @param title   the heading shown above the entries
+     * @param entries the entries as {@code [rank, playerKey, score]} arrays
+     * @param total   the number of players on the leaderboard, or -1 if unknown
+     */
+    public void showEntries(String title, JSONArray entries, int total) {
+        subscribed.clear();
+        render(title, entries, total);
+    }
+
+    /**
+     * Applies a pushed {@code leaderboardUpdate} to the subscribed view: entries outside the update's
+     * {@code from}..{@code to} ranks are dropped and the entries in {@code set} replace those at their
+     * ranks, so only what changed is touched. Must be called on the event dispatch thread.
+     *
+     * @param title  the heading shown above the entries
+     * @param update the pushed update
+     */
+    public void applyUpdate(String title, JSONObject update) {
+        int from = update.getInt("from");
+        int to = update.getInt("to");
+        subscribed.headMap(from).clear();
+        subscribed.tailMap(to, false).clear();
+        JSONArray set = update.getJSONArray("set");
+        for (int i = 0; i < set.length(); i++) {
+            JSONArray entry = set.getJSONArray(i);
+            subscribed.put(entry.getInt(0), entry);
+        }
+        render(title, new JSONArray(subscribed.values()), update.optInt("total", -1));
+    }
+
+    private void render(String title, JSONArray entries, int total) {
+        StringBuilder sb = new StringBuilder(title);
+        if (total >= 0) {
+            sb.append(" (").append(total).append(" players)");
+        }
+        sb.append(":\n");
+        for (int i = 0; i < entries.length(); i++) {
+            JSONArray entry = entries.getJSONArray(i);
+            sb.append(entry.getInt(0)).append(". ").append(entry.getString(1)).append(": ")
+                    .append(String.format("%.2f", entry.getDouble(2))).append("\n");
+        }
+        leaderboardArea.setText(sb.toString());
+    }
 }
@@ -0,0 +1,239 @@
+package Assign32starter;
+
+import Assign32starter.enums.GameType;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The LeaderboardReplicator class keeps the leaderboards of all cluster nodes converging on the same ranking.
+ * <p>
+ * A leaderboard entry is a max-register per player and time slot (see {@link LeaderboardLog.Record#slot()}):
+ * merging two copies of the same slot keeps the higher score, copies of different slots are kept apart,
+ * and merging is commutative, associative and idempotent. So every node accepts scores locally and, every
+ * {@code leaderboard.syncMillis} milliseconds, sends each peer the entries that changed since its last
+ * successful exchange with that peer, as compact {@code [playerKey, score, time]} arrays. A peer merges
+ * them through its own {@link ScoreAggregator}, which means they are logged and ranked exactly like
+ * local scores, and that the order or repetition of deltas never matters. Every node sends its own
+ * scores to every member directly, so entries merged from a peer are not sent on again; otherwise
+ * each score would cross every link instead of one link per peer.
+ * <p>
+ * Deltas for an unreachable peer are kept, merged per player and slot, until it answers again. A node that has
+ * just started, or a peer that has just joined, gets the sender's whole leaderboard once, so entries
+ * whose deltas were lost with a restart still arrive. Entries travel with the time they were made, so
+ * rolling windows converge too.
+ */
+public class LeaderboardReplicator {
+    private static final Logger logger = LoggerFactory.getLogger(LeaderboardReplicator.class);
+    private static final long SYNC_MILLIS = Long.getLong("leaderboard.syncMillis", 1000);
+    private static final int MAX_ENTRIES_PER_MESSAGE = 1000;
+    // Pending deltas per peer, per partition, keeping the best record per player and slot.
+    private static final Map<String, Map<GameType, Map<LeaderboardLog.Slot, LeaderboardLog.Record>>> pending = new ConcurrentHashMap<>();
+    // Peers that still have to receive this node's whole leaderboard.
+    private static final Set<String> needFullSync = ConcurrentHashMap.newKeySet();
+    private static final Set<String> knownPeers = ConcurrentHashMap.newKeySet();
+    private static volatile boolean enabled = false;
+
+    /**
+     * Starts exchanging deltas with the other cluster members. Called once cluster mode is configured.
+     */
+    public static void start() {
+        enabled = true;
+        ScheduledExecutorService sync = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "leaderboard-sync");
+            t.setDaemon(true);
+            return t;
+        });
+        sync.scheduleWithFixedDelay(() -> {
+            try {
+                syncPeers();
+            } catch (Exception e) {
+                logger.error("Error exchanging leaderboard deltas: ", e);
+            }
+        }, SYNC_MILLIS, SYNC_MILLIS, TimeUnit.MILLISECONDS);
+        logger.info("Leaderboard replication every {} ms.", SYNC_MILLIS);
+    }
+
+    /**
+     * Queues entries that changed on this node for every peer. Called on a partition's aggregator thread
+     * after each batch, so it only merges into the pending maps. Entries merged from a peer are skipped:
+     * their origin sends them to every member itself.
+     *
+     * @param type    the partition the entries changed in
+     * @param changed the records that changed the board
+     */
+    public static void recordChanges(GameType type, List<LeaderboardLog.Record> changed) {
+        if (!enabled) {
+            return;
+        }
+        for (String peer : ClusterManager.peers()) {
+            Map<LeaderboardLog.Slot, LeaderboardLog.Record> forPeer = partitionPending(peer, type);
+            synchronized (forPeer) {
+                for (LeaderboardLog.Record record : changed) {
+                    if (!record.remote) {
+                        forPeer.merge(record.slot(), record, LeaderboardLog.Record::best);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Merges a delta received from a peer into the local leaderboards.
+     *
+     * @param request the {@code leaderboardDelta} request
+     * @return the number of entries received
+     */
+    public static int merge(JSONObject request) {
+        JSONObject partitions = request.getJSONObject("partitions");
+        int received = 0;
+        for (GameType type : GameType.values()) {
+            JSONArray entries = partitions.optJSONArray(type.name().toLowerCase());
+            if (entries == null) {
+                continue;
+            }
+            for (int i = 0; i < entries.length(); i++) {
+                JSONArray entry = entries.getJSONArray(i);
+                Leaderboard.merge(type, entry.getString(0), entry.getDouble(1), entry.getLong(2));
+                received++;
+            }
+        }
+        return received;
+    }
+
+    private static void syncPeers() {
+        for (String peer : ClusterManager.peers()) {
+            if (knownPeers.add(peer)) {
+                needFullSync.add(peer);
+            }
+            if (needFullSync.contains(peer)) {
+                if (!sendFullState(peer)) {
+                    continue;
+                }
+                needFullSync.remove(peer);
+            }
+            sendPending(peer);
+        }
+    }
+
+    /**
+     * Sends everything queued for a peer. On failure the unsent entries go back into the queue.
+     */
+    private static void sendPending(String peer) {
+        Map<GameType, List<LeaderboardLog.Record>> delta = new EnumMap<>(GameType.class);
+        for (GameType type : GameType.values()) {
+            Map<LeaderboardLog.Slot, LeaderboardLog.Record> forPeer = partitionPending(peer, type);
+            synchronized (forPeer) {
+                if (!forPeer.isEmpty()) {
+                    delta.put(type, new ArrayList<>(forPeer.values()));
+                    forPeer.clear();
+                }
+            }
+        }
+        if (delta.isEmpty()) {
+            return;
+        }
+        try (ClusterManager.Peer connection = new ClusterManager.Peer(peer)) {
+            for (Map.Entry<GameType, List<LeaderboardLog.Record>> partition : delta.entrySet()) {
+                List<LeaderboardLog.Record> records = partition.getValue();
+                while (!records.isEmpty()) {
+                    List<LeaderboardLog.Record> chunk = records.subList(Math.max(0, records.size() - MAX_ENTRIES_PER_MESSAGE), records.size());
+                    send(connection, partition.getKey(), chunk);
+                    chunk.clear();
+                }
+            }
+        } catch (IOException e) {
+            logger.debug("Leaderboard delta for {} deferred: {}", peer, e.getMessage());
+            for (Map.Entry<GameType, List<LeaderboardLog.Record>> partition : delta.entrySet()) {
+                Map<LeaderboardLog.Slot, LeaderboardLog.Record> forPeer = partitionPending(peer, partition.getKey());
+                synchronized (forPeer) {
+                    for (LeaderboardLog.Record record : partition.getValue()) {
+                        forPeer.merge(record.slot(), record, LeaderboardLog.Record::best);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Sends every all-time entry and every rolling-window bucket entry of this node to a peer.
+     * All-time entries carry no time, so they are sent with time 0 and stay out of the peer's windows.
+     */
+    private static boolean sendFullState(String peer) {
+        try (ClusterManager.Peer connection = new ClusterManager.Peer(peer)) {
+            for (GameType type : GameType.values()) {
+                List<LeaderboardLog.Record> chunk = new ArrayList<>();
+                IOException[] failure = new IOException[1];
+                Leaderboard.forEachEntry(type, (key, score, time) -> {
+                    if (failure[0] != null) {
+                        return;
+                    }
+                    chunk.add(new LeaderboardLog.Record(key, score, time));
+                    if (chunk.size() == MAX_ENTRIES_PER_MESSAGE) {
+                        try {
+                            send(connection, type, chunk);
+                        } catch (IOException e) {
+                            failure[0] = e;
+                        }
+                        chunk.clear();
+                    }
+                });
+                if (failure[0] != null) {
+                    throw failure[0];
+                }
+                if (!chunk.isEmpty()) {
+                    send(connection, type, chunk);
+                }
+            }
+            logger.info("Sent the whole leaderboard to {}.", peer);
+            return true;
+        } catch (IOException e) {
+            logger.debug("Full leaderboard sync with {} deferred: {}", peer, e.getMessage());
+            return false;
+        }
+    }
+
+    private static void send(ClusterManager.Peer connection, GameType type, List<LeaderboardLog.Record> records) throws IOException {
+        JSONArray entries = new JSONArray();
+        for (LeaderboardLog.Record record : records) {
+            JSONArray entry = new JSONArray();
+            entry.put(record.key);
+            entry.put(record.score);
+            entry.put(record.time);
+            entries.put(entry);
+        }
+        JSONObject partitions = new JSONObject();
+        partitions.put(type.name().toLowerCase(), entries);
+        JSONObject request = new JSONObject();
+        request.put("command", "leaderboardDelta");
+        request.put("partitions", partitions);
+        JSONObject response = connection.send(request);
+        if (!response.optBoolean("ok", false)) {
+            throw new IOException(response.optString("message", "Delta rejected."));
+        }
+    }
+
+    private static Map<LeaderboardLog.Slot, LeaderboardLog.Record> partitionPending(String peer, GameType type) {
+        Map<GameType, Map<LeaderboardLog.Slot, LeaderboardLog.Record>> forPeer = pending.computeIfAbsent(peer, p -> {
+            Map<GameType, Map<LeaderboardLog.Slot, LeaderboardLog.Record>> partitions = new EnumMap<>(GameType.class);
+            for (GameType t : GameType.values()) {
+                partitions.put(t, new HashMap<>());
+            }
+            return partitions;
+        });
+        return forPeer.get(type);
+    }
+}
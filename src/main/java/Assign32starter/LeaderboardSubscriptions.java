@@ -0,0 +1,195 @@
+package Assign32starter;
+
+import Assign32starter.enums.GameType;
+import Assign32starter.enums.LeaderboardWindow;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The LeaderboardSubscriptions class pushes leaderboard changes to subscribed connections.
+ * <p>
+ * A client subscribes a dedicated connection to one view of one leaderboard: the top {@code n}
+ * entries, or the entries around a player. Every {@code leaderboard.pushMillis} milliseconds a single
+ * push thread compares each subscription's leaderboard version with the version it last sent; only
+ * when it moved is the view recomputed and compared with what the subscriber already has, and only
+ * the entries that differ are sent. So however many scores land between two ticks, a subscriber gets
+ * at most one small update per tick, and a change outside its view costs it nothing. Views shared by
+ * several subscribers are computed once per tick.
+ * <p>
+ * Updates are written on a shared writer pool. A subscriber whose previous update is still being
+ * written is skipped for that tick and catches up on the next one, so a slow client never delays the
+ * others.
+ */
+public class LeaderboardSubscriptions {
+    private static final Logger logger = LoggerFactory.getLogger(LeaderboardSubscriptions.class);
+    private static final long PUSH_MILLIS = Long.getLong("leaderboard.pushMillis", 500);
+    private static final Set<Subscription> subscriptions = ConcurrentHashMap.newKeySet();
+    private static final ExecutorService writers = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "leaderboard-push-writer");
+        t.setDaemon(true);
+        return t;
+    });
+
+    static {
+        ScheduledExecutorService pusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "leaderboard-push");
+            t.setDaemon(true);
+            return t;
+        });
+        pusher.scheduleWithFixedDelay(() -> {
+            try {
+                pushAll();
+            } catch (Exception e) {
+                logger.error("Error pushing leaderboard updates: ", e);
+            }
+        }, PUSH_MILLIS, PUSH_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Registers a subscription. Its first update carries the whole view.
+     *
+     * @param subscription the subscription
+     */
+    public static void add(Subscription subscription) {
+        subscriptions.add(subscription);
+        logger.info("Leaderboard subscription added: {}", subscription.viewKey);
+    }
+
+    /**
+     * Removes a subscription, typically because its connection closed.
+     *
+     * @param subscription the subscription
+     */
+    public static void remove(Subscription subscription) {
+        if (subscriptions.remove(subscription)) {
+            logger.info("Leaderboard subscription removed: {}", subscription.viewKey);
+        }
+    }
+
+    private static void pushAll() {
+        // Views computed this tick, shared by subscribers of the same view.
+        Map<String, JSONArray> views = new HashMap<>();
+        for (Subscription subscription : subscriptions) {
+            long version = Leaderboard.getVersion(subscription.type, subscription.window);
+            if (version == subscription.version || !subscription.writing.compareAndSet(false, true)) {
+                continue;
+            }
+            JSONArray entries = views.computeIfAbsent(subscription.viewKey, k -> subscription.compute());
+            JSONObject update = subscription.diff(entries, version);
+            if (update == null) {
+                subscription.writing.set(false);
+                continue;
+            }
+            writers.execute(() -> {
+                try {
+                    subscription.out.send(update);
+                } catch (IOException e) {
+                    remove(subscription);
+                } finally {
+                    subscription.writing.set(false);
+                }
+            });
+        }
+    }
+
+    /**
+     * One connection's subscription to a leaderboard view, with the entries it was last sent.
+     */
+    public static final class Subscription {
+        private final GameType type;
+        private final LeaderboardWindow window;
+        private final String view;
+        private final int size;
+        private final String playerKey;
+        private final FrameWriter out;
+        private final String viewKey;
+        private final AtomicBoolean writing = new AtomicBoolean();
+        // Only the push thread touches these.
+        private long version = -1;
+        private int total = -1;
+        private final TreeMap<Integer, JSONArray> sent = new TreeMap<>();
+
+        /**
+         * Constructs a subscription.
+         *
+         * @param type      the game length partition
+         * @param window    the leaderboard window
+         * @param view      {@code "top"} or {@code "around"}
+         * @param size      the number of entries for {@code top}, or the radius for {@code around}
+         * @param playerKey the player an {@code around} view is centred on
+         * @param out       the connection to push updates to
+         */
+        public Subscription(GameType type, LeaderboardWindow window, String view, int size, String playerKey, FrameWriter out) {
+            this.type = type;
+            this.window = window;
+            this.view = view;
+            this.size = size;
+            this.playerKey = playerKey;
+            this.out = out;
+            this.viewKey = type + "/" + window + "/" + view + "/" + size + (view.equals("around") ? "/" + playerKey : "");
+        }
+
+        private JSONArray compute() {
+            return view.equals("around")
+                    ? Leaderboard.around(type, window, playerKey, size)
+                    : Leaderboard.top(type, window, size);
+        }
+
+        /**
+         * Builds the update that turns the entries last sent into the given ones, and records them as
+         * sent. Returns {@code null} when the subscriber's view did not change.
+         */
+        private JSONObject diff(JSONArray entries, long newVersion) {
+            boolean first = version == -1;
+            version = newVersion;
+            int newTotal = Leaderboard.size(type, window);
+            boolean totalChanged = newTotal != total;
+            total = newTotal;
+            int from = entries.length() == 0 ? 1 : entries.getJSONArray(0).getInt(0);
+            int to = from + entries.length() - 1;
+            JSONArray set = new JSONArray();
+            for (int i = 0; i < entries.length(); i++) {
+                JSONArray entry = entries.getJSONArray(i);
+                JSONArray previous = sent.get(entry.getInt(0));
+                if (previous == null || !previous.getString(1).equals(entry.getString(1))
+                        || previous.getDouble(2) != entry.getDouble(2)) {
+                    set.put(entry);
+                }
+            }
+            boolean rangeChanged = sent.isEmpty() ? entries.length() > 0 : sent.firstKey() != from || sent.lastKey() != to;
+            if (!first && set.length() == 0 && !rangeChanged && !totalChanged) {
+                return null;
+            }
+            sent.clear();
+            for (int i = 0; i < entries.length(); i++) {
+                JSONArray entry = entries.getJSONArray(i);
+                sent.put(entry.getInt(0), entry);
+            }
+            JSONObject update = new JSONObject();
+            update.put("type", "leaderboardUpdate");
+            update.put("gameType", type.name().toLowerCase());
+            update.put("window", window.getValue());
+            update.put("view", view);
+            update.put("version", newVersion);
+            update.put("total", newTotal);
+            update.put("from", from);
+            update.put("to", to);
+            update.put("set", set);
+            return update;
+        }
+    }
+}
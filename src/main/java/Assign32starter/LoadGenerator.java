@@ -0,0 +1,236 @@
+package Assign32starter;
+
+import Assign32starter.enums.GameType;
+import Assign32starter.enums.LeaderboardWindow;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * The LoadGenerator class drives a server with simulated players and reports how it copes.
+ * <p>
+ * Each bot plays whole sessions back to back, each on a new {@link GameClient}: start, name, gameStart,
+ * a number of in-game commands drawn from a weighted mix of next, skip, guess and leaderboard, and quit.
+ * Between commands a bot thinks for a random time averaging {@code load.thinkMillis}. Bots are started
+ * evenly over the ramp-up period, so the load builds gradually, and all of them share the client I/O
+ * thread and callback pool, so thousands fit in one JVM beside the server.
+ * <p>
+ * The latency of every command, from sending it to receiving its response, is recorded per command in a
+ * {@link LatencyHistogram}. Every {@code load.reportSeconds} and at the end, a table of the count,
+ * errors, throughput and p50/p90/p99/p99.9/max latency of each command is printed. A command is an
+ * error if it fails or the server answers with an {@code error} response. The bots wait for each
+ * response before thinking, so a server that slows down is also sent less work: under overload the
+ * percentiles understate what an open stream of players would see, and throughput is the figure to watch.
+ * <p>
+ * Settings are system properties: {@code load.bots} (default 1000), {@code load.rampSeconds} (10),
+ * {@code load.durationSeconds} (60, including the ramp-up), {@code load.thinkMillis} (500),
+ * {@code load.mix} ("next=3,skip=1,guess=4,leaderboard=1"), {@code load.actionsPerGame} (20),
+ * {@code load.gameLength} (short), {@code load.guesses} (the titles to guess from, comma separated)
+ * and {@code load.reportSeconds} (10).
+ */
+public class LoadGenerator {
+    private static final Logger logger = LoggerFactory.getLogger(LoadGenerator.class);
+    private static final int BOTS = Integer.getInteger("load.bots", 1000);
+    private static final long RAMP_MILLIS = TimeUnit.SECONDS.toMillis(Long.getLong("load.rampSeconds", 10));
+    private static final long DURATION_MILLIS = TimeUnit.SECONDS.toMillis(Long.getLong("load.durationSeconds", 60));
+    private static final long THINK_MILLIS = Long.getLong("load.thinkMillis", 500);
+    private static final int ACTIONS_PER_GAME = Integer.getInteger("load.actionsPerGame", 20);
+    private static final long REPORT_SECONDS = Long.getLong("load.reportSeconds", 10);
+    private static final GameType GAME_LENGTH = GameType.valueOf(System.getProperty("load.gameLength", "short").toUpperCase());
+    private static final List<String> GUESSES = Arrays.asList(System.getProperty("load.guesses",
+            "The Dark Knight,The Lion King,Jurassic Park,Back to the Future,The Lord of the Rings").split(","));
+    private static final List<String> ACTIONS = Arrays.asList("next", "skip", "guess", "leaderboard");
+
+    // Fixed once the run starts, so reading them needs no locking.
+    private static final Map<String, CommandStats> stats = new LinkedHashMap<>();
+    private static final List<String> mix = new ArrayList<>();
+    private static final AtomicLong sessionsCompleted = new AtomicLong();
+    private static final AtomicLong sessionsFailed = new AtomicLong();
+    private static volatile boolean running = true;
+    private static String host;
+    private static int port;
+    private static long startedAt;
+
+    /**
+     * The latencies and error count of one command.
+     */
+    private static final class CommandStats {
+        final LatencyHistogram latencies = new LatencyHistogram();
+        final AtomicLong errors = new AtomicLong();
+    }
+
+    /**
+     * Runs the load test and exits with status 1 if any command or session failed.
+     *
+     * @param args the server host and port (default localhost 8888)
+     */
+    public static void main(String[] args) throws InterruptedException {
+        host = args.length > 0 ? args[0] : "localhost";
+        port = args.length > 1 ? Integer.parseInt(args[1]) : 8888;
+        for (String command : Arrays.asList("start", "name", "gameStart", "next", "skip", "guess", "leaderboard", "quit")) {
+            stats.put(command, new CommandStats());
+        }
+        parseMix(System.getProperty("load.mix", "next=3,skip=1,guess=4,leaderboard=1"));
+
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "load-scheduler");
+            t.setDaemon(true);
+            return t;
+        });
+        logger.info("Starting {} bots against {}:{} over {} ms, running for {} ms", BOTS, host, port, RAMP_MILLIS, DURATION_MILLIS);
+        startedAt = System.nanoTime();
+        for (int i = 0; i < BOTS; i++) {
+            int bot = i;
+            scheduler.schedule(() -> runSessions(bot), RAMP_MILLIS * i / BOTS, TimeUnit.MILLISECONDS);
+        }
+        scheduler.scheduleAtFixedRate(() -> report("After"), REPORT_SECONDS, REPORT_SECONDS, TimeUnit.SECONDS);
+
+        Thread.sleep(DURATION_MILLIS);
+        running = false;
+        scheduler.shutdownNow();
+        boolean failed = report("Final report after");
+        System.exit(failed ? 1 : 0);
+    }
+
+    /**
+     * Reads the command mix, e.g. "next=3,guess=4": each command is drawn in proportion to its weight.
+     */
+    private static void parseMix(String spec) {
+        for (String part : spec.split(",")) {
+            String[] weighted = part.trim().split("=");
+            if (weighted.length != 2 || !ACTIONS.contains(weighted[0].trim())) {
+                throw new IllegalArgumentException("Bad load.mix entry '" + part + "'; expected one of " + ACTIONS + " = weight");
+            }
+            for (int i = Integer.parseInt(weighted[1].trim()); i > 0; i--) {
+                mix.add(weighted[0].trim());
+            }
+        }
+        if (mix.isEmpty()) {
+            throw new IllegalArgumentException("load.mix gives every command a weight of 0");
+        }
+    }
+
+    /**
+     * Plays one session after another until the run ends.
+     */
+    private static void runSessions(int bot) {
+        if (!running) {
+            return;
+        }
+        GameClient client = new GameClient(host, port);
+        session(client, bot).whenComplete((ignored, e) -> {
+            client.close();
+            if (e == null) {
+                sessionsCompleted.incrementAndGet();
+            } else if (running) {
+                // Sessions cut short by the end of the run are not failures.
+                sessionsFailed.incrementAndGet();
+                logger.debug("Session of bot {} failed: {}", bot, e.getMessage());
+            }
+            runSessions(bot);
+        });
+    }
+
+    private static CompletableFuture<JSONObject> session(GameClient client, int bot) {
+        return timed("start", client::startAsync)
+                .thenCompose(r -> think())
+                .thenCompose(r -> timed("name", () -> client.nameAsync("bot-" + bot)))
+                .thenCompose(r -> think())
+                .thenCompose(r -> timed("gameStart", () -> client.playAsync(GAME_LENGTH)))
+                .thenCompose(r -> actions(client, ACTIONS_PER_GAME))
+                .thenCompose(r -> timed("quit", client::quitAsync));
+    }
+
+    /**
+     * Sends the given number of randomly drawn in-game commands, thinking before each, or fewer if the
+     * run ends first.
+     */
+    private static CompletableFuture<Void> actions(GameClient client, int left) {
+        if (left == 0 || !running) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return think()
+                .thenCompose(r -> action(client, mix.get(ThreadLocalRandom.current().nextInt(mix.size()))))
+                .thenCompose(r -> actions(client, left - 1));
+    }
+
+    private static CompletableFuture<JSONObject> action(GameClient client, String command) {
+        switch (command) {
+            case "next":
+                return timed(command, client::nextAsync);
+            case "skip":
+                return timed(command, client::skipAsync);
+            case "guess":
+                String guess = GUESSES.get(ThreadLocalRandom.current().nextInt(GUESSES.size())).trim();
+                return timed(command, () -> client.guessAsync(guess));
+            default:
+                return timed(command, () -> client.leaderboardAsync(GAME_LENGTH, LeaderboardWindow.ALL_TIME, 10, -1));
+        }
+    }
+
+    /**
+     * Waits a random time, uniform between none and twice the mean think time, without holding a thread.
+     */
+    private static CompletableFuture<Void> think() {
+        long millis = THINK_MILLIS <= 0 ? 0 : ThreadLocalRandom.current().nextLong(2 * THINK_MILLIS + 1);
+        return CompletableFuture.runAsync(() -> {
+        }, CompletableFuture.delayedExecutor(millis, TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * Sends a command and records how long its response took and whether it was an error.
+     */
+    private static CompletableFuture<JSONObject> timed(String command, Supplier<CompletableFuture<JSONObject>> send) {
+        CommandStats commandStats = stats.get(command);
+        long sent = System.nanoTime();
+        return send.get().whenComplete((response, e) -> {
+            commandStats.latencies.record((System.nanoTime() - sent) / 1000);
+            if (e != null || "error".equals(response.optString("type"))) {
+                commandStats.errors.incrementAndGet();
+            }
+        });
+    }
+
+    /**
+     * Prints the results so far.
+     *
+     * @param heading the start of the heading, followed by the elapsed time
+     * @return true if any command or session failed
+     */
+    private static boolean report(String heading) {
+        double seconds = (System.nanoTime() - startedAt) / 1e9;
+        StringBuilder out = new StringBuilder();
+        out.append(String.format("%n%s %.1f s (%d bots, %d sessions completed, %d failed)%n",
+                heading, seconds, BOTS, sessionsCompleted.get(), sessionsFailed.get()));
+        out.append(String.format("%-12s %9s %7s %9s %9s %9s %9s %9s %9s%n",
+                "command", "count", "errors", "req/s", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms"));
+        long count = 0;
+        long errors = 0;
+        for (Map.Entry<String, CommandStats> entry : stats.entrySet()) {
+            LatencyHistogram latencies = entry.getValue().latencies;
+            out.append(String.format("%-12s %9d %7d %9.1f %9.2f %9.2f %9.2f %9.2f %9.2f%n",
+                    entry.getKey(), latencies.getCount(), entry.getValue().errors.get(), latencies.getCount() / seconds,
+                    latencies.getValueAtPercentile(50) / 1000.0, latencies.getValueAtPercentile(90) / 1000.0,
+                    latencies.getValueAtPercentile(99) / 1000.0, latencies.getValueAtPercentile(99.9) / 1000.0,
+                    latencies.getMax() / 1000.0));
+            count += latencies.getCount();
+            errors += entry.getValue().errors.get();
+        }
+        out.append(String.format("%-12s %9d %7d %9.1f%n", "total", count, errors, count / seconds));
+        System.out.print(out);
+        return errors > 0 || sessionsFailed.get() > 0;
+    }
+}
@@ -0,0 +1,406 @@
+package Assign32starter;
+
+import Assign32starter.enums.GameType;
+import Assign32starter.enums.LeaderboardWindow;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * The Matchmaker class groups waiting players into head-to-head games (or larger rooms) of the same
+ * game length and similar skill.
+ * <p>
+ * A player's skill is their most recent leaderboard score for that game length: the daily score if
+ * they have one, else the weekly, else the all-time score. Waiting players sit in concurrent FIFO
+ * queues, one per skill band of {@code matchmaking.bandWidth} points, per game length and group size.
+ * Enqueueing never locks. Every {@code matchmaking.tickMillis} milliseconds a scheduler thread forms
+ * groups: first within each band, then, for the player who has waited longest in each band, across
+ * neighbouring bands, widening by one band every {@code matchmaking.widenMillis} milliseconds of
+ * waiting and to any band once {@code matchmaking.targetWaitMillis} has passed. Such a group takes the
+ * longest-waiting player first and fills from the nearest bands outward, and the oldest players across
+ * all bands are served first. A tick only looks at the bands and the heads of their queues, never at
+ * every waiting player. A group is claimed as a whole, so it never starts short of a player who
+ * cancelled while it formed; only a player who leaves after the claim is missing from the room.
+ * <p>
+ * A formed group is put into a new private {@link GameRoom}, so a match plays exactly like a room.
+ * Queue depth and the wait-time percentiles of recent matches are reported by {@link #stats()}.
+ */
+public class Matchmaker {
+    private static final Logger logger = LoggerFactory.getLogger(Matchmaker.class);
+    private static final long TICK_MILLIS = Long.getLong("matchmaking.tickMillis", 200);
+    private static final double BAND_WIDTH = Double.parseDouble(System.getProperty("matchmaking.bandWidth", "5"));
+    private static final long WIDEN_MILLIS = Long.getLong("matchmaking.widenMillis", 2000);
+    private static final long TARGET_WAIT_MILLIS = Long.getLong("matchmaking.targetWaitMillis", 10000);
+    /**
+     * The largest group a player can queue for.
+     */
+    public static final int MAX_GROUP_SIZE = 8;
+    private static final int WAIT_SAMPLES = 1024;
+    private static final int UNRANKED_BAND = 0;
+
+    // Queues per game length and group size; within one, the bands by number.
+    private static final Map<String, Pool> pools = new ConcurrentHashMap<>();
+    private static final AtomicInteger depth = new AtomicInteger();
+    private static final AtomicLong matchCounter = new AtomicLong();
+    // The wait times of the most recent matched players, in milliseconds.
+    private static final long[] waits = new long[WAIT_SAMPLES];
+    private static long waitCount = 0;
+
+    static {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "matchmaker");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                long now = System.currentTimeMillis();
+                for (Pool pool : pools.values()) {
+                    for (List<Ticket> group : pool.match(now)) {
+                        start(pool.type, group, now);
+                    }
+                }
+            } catch (Exception e) {
+                logger.error("Error matching players: ", e);
+            }
+        }, TICK_MILLIS, TICK_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Puts a player in the queue. Never blocks.
+     *
+     * @param type      the game length to play
+     * @param groupSize the number of players per game, from 2 to {@value #MAX_GROUP_SIZE}
+     * @param playerKey the player's leaderboard key
+     * @param out       the connection the match is played on
+     * @param onMatched receives the player's room membership once matched, on the matchmaker thread
+     * @return the ticket, which can be cancelled
+     */
+    public static Ticket enqueue(GameType type, int groupSize, String playerKey, FrameWriter out,
+                                 Consumer<GameRoom.Member> onMatched) {
+        int size = Math.max(2, Math.min(MAX_GROUP_SIZE, groupSize));
+        double skill = skillOf(type, playerKey);
+        int band = Double.isNaN(skill) ? UNRANKED_BAND : 1 + (int) (skill / BAND_WIDTH);
+        Ticket ticket = new Ticket(type, band, playerKey, skill, out, onMatched, System.currentTimeMillis());
+        pools.computeIfAbsent(type + "/" + size, k -> new Pool(type, size)).add(ticket);
+        return ticket;
+    }
+
+    /**
+     * Returns the number of players waiting.
+     *
+     * @return the queue depth
+     */
+    public static int depth() {
+        return depth.get();
+    }
+
+    /**
+     * Reports the queue depth and the wait-time percentiles of recent matches.
+     *
+     * @return {@code depth}, {@code matches} and {@code waitMillis} with {@code p50}, {@code p90} and {@code p99}
+     */
+    public static JSONObject stats() {
+        long[] sample;
+        synchronized (waits) {
+            sample = Arrays.copyOf(waits, (int) Math.min(waitCount, WAIT_SAMPLES));
+        }
+        Arrays.sort(sample);
+        JSONObject percentiles = new JSONObject();
+        percentiles.put("p50", percentile(sample, 0.50));
+        percentiles.put("p90", percentile(sample, 0.90));
+        percentiles.put("p99", percentile(sample, 0.99));
+        JSONObject stats = new JSONObject();
+        stats.put("depth", depth.get());
+        stats.put("matches", matchCounter.get());
+        stats.put("waitMillis", percentiles);
+        return stats;
+    }
+
+    private static long percentile(long[] sorted, double p) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        return sorted[Math.min(sorted.length - 1, (int) Math.ceil(p * sorted.length) - 1)];
+    }
+
+    /**
+     * Returns the most recent score of a player for a game length, or NaN if they have none.
+     */
+    private static double skillOf(GameType type, String playerKey) {
+        for (LeaderboardWindow window : new LeaderboardWindow[]{LeaderboardWindow.DAILY, LeaderboardWindow.WEEKLY, LeaderboardWindow.ALL_TIME}) {
+            double score = Leaderboard.getScore(type, window, playerKey);
+            if (!Double.isNaN(score)) {
+                return score;
+            }
+        }
+        return Double.NaN;
+    }
+
+    private static void recordWait(long millis) {
+        synchronized (waits) {
+            waits[(int) (waitCount++ % WAIT_SAMPLES)] = millis;
+        }
+    }
+
+    /**
+     * One player's place in the queue.
+     */
+    public static final class Ticket {
+        private final GameType type;
+        private final int band;
+        private final String playerKey;
+        private final double skill;
+        private final FrameWriter out;
+        private final Consumer<GameRoom.Member> onMatched;
+        private final long enqueuedAt;
+        // Set under the ticket's monitor once it is cancelled or matched, whichever comes first.
+        private volatile boolean done = false;
+        // Set under the ticket's monitor when the player leaves, even after being matched.
+        private boolean cancelled = false;
+
+        Ticket(GameType type, int band, String playerKey, double skill, FrameWriter out,
+               Consumer<GameRoom.Member> onMatched, long enqueuedAt) {
+            this.type = type;
+            this.band = band;
+            this.playerKey = playerKey;
+            this.skill = skill;
+            this.out = out;
+            this.onMatched = onMatched;
+            this.enqueuedAt = enqueuedAt;
+        }
+
+        /**
+         * Leaves the queue. The ticket is dropped the next time the matchmaker reaches it; a player whose
+         * match has formed but who has not been placed in its room yet is left out of it. Once this returns,
+         * the ticket's callback has either run or never will.
+         */
+        public void cancel() {
+            synchronized (this) {
+                cancelled = true;
+                if (done) {
+                    return;
+                }
+                done = true;
+            }
+            depth.decrementAndGet();
+        }
+
+        /**
+         * Returns the skill the player was queued with.
+         *
+         * @return the score used for matching, or NaN if unranked
+         */
+        public double getSkill() {
+            return skill;
+        }
+    }
+
+    /**
+     * The queues for one game length and group size, by skill band. Only the matchmaker thread removes
+     * tickets; any thread may add them. A band's queue is kept once created, so an add never lands in a
+     * queue the matchmaker has just dropped; there are only as many as skill bands ever used.
+     */
+    static final class Pool {
+        private final GameType type;
+        private final int size;
+        private final ConcurrentSkipListMap<Integer, Queue<Ticket>> bands = new ConcurrentSkipListMap<>();
+
+        Pool(GameType type, int size) {
+            this.type = type;
+            this.size = size;
+        }
+
+        void add(Ticket ticket) {
+            bands.computeIfAbsent(ticket.band, b -> new ConcurrentLinkedQueue<>()).offer(ticket);
+            depth.incrementAndGet();
+        }
+
+        /**
+         * Forms every group it can and claims its tickets.
+         *
+         * @param now the current time in milliseconds
+         * @return the groups formed, each ready to start
+         */
+        List<List<Ticket>> match(long now) {
+            List<List<Ticket>> formed = new ArrayList<>();
+            // Groups within one band.
+            for (Queue<Ticket> queue : bands.values()) {
+                List<Ticket> group = new ArrayList<>(size);
+                Ticket ticket;
+                while ((ticket = queue.poll()) != null) {
+                    if (ticket.done) {
+                        continue;
+                    }
+                    group.add(ticket);
+                    if (group.size() == size) {
+                        if (claim(group, 0)) {
+                            formed.add(group);
+                            group = new ArrayList<>(size);
+                        } else {
+                            group.removeIf(t -> t.done);
+                        }
+                    }
+                }
+                // Fewer than a group left: put them back at the head, oldest first.
+                requeue(queue, group);
+            }
+            // Groups across bands, around the longest-waiting player of each band, oldest first. The
+            // group takes that player, then fills from the nearest bands outward.
+            List<Ticket> heads = new ArrayList<>();
+            for (Queue<Ticket> queue : bands.values()) {
+                Ticket head = queue.peek();
+                if (head != null) {
+                    heads.add(head);
+                }
+            }
+            heads.sort(Comparator.comparingLong(t -> t.enqueuedAt));
+            for (Ticket oldest : heads) {
+                Queue<Ticket> own = bands.get(oldest.band);
+                if (own.peek() != oldest || oldest.done) {
+                    continue; // Already taken by an earlier group, or left.
+                }
+                long waited = now - oldest.enqueuedAt;
+                int radius = waited >= TARGET_WAIT_MILLIS ? Integer.MAX_VALUE : (int) (waited / WIDEN_MILLIS);
+                if (radius == 0) {
+                    continue;
+                }
+                List<Queue<Ticket>> reachable = nearestFirst(oldest.band, radius);
+                int available = 0;
+                for (Queue<Ticket> queue : reachable) {
+                    available += queue.size();
+                }
+                if (available < size) {
+                    continue;
+                }
+                List<Ticket> group = new ArrayList<>(size);
+                group.add(own.poll());
+                for (Queue<Ticket> queue : reachable) {
+                    Ticket ticket;
+                    while (group.size() < size && (ticket = queue.poll()) != null) {
+                        if (!ticket.done) {
+                            group.add(ticket);
+                        }
+                    }
+                }
+                if (group.size() == size && claim(group, 0)) {
+                    formed.add(group);
+                } else {
+                    // Some had left the queue; the rest go back to the head of their own bands.
+                    Map<Integer, List<Ticket>> byBand = new LinkedHashMap<>();
+                    for (Ticket ticket : group) {
+                        byBand.computeIfAbsent(ticket.band, b -> new ArrayList<>()).add(ticket);
+                    }
+                    byBand.forEach((band, tickets) -> requeue(bands.get(band), tickets));
+                }
+            }
+            return formed;
+        }
+
+        /**
+         * Returns the queues of the bands within the radius, nearest first; of two equally near, the lower.
+         */
+        private List<Queue<Ticket>> nearestFirst(int band, int radius) {
+            List<Map.Entry<Integer, Queue<Ticket>>> reachable = new ArrayList<>(
+                    bands.subMap(clamp(band - (long) radius), true, clamp(band + (long) radius), true).entrySet());
+            reachable.sort(Comparator.comparingLong(entry -> Math.abs((long) entry.getKey() - band)));
+            List<Queue<Ticket>> queues = new ArrayList<>(reachable.size());
+            for (Map.Entry<Integer, Queue<Ticket>> entry : reachable) {
+                queues.add(entry.getValue());
+            }
+            return queues;
+        }
+
+        private static int clamp(long band) {
+            return (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, band));
+        }
+
+        private void requeue(Queue<Ticket> queue, List<Ticket> group) {
+            group.removeIf(t -> t.done);
+            if (group.isEmpty()) {
+                return;
+            }
+            // Tickets added meanwhile go behind the ones that have waited longer.
+            List<Ticket> newer = new ArrayList<>();
+            Ticket ticket;
+            while ((ticket = queue.poll()) != null) {
+                newer.add(ticket);
+            }
+            queue.addAll(group);
+            queue.addAll(newer);
+        }
+
+        /**
+         * Claims every ticket of a group at once, holding all their monitors, so a player who cancels
+         * meanwhile either leaves first, and the group is not formed, or is matched. A group is never
+         * started short of a player.
+         */
+        private static boolean claim(List<Ticket> group, int from) {
+            if (from < group.size()) {
+                synchronized (group.get(from)) {
+                    return claim(group, from + 1);
+                }
+            }
+            for (Ticket ticket : group) {
+                if (ticket.done) {
+                    return false;
+                }
+            }
+            for (Ticket ticket : group) {
+                ticket.done = true;
+            }
+            depth.addAndGet(-group.size());
+            return true;
+        }
+    }
+
+    /**
+     * Puts a claimed group into a new private room and tells every player. The "matched" message is queued
+     * ahead of the room's frames on the member's writer, so this never waits on a socket.
+     */
+    private static void start(GameType type, List<Ticket> group, long now) {
+        String room = "match-" + matchCounter.incrementAndGet();
+        JSONArray players = new JSONArray();
+        for (Ticket ticket : group) {
+            players.put(ticket.playerKey);
+        }
+        for (Ticket ticket : group) {
+            long waited = now - ticket.enqueuedAt;
+            recordWait(waited);
+            JSONObject matched = new JSONObject();
+            matched.put("type", "matched");
+            matched.put("room", room);
+            matched.put("gameLength", type.name().toLowerCase());
+            matched.put("players", players);
+            matched.put("waitMillis", waited);
+            // The player may have left since the group was claimed; the callback must not run after cancel().
+            synchronized (ticket) {
+                if (ticket.cancelled) {
+                    logger.debug("{} left before joining match {}.", ticket.playerKey, room);
+                    continue;
+                }
+                ticket.onMatched.accept(RoomManager.join(room, type, ticket.playerKey, true, ticket.out,
+                        FrameWriter.encode(matched)));
+            }
+        }
+        logger.info("Matched {} players of {} games into {}.", group.size(), type, room);
+    }
+}
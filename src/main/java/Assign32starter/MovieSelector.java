@@ -0,0 +1,247 @@
+package Assign32starter;
+
+import Assign32starter.enums.GameType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The MovieSelector class draws movies from a difficulty-weighted distribution.
+ * It records, per movie, the image version at which the movie was solved (or that it was skipped)
+ * and periodically rebuilds one Walker alias table per {@link GameType} from those statistics.
+ * Short games favour movies that are usually solved early, long games favour the harder ones.
+ * Sampling reads an immutable table through a volatile reference, so it is O(1) and takes no lock.
+ */
+public class MovieSelector {
+    private static final Logger logger = LoggerFactory.getLogger(MovieSelector.class);
+    /**
+     * Number of statistic slots per movie: image versions 1-4 plus one slot for skips.
+     */
+    private static final int SLOTS = 5;
+    /**
+     * Pseudo-count of observations assumed for every movie before any real data exists,
+     * so that a handful of early games cannot push a movie out of rotation.
+     */
+    private static final double PRIOR_WEIGHT = 5.0;
+    private static final double PRIOR_DIFFICULTY = 2.5;
+    /**
+     * Seconds between two background rebuilds of the alias tables.
+     */
+    private static final long REBUILD_PERIOD_SECONDS = 30;
+
+    private final List<Movie> movies;
+    private final Map<String, Integer> indexByName = new HashMap<>();
+    // Flattened [movie * SLOTS + slot] solve counters, updated lock-free from handler threads.
+    private final AtomicLongArray stats;
+    private volatile Map<GameType, AliasTable> tables;
+
+    /**
+     * Constructs a MovieSelector over the given movies and builds the initial (uniform) tables.
+     *
+     * @param movies the movies to draw from; must not be empty
+     */
+    public MovieSelector(List<Movie> movies) {
+        if (movies.isEmpty()) {
+            throw new IllegalArgumentException("At least one movie is required.");
+        }
+        this.movies = List.copyOf(movies);
+        for (int i = 0; i < this.movies.size(); i++) {
+            indexByName.put(this.movies.get(i).getMovieName(), i);
+        }
+        this.stats = new AtomicLongArray(this.movies.size() * SLOTS);
+        rebuild();
+    }
+
+    /**
+     * Starts a daemon thread that rebuilds the alias tables every {@value #REBUILD_PERIOD_SECONDS} seconds.
+     */
+    public void startBackgroundRebuild() {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "movie-selector-rebuild");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleAtFixedRate(this::rebuild, REBUILD_PERIOD_SECONDS, REBUILD_PERIOD_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Draws a movie for the given game length in constant time.
+     *
+     * @param type the game length the movie is drawn for; {@code null} falls back to {@link GameType#SHORT}
+     * @return the selected Movie
+     */
+    public Movie choose(GameType type) {
+        AliasTable table = tables.get(type == null ? GameType.SHORT : type);
+        return movies.get(table.sample(ThreadLocalRandom.current()));
+    }
+
+    /**
+     * Records that the given movie was solved at the given image version.
+     *
+     * @param movieName    the movie's image name as returned by {@link Movie#getMovieName()}
+     * @param imageVersion the image version (1-4) shown when the correct guess was made
+     */
+    public void recordSolved(String movieName, int imageVersion) {
+        int index = indexOf(movieName);
+        if (index >= 0) {
+            int slot = Math.max(1, Math.min(4, imageVersion)) - 1;
+            stats.incrementAndGet(index * SLOTS + slot);
+        }
+    }
+
+    /**
+     * Records that the given movie was skipped without being solved.
+     *
+     * @param movieName the movie's image name as returned by {@link Movie#getMovieName()}
+     */
+    public void recordSkipped(String movieName) {
+        int index = indexOf(movieName);
+        if (index >= 0) {
+            stats.incrementAndGet(index * SLOTS + SLOTS - 1);
+        }
+    }
+
+    /**
+     * Returns the index of the movie with the given image name.
+     *
+     * @param movieName the movie's image name
+     * @return the index within this selector's movie list, or -1 if unknown
+     */
+    public int indexOf(String movieName) {
+        Integer index = movieName == null ? null : indexByName.get(movieName);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * Returns the movie stored at the given index.
+     *
+     * @param index the index within this selector's movie list
+     * @return the Movie at that index
+     */
+    public Movie get(int index) {
+        return movies.get(index);
+    }
+
+    /**
+     * Returns the number of movies this selector draws from.
+     *
+     * @return the movie count
+     */
+    public int size() {
+        return movies.size();
+    }
+
+    /**
+     * Recomputes each movie's difficulty from the recorded statistics and publishes fresh alias tables.
+     * Difficulty is the mean solve level, where a skip counts as level 5, smoothed towards
+     * {@value #PRIOR_DIFFICULTY}. A movie's weight for a game length falls off with its distance
+     * from that length's target difficulty.
+     */
+    void rebuild() {
+        double[] difficulty = new double[movies.size()];
+        for (int i = 0; i < movies.size(); i++) {
+            double sum = PRIOR_DIFFICULTY * PRIOR_WEIGHT;
+            double count = PRIOR_WEIGHT;
+            for (int slot = 0; slot < SLOTS; slot++) {
+                long n = stats.get(i * SLOTS + slot);
+                sum += n * (slot + 1);
+                count += n;
+            }
+            difficulty[i] = sum / count;
+        }
+
+        Map<GameType, AliasTable> fresh = new EnumMap<>(GameType.class);
+        for (GameType type : GameType.values()) {
+            double target = targetDifficulty(type);
+            double[] weights = new double[movies.size()];
+            for (int i = 0; i < weights.length; i++) {
+                weights[i] = 1.0 / (1.0 + Math.abs(difficulty[i] - target));
+            }
+            fresh.put(type, new AliasTable(weights));
+        }
+        tables = fresh;
+        logger.debug("Movie selection tables rebuilt.");
+    }
+
+    /**
+     * Returns the difficulty a game length should be centred on. Short games have few skips and
+     * little time to reveal clearer images, so they lean towards easier movies.
+     */
+    private static double targetDifficulty(GameType type) {
+        switch (type) {
+            case LONG:
+                return 3.5;
+            case MEDIUM:
+                return 2.5;
+            case SHORT:
+            default:
+                return 1.5;
+        }
+    }
+
+    /**
+     * An immutable Walker alias table over a discrete distribution.
+     * Built in O(n) with Vose's method; each sample costs one random draw and one comparison.
+     */
+    static final class AliasTable {
+        private final double[] probability;
+        private final int[] alias;
+
+        AliasTable(double[] weights) {
+            int n = weights.length;
+            probability = new double[n];
+            alias = new int[n];
+
+            double total = 0;
+            for (double w : weights) {
+                total += w;
+            }
+            double[] scaled = new double[n];
+            Deque<Integer> small = new ArrayDeque<>();
+            Deque<Integer> large = new ArrayDeque<>();
+            for (int i = 0; i < n; i++) {
+                scaled[i] = weights[i] * n / total;
+                if (scaled[i] < 1.0) {
+                    small.push(i);
+                } else {
+                    large.push(i);
+                }
+            }
+            while (!small.isEmpty() && !large.isEmpty()) {
+                int s = small.pop();
+                int l = large.pop();
+                probability[s] = scaled[s];
+                alias[s] = l;
+                scaled[l] = scaled[l] + scaled[s] - 1.0;
+                if (scaled[l] < 1.0) {
+                    small.push(l);
+                } else {
+                    large.push(l);
+                }
+            }
+            // Whatever remains is 1.0 up to rounding error.
+            while (!large.isEmpty()) {
+                probability[large.pop()] = 1.0;
+            }
+            while (!small.isEmpty()) {
+                probability[small.pop()] = 1.0;
+            }
+        }
+
+        int sample(ThreadLocalRandom random) {
+            int column = random.nextInt(probability.length);
+            return random.nextDouble() < probability[column] ? column : alias[column];
+        }
+    }
+}
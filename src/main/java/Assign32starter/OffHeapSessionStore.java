@@ -0,0 +1,349 @@
+package Assign32starter;
+
+import Assign32starter.entity.GameState;
+import Assign32starter.enums.GameType;
+import Assign32starter.enums.States;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The OffHeapSessionStore class keeps idle sessions as fixed-width records in a direct-memory slab.
+ * <p>
+ * A record stores the movie as an index into the {@link MovieSelector} (the answer is derived from it),
+ * the player name as an id in a reference-counted {@link PlayerDictionary}, and every other field as a primitive:
+ * {@value #RECORD_BYTES} bytes in total. Records are found through an open-addressing, linear-probing
+ * index keyed by the 128-bit session id held in two {@code long} arrays, so no key objects or boxed
+ * values exist. With the index at half load a parked session costs about 90 bytes, against several
+ * hundred for an on-heap {@link GameSession}, its mailbox, its GameState strings and its map entry.
+ * <p>
+ * The store has a fixed capacity chosen at construction. All operations are O(1) and guarded by one
+ * lock; the store only sees traffic when sessions are parked, woken up or swept, never per request.
+ */
+public class OffHeapSessionStore {
+    // Record layout (byte offsets).
+    private static final int CREATED_AT = 0;        // long
+    private static final int LAST_ACCESS = 8;       // long
+    private static final int GAME_START = 16;       // long
+    private static final int LAST_SEQ = 24;         // long
+    private static final int CORRECT_GUESSES = 32;  // int
+    private static final int PLAYER_NAME_ID = 36;   // int
+    private static final int GAME_DURATION = 40;    // short
+    private static final int MOVIE_INDEX = 42;      // byte, or one of the markers below
+    private static final int IMAGE_VERSION = 43;    // byte
+    private static final int SKIPS_REMAINING = 44;  // byte
+    private static final int GAME_STAGE = 45;       // byte
+    private static final int GAME_TYPE = 46;        // byte
+    static final int RECORD_BYTES = 48;
+    // The movie is null, as before the first round.
+    private static final int NO_MOVIE = 0xFF;
+    // The movie is empty or not in the movie list; the defaults of a new GameState are restored.
+    private static final int BLANK_MOVIE = 0xFE;
+    private static final int EMPTY = -1;
+
+    private final ByteBuffer slab;
+    private final int capacity;
+    private final MovieSelector movies;
+    private final PlayerDictionary playerNames = new PlayerDictionary(1024, Integer.MAX_VALUE);
+    private final ReentrantLock lock = new ReentrantLock();
+
+    // Open-addressing index: key halves and the slot each key's record lives in.
+    private final long[] keyMsb;
+    private final long[] keyLsb;
+    private final int[] slotOf;
+    private final int mask;
+
+    // Free record slots, used as a stack.
+    private final int[] freeSlots;
+    private int freeCount;
+    private int size;
+
+    /**
+     * Visitor for {@link #forEach(Visitor)}.
+     */
+    public interface Visitor {
+        void visit(String sessionId, Entry entry);
+    }
+
+    /**
+     * Constructs a store able to hold the given number of sessions.
+     *
+     * @param capacity the maximum number of parked sessions
+     * @param movies   the movie list used to translate movie names to indices and back
+     */
+    public OffHeapSessionStore(int capacity, MovieSelector movies) {
+        this.capacity = capacity;
+        this.movies = movies;
+        this.slab = ByteBuffer.allocateDirect(capacity * RECORD_BYTES);
+        int tableSize = Integer.highestOneBit(Math.max(2, capacity) * 2 - 1) << 1;
+        this.keyMsb = new long[tableSize];
+        this.keyLsb = new long[tableSize];
+        this.slotOf = new int[tableSize];
+        Arrays.fill(slotOf, EMPTY);
+        this.mask = tableSize - 1;
+        this.freeSlots = new int[capacity];
+        for (int i = 0; i < capacity; i++) {
+            freeSlots[i] = capacity - 1 - i;
+        }
+        this.freeCount = capacity;
+    }
+
+    /**
+     * Stores a session. Fails if the store is full or the session is already present.
+     *
+     * @param sessionId  the session's UUID string
+     * @param state      the state to pack
+     * @param createdAt  the session's creation time in milliseconds
+     * @param lastAccess the session's last access time in milliseconds
+     * @param lastSeq    the sequence number of the last request applied to the session
+     * @return true if the session was stored
+     */
+    public boolean put(String sessionId, GameState state, long createdAt, long lastAccess, long lastSeq) {
+        UUID id = UUID.fromString(sessionId);
+        lock.lock();
+        try {
+            if (freeCount == 0 || find(id.getMostSignificantBits(), id.getLeastSignificantBits()) >= 0) {
+                return false;
+            }
+            int slot = freeSlots[--freeCount];
+            int base = slot * RECORD_BYTES;
+            int movieIndex = movies.indexOf(state.getCurrentMovie());
+            if (movieIndex < 0) {
+                movieIndex = state.getCurrentMovie() == null ? NO_MOVIE : BLANK_MOVIE;
+            }
+            slab.putLong(base + CREATED_AT, createdAt);
+            slab.putLong(base + LAST_ACCESS, lastAccess);
+            slab.putLong(base + GAME_START, state.getGameStartTime());
+            slab.putLong(base + LAST_SEQ, lastSeq);
+            slab.putInt(base + CORRECT_GUESSES, state.getCorrectGuesses());
+            slab.putInt(base + PLAYER_NAME_ID, playerNames.acquire(state.getPlayerName() == null ? "" : state.getPlayerName()));
+            slab.putShort(base + GAME_DURATION, (short) state.getGameDuration());
+            slab.put(base + MOVIE_INDEX, (byte) movieIndex);
+            slab.put(base + IMAGE_VERSION, (byte) state.getImageVersion());
+            slab.put(base + SKIPS_REMAINING, (byte) state.getSkipsRemaining());
+            slab.put(base + GAME_STAGE, (byte) state.getGameStage().ordinal());
+            slab.put(base + GAME_TYPE, (byte) state.getGameType().ordinal());
+            insert(id.getMostSignificantBits(), id.getLeastSignificantBits(), slot);
+            size++;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes a session and returns its unpacked state.
+     *
+     * @param sessionId the session's UUID string
+     * @return the session's state, or {@code null} if it is not stored here
+     */
+    public Entry take(String sessionId) {
+        UUID id = parse(sessionId);
+        if (id == null) {
+            return null;
+        }
+        lock.lock();
+        try {
+            int index = find(id.getMostSignificantBits(), id.getLeastSignificantBits());
+            if (index < 0) {
+                return null;
+            }
+            int slot = slotOf[index];
+            Entry entry = read(slot);
+            free(index, slot);
+            return entry;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Drops every session whose idle timeout or lifetime has elapsed.
+     *
+     * @param now          the current time in milliseconds
+     * @param idleTtl      the idle timeout in milliseconds
+     * @param maxLifetime  the absolute lifetime in milliseconds
+     * @return the number of sessions dropped
+     */
+    public int expire(long now, long idleTtl, long maxLifetime) {
+        int expired = 0;
+        for (int index = 0; index <= mask; index++) {
+            lock.lock();
+            try {
+                // Backward-shift deletion can move a later key into this index, so re-check it.
+                while (slotOf[index] != EMPTY) {
+                    int base = slotOf[index] * RECORD_BYTES;
+                    if (now - slab.getLong(base + LAST_ACCESS) <= idleTtl && now - slab.getLong(base + CREATED_AT) <= maxLifetime) {
+                        break;
+                    }
+                    free(index, slotOf[index]);
+                    expired++;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        return expired;
+    }
+
+    /**
+     * Visits every stored session. The lock is taken per record, so concurrent parking and waking
+     * proceed during a long iteration; sessions moved meanwhile may be missed or seen twice.
+     *
+     * @param visitor the callback receiving each session
+     */
+    public void forEach(Visitor visitor) {
+        for (int index = 0; index <= mask; index++) {
+            String id;
+            Entry entry;
+            lock.lock();
+            try {
+                if (slotOf[index] == EMPTY) {
+                    continue;
+                }
+                id = new UUID(keyMsb[index], keyLsb[index]).toString();
+                entry = read(slotOf[index]);
+            } finally {
+                lock.unlock();
+            }
+            visitor.visit(id, entry);
+        }
+    }
+
+    /**
+     * Returns the number of sessions currently stored.
+     *
+     * @return the stored session count
+     */
+    public int size() {
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the maximum number of sessions this store can hold.
+     *
+     * @return the capacity
+     */
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns the approximate number of bytes used per stored session, counting the record slab
+     * and the index.
+     *
+     * @return bytes of memory per session slot
+     */
+    public long bytesPerSession() {
+        long index = (long) (mask + 1) * (Long.BYTES * 2 + Integer.BYTES);
+        return RECORD_BYTES + Integer.BYTES + index / capacity;
+    }
+
+    private Entry read(int slot) {
+        int base = slot * RECORD_BYTES;
+        GameState state = new GameState();
+        state.setGameStartTime(slab.getLong(base + GAME_START));
+        state.setCorrectGuesses(slab.getInt(base + CORRECT_GUESSES));
+        state.setPlayerName(playerNames.keyOf(slab.getInt(base + PLAYER_NAME_ID)));
+        state.setGameDuration(slab.getShort(base + GAME_DURATION));
+        int movieIndex = slab.get(base + MOVIE_INDEX) & 0xFF;
+        if (movieIndex == NO_MOVIE) {
+            state.setCurrentMovie(null);
+        } else if (movieIndex != BLANK_MOVIE) {
+            Movie movie = movies.get(movieIndex);
+            state.setCurrentMovie(movie.getMovieName());
+            state.setCurrentAnswer(movie.getCorrectAnswer());
+        }
+        state.setImageVersion(slab.get(base + IMAGE_VERSION));
+        state.setSkipsRemaining(slab.get(base + SKIPS_REMAINING));
+        state.setGameStage(States.values()[slab.get(base + GAME_STAGE)]);
+        state.setGameType(GameType.values()[slab.get(base + GAME_TYPE)]);
+        return new Entry(state, slab.getLong(base + CREATED_AT), slab.getLong(base + LAST_ACCESS), slab.getLong(base + LAST_SEQ));
+    }
+
+    private void free(int index, int slot) {
+        playerNames.release(slab.getInt(slot * RECORD_BYTES + PLAYER_NAME_ID));
+        freeSlots[freeCount++] = slot;
+        delete(index);
+        size--;
+    }
+
+    private static int hash(long msb, long lsb) {
+        long h = msb * 0x9E3779B97F4A7C15L ^ lsb;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private int find(long msb, long lsb) {
+        int index = hash(msb, lsb) & mask;
+        while (slotOf[index] != EMPTY) {
+            if (keyMsb[index] == msb && keyLsb[index] == lsb) {
+                return index;
+            }
+            index = (index + 1) & mask;
+        }
+        return -1;
+    }
+
+    private void insert(long msb, long lsb, int slot) {
+        int index = hash(msb, lsb) & mask;
+        while (slotOf[index] != EMPTY) {
+            index = (index + 1) & mask;
+        }
+        keyMsb[index] = msb;
+        keyLsb[index] = lsb;
+        slotOf[index] = slot;
+    }
+
+    /**
+     * Removes the key at the given index using backward-shift deletion, which keeps every probe
+     * chain unbroken without tombstones.
+     */
+    private void delete(int index) {
+        int gap = index;
+        int next = (gap + 1) & mask;
+        while (slotOf[next] != EMPTY) {
+            int home = hash(keyMsb[next], keyLsb[next]) & mask;
+            // Move the entry into the gap if its home does not lie cyclically in (gap, next].
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                keyMsb[gap] = keyMsb[next];
+                keyLsb[gap] = keyLsb[next];
+                slotOf[gap] = slotOf[next];
+                gap = next;
+            }
+            next = (next + 1) & mask;
+        }
+        slotOf[gap] = EMPTY;
+    }
+
+    private static UUID parse(String sessionId) {
+        try {
+            return UUID.fromString(sessionId);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * A session unpacked from the store.
+     */
+    public static final class Entry {
+        final GameState state;
+        final long createdAt;
+        final long lastAccess;
+        final long lastSeq;
+
+        Entry(GameState state, long createdAt, long lastAccess, long lastSeq) {
+            this.state = state;
+            this.createdAt = createdAt;
+            this.lastAccess = lastAccess;
+            this.lastSeq = lastSeq;
+        }
+    }
+}
@@ -1,5 +1,8 @@
 package Assign32starter;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import javax.imageio.ImageIO;
 import javax.swing.*;
 import java.awt.*;
@@ -7,6 +10,8 @@ import java.awt.image.BufferedImage;
 import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * The picture grid
@@ -17,12 +22,26 @@ import java.io.IOException;
  * ----------------------
  * newGame(int dimension) - Reset the board and set grid size to dimension x dimension
  * insertImage(String fname, int row, int col) - Insert an image at (col, row)
+ * showImage(String base64, int row, int col) - Decode a server image in the background and show it at (col, row)
+ * <p>
+ * The grid's cells are created once per dimension and reused; each paints its image scaled to fit the
+ * cell, keeping the scaled copy until the image or the cell size changes. Server images are decoded on
+ * a background thread through an {@link ImageCache}, so an image seen before is shown without decoding
+ * it again, and the layout is only redone when an image of a different size arrives.
  */
 public class PicturePanel extends JPanel {
     // needed as JPanel is Serializable
     private static final long serialVersionUID = 1L;
+    private static final Logger logger = LoggerFactory.getLogger(PicturePanel.class);
+    // Decodes server images off the event dispatch thread, one at a time.
+    private static final ExecutorService decoder = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "image-decode");
+        t.setDaemon(true);
+        return t;
+    });
+    private final transient ImageCache cache = new ImageCache();
     // picture grid state
-    private JLabel[][] labels;
+    private ImageCell[][] cells;
     private States state;
 
     /**
@@ -31,31 +50,41 @@ public class PicturePanel extends JPanel {
     public PicturePanel() {
         setLayout(new FlowLayout());
         setSize(500, 500);
-        labels = new JLabel[0][0];
+        cells = new ImageCell[0][0];
 
         state = States.NotStarted;
     }
 
     /**
      * Creates a new game
-     * NOTE: Will reset all state and clear board
+     * NOTE: Will reset all state and clear board. The cells are only rebuilt if the dimension changes.
      *
      * @param dimension - size of rows and columns
      */
     public void newGame(int dimension) {
+        if (cells.length == dimension && state != States.NotStarted) {
+            for (ImageCell[] row : cells) {
+                for (ImageCell cell : row) {
+                    cell.setImage(null);
+                }
+            }
+            state = States.InGameNoImage;
+            return;
+        }
         // clear board
         this.removeAll();
         // set size of grid
         setLayout(new GridLayout(dimension, dimension));
-        // initialize labels
-        labels = new JLabel[dimension][dimension];
+        // initialize cells
+        cells = new ImageCell[dimension][dimension];
         for (int row = 0; row < dimension; ++row) {
             for (int col = 0; col < dimension; ++col) {
-                labels[row][col] = new JLabel();
+                cells[row][col] = new ImageCell();
                 // add to grid
-                add(labels[row][col]);
+                add(cells[row][col]);
             }
         }
+        revalidate();
         state = States.InGameNoImage;
     }
 
@@ -70,24 +99,15 @@ public class PicturePanel extends JPanel {
      * @throws InvalidCoordinateException - Invalid coordinate attempted
      */
     public boolean insertImage(String fname, int row, int col) throws IOException, InvalidCoordinateException {
-        // Check or invalid coordinates
-        if (row < 0 || col < 0 ||
-                row >= 0 && labels.length <= row ||
-                labels[row].length <= col) {
-            throw new InvalidCoordinateException(labels.length, labels.length, row, col);
-        }
+        checkCoordinates(row, col);
 
         // create file reference
         File file = new File(fname);
         if (file.exists()) {
             // import image
             BufferedImage img = ImageIO.read(file);
-            // create icon to display
-            ImageIcon icon = new ImageIcon(img);
-            // do we need to setup the dimensions of all the containers?
-            handleFirstImage(icon.getIconWidth(), icon.getIconHeight());
             // insert image
-            labels[row][col].setIcon(icon);
+            cell(row, col).setImage(img);
             return true;
         }
         return false;
@@ -99,48 +119,114 @@ public class PicturePanel extends JPanel {
      * @param image - image to display
      * @param row   - image box row
      * @param col   - image box column
-     * @return true if image was found and set, false otherwise
      * @throws IOException                - File error
      * @throws InvalidCoordinateException - Invalid coordinate attempted
      */
     public void insertImage(ByteArrayInputStream image, int row, int col) throws IOException, InvalidCoordinateException {
+        checkCoordinates(row, col);
         BufferedImage img = ImageIO.read(image);
+        // insert image
+        cell(row, col).setImage(img);
+    }
+
+    /**
+     * Shows an image as sent by the server at position (col, row). Returns at once: the image is decoded
+     * on a background thread, unless it is in the cache, and shown on the event dispatch thread. If
+     * another image is shown in the same cell before this one is decoded, this one is dropped.
+     *
+     * @param base64 - the Base64-encoded image
+     * @param row    - image box row
+     * @param col    - image box column
+     * @throws InvalidCoordinateException - Invalid coordinate attempted
+     */
+    public void showImage(String base64, int row, int col) throws InvalidCoordinateException {
+        checkCoordinates(row, col);
+        ImageCell cell = cell(row, col);
+        long request = ++cell.requested;
+        decoder.execute(() -> {
+            try {
+                BufferedImage img = cache.decode(ImageCache.keyOf(base64), base64);
+                SwingUtilities.invokeLater(() -> {
+                    if (cell.requested == request) {
+                        cell.setImage(img);
+                    }
+                });
+            } catch (Exception e) {
+                logger.error("Could not decode image", e);
+            }
+        });
+    }
+
+    private void checkCoordinates(int row, int col) throws InvalidCoordinateException {
         // Check or invalid coordinates
         if (row < 0 || col < 0 ||
-                row >= 0 && labels.length <= row ||
-                labels[row].length <= col) {
-            throw new InvalidCoordinateException(labels.length, labels.length, row, col);
+                row >= 0 && cells.length <= row ||
+                cells[row].length <= col) {
+            throw new InvalidCoordinateException(cells.length, cells.length, row, col);
         }
+    }
 
-        // create icon to display
-        ImageIcon icon = new ImageIcon(img);
-        // do we need to setup the dimensions of all the containers?
-        handleFirstImage(icon.getIconWidth(), icon.getIconHeight());
-        // insert image
-        labels[row][col].setIcon(icon);
-
+    private ImageCell cell(int row, int col) {
+        // An image is on its way to the board.
+        state = States.InGameWithImage;
+        return cells[row][col];
     }
 
     /**
-     * Utility method to set the dimensions of all containers
-     *
-     * @param width  of first image
-     * @param height of first image
+     * One grid cell. It paints its image scaled to fit, centred, and keeps the scaled copy until the
+     * image or the cell size changes, so repainting is a plain copy.
      */
-    private void handleFirstImage(int width, int height) {
-        if (state == States.InGameNoImage) {
-            // calculate and set bounding box
-            int totalDimensionWidth = labels.length * width;
-            int totalDimensionHeight = labels.length * height;
-            setSize(totalDimensionWidth, totalDimensionHeight);
-
-            // set each images dimensions
-            for (int row = 0; row < labels.length; ++row) {
-                for (int col = 0; col < labels[0].length; ++col) {
-                    labels[row][col].setSize(width, height);
-                }
+    private static final class ImageCell extends JComponent {
+        private static final long serialVersionUID = 1L;
+        private transient BufferedImage image;
+        private transient BufferedImage scaled;
+        // The latest showImage request for this cell; only touched on the event dispatch thread.
+        private long requested = 0;
+
+        void setImage(BufferedImage image) {
+            if (image == this.image) {
+                return;
+            }
+            boolean resized = image == null || this.image == null
+                    || image.getWidth() != this.image.getWidth() || image.getHeight() != this.image.getHeight();
+            this.image = image;
+            this.scaled = null;
+            if (resized) {
+                revalidate();
+            }
+            repaint();
+        }
+
+        @Override
+        public Dimension getPreferredSize() {
+            return image == null ? new Dimension(0, 0) : new Dimension(image.getWidth(), image.getHeight());
+        }
+
+        @Override
+        protected void paintComponent(Graphics g) {
+            super.paintComponent(g);
+            if (image == null || getWidth() == 0 || getHeight() == 0) {
+                return;
+            }
+            double scale = Math.min((double) getWidth() / image.getWidth(), (double) getHeight() / image.getHeight());
+            int width = Math.max(1, (int) Math.round(image.getWidth() * scale));
+            int height = Math.max(1, (int) Math.round(image.getHeight() * scale));
+            if (scaled == null || scaled.getWidth() != width || scaled.getHeight() != height) {
+                scaled = scale(image, width, height);
+            }
+            g.drawImage(scaled, (getWidth() - width) / 2, (getHeight() - height) / 2, null);
+        }
+
+        private static BufferedImage scale(BufferedImage source, int width, int height) {
+            if (source.getWidth() == width && source.getHeight() == height) {
+                return source;
             }
-            state = States.InGameWithImage;
+            BufferedImage target = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+            Graphics2D g = target.createGraphics();
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.drawImage(source, 0, 0, width, height, null);
+            g.dispose();
+            return target;
         }
     }
 
@@ -0,0 +1,247 @@
+package Assign32starter;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+
+/**
+ * The PlayerDictionary class maps player keys and names to dense int ids, so leaderboard structures
+ * and the off-heap session store can hold an int per player instead of a String, and each string is
+ * kept exactly once however many partitions, windows or records it appears in.
+ * <p>
+ * Keys live in an array indexed by id, and the lookup index is an open-addressing table of ids with
+ * linear probing, so a lookup touches two int/reference arrays and allocates nothing. Ids handed out
+ * by {@link #idFor(String)} are permanent: a player who once had a score keeps their id for the life
+ * of the process. Ids handed out by {@link #acquire(String)} are reference counted and recycled once
+ * the last reference is released, unless the key also has a permanent id.
+ * <p>
+ * Lookups are lock-free. Writers are serialized by the dictionary's monitor, fill a new entry before
+ * making it reachable, and publish a grown table through a volatile field, so a reader either finds a
+ * complete entry or does not find it at all. A released key leaves a tombstone in the index, which
+ * readers probe past; the index is rebuilt once live entries and tombstones fill it. The maximum
+ * number of ids bounds heap use; keys beyond it are refused.
+ */
+public class PlayerDictionary {
+    private static final Logger logger = LoggerFactory.getLogger(PlayerDictionary.class);
+    private static final int MIN_CAPACITY = 16;
+    // Reference count of an id that is never recycled.
+    private static final int PERMANENT = -1;
+
+    private final int maxIds;
+    private volatile Table table;
+    // Writer-only state, guarded by the monitor.
+    private int[] freeIds = new int[MIN_CAPACITY];
+    private int freeCount = 0;
+    // Ids below this have been handed out at least once.
+    private int nextId = 0;
+    private boolean refusedLogged = false;
+
+    /**
+     * Constructs an empty dictionary sized for the given number of players.
+     *
+     * @param expectedPlayers the number of players to make room for up front
+     * @param maxIds          the largest number of ids in use at once
+     */
+    public PlayerDictionary(int expectedPlayers, int maxIds) {
+        int capacity = MIN_CAPACITY;
+        while (capacity < expectedPlayers && capacity < (1 << 29)) {
+            capacity <<= 1;
+        }
+        this.maxIds = maxIds;
+        this.table = new Table(capacity);
+    }
+
+    /**
+     * Returns the id of a key without assigning one.
+     *
+     * @param key the player key
+     * @return the id, or -1 if the key has none
+     */
+    public int idOf(String key) {
+        return idOf(table, key);
+    }
+
+    private static int idOf(Table t, String key) {
+        int[] slots = t.slots;
+        int mask = slots.length - 1;
+        for (int i = mix(key.hashCode()) & mask, probes = 0; probes < slots.length; i = (i + 1) & mask, probes++) {
+            int slot = slots[i];
+            if (slot == 0) {
+                return -1;
+            }
+            if (slot != Table.TOMBSTONE && key.equals(t.keys[slot - 1])) {
+                return slot - 1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the permanent id of a key, assigning the next free id if the key has none.
+     *
+     * @param key the player key
+     * @return the id, or -1 if the dictionary is full
+     */
+    public int idFor(String key) {
+        Table t = table;
+        int id = idOf(t, key);
+        // A permanent id never changes its key, so finding one needs no lock; anything else takes it.
+        if (id >= 0 && t.refCounts[id] == PERMANENT) {
+            return id;
+        }
+        return assign(key, true);
+    }
+
+    /**
+     * Returns the id of a key, assigning one if needed, and adds one reference to it.
+     * Release it with {@link #release(int)}.
+     *
+     * @param key the string to intern
+     * @return the id, or -1 if the dictionary is full
+     */
+    public int acquire(String key) {
+        return assign(key, false);
+    }
+
+    /**
+     * Drops one reference to an id returned by {@link #acquire(String)}, recycling the id when no
+     * references remain. Permanent ids are never recycled.
+     *
+     * @param id an id previously returned by {@link #acquire(String)}
+     */
+    public synchronized void release(int id) {
+        Table t = table;
+        if (t.refCounts[id] == PERMANENT || --t.refCounts[id] > 0) {
+            return;
+        }
+        t.remove(mix(t.keys[id].hashCode()), id);
+        t.keys[id] = null;
+        if (freeCount == freeIds.length) {
+            freeIds = Arrays.copyOf(freeIds, freeIds.length * 2);
+        }
+        freeIds[freeCount++] = id;
+    }
+
+    /**
+     * Returns the key of an id.
+     *
+     * @param id an id returned by {@link #idFor(String)} or a held one from {@link #acquire(String)}
+     * @return the player key
+     */
+    public String keyOf(int id) {
+        return table.keys[id];
+    }
+
+    /**
+     * Returns the number of ids currently in use.
+     *
+     * @return the dictionary size
+     */
+    public synchronized int size() {
+        return nextId - freeCount;
+    }
+
+    private synchronized int assign(String key, boolean permanent) {
+        int id = idOf(key);
+        if (id < 0) {
+            id = insert(key);
+            if (id < 0) {
+                return -1;
+            }
+        }
+        int[] refCounts = table.refCounts;
+        if (permanent) {
+            refCounts[id] = PERMANENT;
+        } else if (refCounts[id] != PERMANENT) {
+            refCounts[id]++;
+        }
+        return id;
+    }
+
+    private int insert(String key) {
+        if (nextId - freeCount >= maxIds) {
+            if (!refusedLogged) {
+                logger.warn("Dictionary is full ({} ids); new keys are refused.", maxIds);
+                refusedLogged = true;
+            }
+            return -1;
+        }
+        Table t = table;
+        if (freeCount == 0 && nextId == t.keys.length) {
+            t = t.rebuild(t.keys.length * 2);
+            table = t;
+        } else if (t.used == t.keys.length) {
+            // Tombstones fill the index; rebuilding drops them.
+            t = t.rebuild(t.keys.length);
+            table = t;
+        }
+        int id = freeCount > 0 ? freeIds[--freeCount] : nextId++;
+        t.refCounts[id] = 0;
+        t.keys[id] = key;
+        t.insert(mix(key.hashCode()), id);
+        // Re-publish so the new entry is visible to readers that read the table after this point.
+        table = t;
+        return id;
+    }
+
+    /**
+     * Spreads the hash bits so keys with similar hash codes do not cluster in the table.
+     */
+    private static int mix(int hash) {
+        hash *= 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * The keys and reference counts by id, and the id index. The index has twice as many slots as
+     * there are keys, and new entries only take empty slots, so counting tombstones it is at most half
+     * full and probe runs stay short.
+     */
+    private static final class Table {
+        static final int TOMBSTONE = -1;
+        // id + 1 per slot; 0 marks an empty slot.
+        final int[] slots;
+        final String[] keys;
+        final int[] refCounts;
+        // Slots holding an id or a tombstone.
+        int used;
+
+        Table(int capacity) {
+            this.slots = new int[capacity * 2];
+            this.keys = new String[capacity];
+            this.refCounts = new int[capacity];
+        }
+
+        void insert(int hash, int id) {
+            int mask = slots.length - 1;
+            int i = hash & mask;
+            while (slots[i] != 0) {
+                i = (i + 1) & mask;
+            }
+            slots[i] = id + 1;
+            used++;
+        }
+
+        void remove(int hash, int id) {
+            int mask = slots.length - 1;
+            int i = hash & mask;
+            while (slots[i] != id + 1) {
+                i = (i + 1) & mask;
+            }
+            slots[i] = TOMBSTONE;
+        }
+
+        Table rebuild(int capacity) {
+            Table copy = new Table(capacity);
+            System.arraycopy(keys, 0, copy.keys, 0, keys.length);
+            System.arraycopy(refCounts, 0, copy.refCounts, 0, refCounts.length);
+            for (int id = 0; id < keys.length; id++) {
+                if (keys[id] != null) {
+                    copy.insert(mix(keys[id].hashCode()), id);
+                }
+            }
+            return copy;
+        }
+    }
+}
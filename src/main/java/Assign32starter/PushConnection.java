@@ -0,0 +1,101 @@
+package Assign32starter;
+
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.ObjectOutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+
+/**
+ * The PushConnection class is a client connection that receives messages the server pushes, such as
+ * leaderboard updates and multiplayer room broadcasts.
+ * <p>
+ * It is separate from the game connection, so pushed messages never mix with the responses the game
+ * connection is waiting for. It sends an opening request ({@code subscribe} or a room {@code join})
+ * and then hands every message it receives, pushed or in response to {@link #send(JSONObject)}, to a
+ * callback on a background reader thread. Closing it closes the connection, which ends the
+ * subscription or room membership on the server.
+ */
+public class PushConnection implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(PushConnection.class);
+    private final Socket socket;
+    private final ObjectOutputStream out;
+    private volatile boolean closed = false;
+
+    /**
+     * Connects and sends the opening request.
+     *
+     * @param host      the server host
+     * @param port      the server port
+     * @param request   the opening request
+     * @param onMessage receives each message, on the reader thread
+     * @throws IOException if the connection cannot be opened
+     */
+    public PushConnection(String host, int port, JSONObject request, Consumer<JSONObject> onMessage) throws IOException {
+        socket = new Socket(host, port);
+        out = new ObjectOutputStream(socket.getOutputStream());
+        // Frames are UTF-8 whatever the platform's default charset.
+        BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+        send(request);
+        Thread reader = new Thread(() -> {
+            try {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    try {
+                        onMessage.accept(new JSONObject(line));
+                    } catch (RuntimeException e) {
+                        // A malformed frame, or a callback that failed on one, must not end the connection.
+                        logger.warn("Skipping a push message that could not be handled: {}", e.getMessage(), e);
+                    }
+                }
+            } catch (IOException e) {
+                if (!closed) {
+                    logger.warn("Push connection lost: {}", e.getMessage());
+                }
+            } finally {
+                close();
+            }
+        }, "push-connection");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    /**
+     * Sends a request on this connection. Its response arrives through the callback like any other message.
+     *
+     * @param request the request
+     * @throws IOException if the connection is broken
+     */
+    public synchronized void send(JSONObject request) throws IOException {
+        out.writeObject(request.toString());
+        out.flush();
+    }
+
+    /**
+     * Returns whether the connection has been closed, by either side.
+     *
+     * @return true once closed
+     */
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Closes the connection.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            socket.close();
+        } catch (IOException e) {
+            logger.error("Error closing push connection", e);
+        }
+    }
+}
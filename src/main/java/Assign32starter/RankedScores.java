@@ -0,0 +1,417 @@
+package Assign32starter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * The RankedScores class keeps the best score per player in rank order.
+ * <p>
+ * Players are identified by their {@link PlayerDictionary} id, so no structure here holds a key string
+ * or a boxed score. Each player's best score sits in an open-addressing table of primitive ids and
+ * doubles, and ranks live in a persistent (immutable) order-statistic treap of ids ordered by score
+ * descending, then key. Each node knows its subtree size, so insert, rank lookup and positional access
+ * are O(log n), and top-K iteration is O(log n + K). A resident player costs a treap node (about 40
+ * bytes) plus about 16 bytes of score table, whatever the length of their key.
+ * <p>
+ * An update copies only the O(log n) nodes on its search path and publishes the new root, so readers
+ * work on an immutable {@link Snapshot} that a write can neither block nor change. Updates are
+ * serialized by a {@link StampedLock}; in the server they all come from the partition's
+ * {@link ScoreAggregator}, so the lock is never contended, and score lookups read optimistically
+ * without taking it.
+ * <p>
+ * Every change publishes a snapshot with a version one higher than the last, so callers can tell
+ * whether anything changed since a snapshot they already hold by comparing two numbers.
+ */
+public class RankedScores {
+    private final PlayerDictionary players;
+    private final StampedLock lock = new StampedLock();
+    private ScoreIndex index = new ScoreIndex(16);
+    // Versions start from the creation time, so a restarted server does not reuse versions a client still holds.
+    private volatile Snapshot current;
+
+    /**
+     * Constructs an empty ranking.
+     *
+     * @param players the dictionary that assigns player ids
+     */
+    public RankedScores(PlayerDictionary players) {
+        this.players = players;
+        this.current = new Snapshot(players, null, System.currentTimeMillis() << 20);
+    }
+
+    /**
+     * Records a score for a player if it beats the player's current best (a max-register update).
+     *
+     * @param key   the player key
+     * @param score the new score
+     * @return true if the stored score changed
+     */
+    public boolean offer(String key, double score) {
+        int id = players.idFor(key);
+        return id >= 0 && offer(id, score);
+    }
+
+    /**
+     * Records a score for a player id if it beats the player's current best (a max-register update).
+     *
+     * @param id    the player id from this ranking's dictionary
+     * @param score the new score
+     * @return true if the stored score changed
+     */
+    public boolean offer(int id, double score) {
+        if (Double.isNaN(score)) {
+            return false;
+        }
+        long stamp = lock.writeLock();
+        try {
+            double old = index.get(id);
+            if (!Double.isNaN(old) && score <= old) {
+                return false;
+            }
+            String key = players.keyOf(id);
+            Snapshot before = current;
+            Node root = Double.isNaN(old) ? before.root : Node.delete(before.root, old, key, players);
+            root = Node.insert(root, id, key, score, ThreadLocalRandom.current().nextInt(), players);
+            index = index.put(id, score);
+            current = new Snapshot(players, root, before.version + 1);
+            return true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Returns the best score recorded for a player.
+     *
+     * @param key the player key
+     * @return the score, or {@link Double#NaN} if the player has none
+     */
+    public double getScore(String key) {
+        int id = players.idOf(key);
+        return id < 0 ? Double.NaN : getScore(id);
+    }
+
+    /**
+     * Returns the best score recorded for a player id.
+     *
+     * @param id the player id
+     * @return the score, or {@link Double#NaN} if the player has none
+     */
+    public double getScore(int id) {
+        long stamp = lock.tryOptimisticRead();
+        double score = index.get(id);
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                score = index.get(id);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return score;
+    }
+
+    /**
+     * Returns the number of players with a score.
+     *
+     * @return the player count
+     */
+    public int size() {
+        return current.size();
+    }
+
+    /**
+     * Returns the version of the current ranking. It grows by one with every change.
+     *
+     * @return the current version
+     */
+    public long version() {
+        return current.version;
+    }
+
+    /**
+     * Returns an immutable view of the current ranking.
+     *
+     * @return the snapshot
+     */
+    public Snapshot snapshot() {
+        return current;
+    }
+
+    /**
+     * Visitor for the entries of a {@link Snapshot}.
+     */
+    public interface EntryVisitor {
+        void visit(String key, double score);
+    }
+
+    /**
+     * An immutable ranking at one point in time.
+     */
+    public static final class Snapshot {
+        private final PlayerDictionary players;
+        private final Node root;
+        private final long version;
+
+        private Snapshot(PlayerDictionary players, Node root, long version) {
+            this.players = players;
+            this.root = root;
+            this.version = version;
+        }
+
+        /**
+         * Returns the version of this ranking.
+         *
+         * @return the version
+         */
+        public long version() {
+            return version;
+        }
+
+        /**
+         * Returns the number of ranked players.
+         *
+         * @return the player count
+         */
+        public int size() {
+            return Node.size(root);
+        }
+
+        /**
+         * Returns the 1-based rank a player with the given score and key holds, or would hold.
+         *
+         * @param key   the player key
+         * @param score the player's score
+         * @return the rank, where 1 is the best
+         */
+        public int rankOf(String key, double score) {
+            int before = 0;
+            Node node = root;
+            while (node != null) {
+                int cmp = Node.compare(score, key, node, players);
+                if (cmp <= 0) {
+                    node = node.left;
+                } else {
+                    before += Node.size(node.left) + 1;
+                    node = node.right;
+                }
+            }
+            return before + 1;
+        }
+
+        /**
+         * Visits up to {@code limit} players in rank order, starting at the given 0-based position.
+         *
+         * @param offset  the 0-based position of the first player to visit
+         * @param limit   the maximum number of players to visit
+         * @param visitor receives each player key and score
+         */
+        public void forEachInRange(int offset, int limit, EntryVisitor visitor) {
+            if (offset < 0 || limit <= 0 || offset >= size()) {
+                return;
+            }
+            // Descend to the offset, remembering the nodes still to visit in order.
+            List<Node> stack = new ArrayList<>();
+            Node node = root;
+            int skip = offset;
+            while (node != null) {
+                int leftSize = Node.size(node.left);
+                if (skip < leftSize) {
+                    stack.add(node);
+                    node = node.left;
+                } else if (skip == leftSize) {
+                    stack.add(node);
+                    break;
+                } else {
+                    skip -= leftSize + 1;
+                    node = node.right;
+                }
+            }
+            int visited = 0;
+            while (!stack.isEmpty() && visited < limit) {
+                Node next = stack.remove(stack.size() - 1);
+                visitor.visit(players.keyOf(next.id), next.score);
+                visited++;
+                for (Node n = next.right; n != null; n = n.left) {
+                    stack.add(n);
+                }
+            }
+        }
+
+        /**
+         * Visits every player in rank order.
+         *
+         * @param visitor receives each player key and score
+         */
+        public void forEach(EntryVisitor visitor) {
+            forEachInRange(0, size(), visitor);
+        }
+
+        /**
+         * Returns the top {@code k} players in rank order.
+         *
+         * @param k the number of players
+         * @return up to {@code k} key/score entries, best first
+         */
+        public List<Map.Entry<String, Double>> top(int k) {
+            List<Map.Entry<String, Double>> entries = new ArrayList<>(Math.min(k, size()));
+            forEachInRange(0, k, (key, score) -> entries.add(Map.entry(key, score)));
+            return entries;
+        }
+    }
+
+    /**
+     * Best score per player id, in an open-addressing table with linear probing. Ids are dense, so an
+     * id is its own hash. Not thread-safe; the ranking's lock guards it.
+     */
+    private static final class ScoreIndex {
+        // id + 1 per slot; 0 marks an empty slot.
+        final int[] ids;
+        final double[] scores;
+        int size;
+
+        ScoreIndex(int capacity) {
+            this.ids = new int[capacity];
+            this.scores = new double[capacity];
+        }
+
+        double get(int id) {
+            int mask = ids.length - 1;
+            for (int i = id & mask, probes = 0; probes < ids.length; i = (i + 1) & mask, probes++) {
+                if (ids[i] == 0) {
+                    return Double.NaN;
+                }
+                if (ids[i] == id + 1) {
+                    return scores[i];
+                }
+            }
+            return Double.NaN;
+        }
+
+        /**
+         * Stores a score and returns the index holding it, which is a larger copy once this one is
+         * three quarters full.
+         */
+        ScoreIndex put(int id, double score) {
+            int mask = ids.length - 1;
+            int i = id & mask;
+            while (ids[i] != 0) {
+                if (ids[i] == id + 1) {
+                    scores[i] = score;
+                    return this;
+                }
+                i = (i + 1) & mask;
+            }
+            if ((size + 1) * 4 > ids.length * 3) {
+                ScoreIndex bigger = new ScoreIndex(ids.length * 2);
+                for (int j = 0; j < ids.length; j++) {
+                    if (ids[j] != 0) {
+                        bigger.put(ids[j] - 1, scores[j]);
+                    }
+                }
+                return bigger.put(id, score);
+            }
+            scores[i] = score;
+            ids[i] = id + 1;
+            size++;
+            return this;
+        }
+    }
+
+    /**
+     * An immutable treap node with a subtree size. Nodes hold the player id; the key is looked up in
+     * the dictionary only to break ties between equal scores.
+     */
+    private static final class Node {
+        final int id;
+        final double score;
+        final int priority;
+        final Node left;
+        final Node right;
+        final int size;
+
+        Node(int id, double score, int priority, Node left, Node right) {
+            this.id = id;
+            this.score = score;
+            this.priority = priority;
+            this.left = left;
+            this.right = right;
+            this.size = size(left) + size(right) + 1;
+        }
+
+        static int size(Node node) {
+            return node == null ? 0 : node.size;
+        }
+
+        Node withChildren(Node newLeft, Node newRight) {
+            return new Node(id, score, priority, newLeft, newRight);
+        }
+
+        /**
+         * Orders by score descending, then key ascending.
+         */
+        static int compare(double score, String key, Node node, PlayerDictionary players) {
+            int cmp = Double.compare(node.score, score);
+            return cmp != 0 ? cmp : key.compareTo(players.keyOf(node.id));
+        }
+
+        static Node insert(Node node, int id, String key, double score, int priority, PlayerDictionary players) {
+            if (node == null) {
+                return new Node(id, score, priority, null, null);
+            }
+            if (priority > node.priority) {
+                Node[] parts = split(node, score, key, players);
+                return new Node(id, score, priority, parts[0], parts[1]);
+            }
+            if (compare(score, key, node, players) < 0) {
+                return node.withChildren(insert(node.left, id, key, score, priority, players), node.right);
+            }
+            return node.withChildren(node.left, insert(node.right, id, key, score, priority, players));
+        }
+
+        /**
+         * Splits into nodes ordered before and after the given position.
+         */
+        static Node[] split(Node node, double score, String key, PlayerDictionary players) {
+            if (node == null) {
+                return new Node[2];
+            }
+            if (compare(score, key, node, players) < 0) {
+                Node[] parts = split(node.left, score, key, players);
+                return new Node[]{parts[0], node.withChildren(parts[1], node.right)};
+            }
+            Node[] parts = split(node.right, score, key, players);
+            return new Node[]{node.withChildren(node.left, parts[0]), parts[1]};
+        }
+
+        static Node delete(Node node, double score, String key, PlayerDictionary players) {
+            if (node == null) {
+                return null;
+            }
+            int cmp = compare(score, key, node, players);
+            if (cmp < 0) {
+                return node.withChildren(delete(node.left, score, key, players), node.right);
+            }
+            if (cmp > 0) {
+                return node.withChildren(node.left, delete(node.right, score, key, players));
+            }
+            return merge(node.left, node.right);
+        }
+
+        static Node merge(Node left, Node right) {
+            if (left == null) {
+                return right;
+            }
+            if (right == null) {
+                return left;
+            }
+            if (left.priority > right.priority) {
+                return left.withChildren(left.left, merge(left.right, right));
+            }
+            return right.withChildren(merge(left, right.left), right.right);
+        }
+    }
+}
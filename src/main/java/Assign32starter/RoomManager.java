@@ -0,0 +1,111 @@
+package Assign32starter;
+
+import Assign32starter.enums.GameType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The RoomManager class keeps the open {@link GameRoom}s and the threads they share.
+ * <p>
+ * A room is created by its first member and removed when its last member leaves. One timeline thread
+ * drives the reveal timers of every room, and a fixed pool of {@code room.writerThreads} threads loads
+ * images and writes frames to members, so the number of threads does not grow with rooms or members.
+ */
+public class RoomManager {
+    private static final Logger logger = LoggerFactory.getLogger(RoomManager.class);
+    private static final Map<String, GameRoom> rooms = new ConcurrentHashMap<>();
+    private static final ScheduledExecutorService timeline = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "room-timeline");
+        t.setDaemon(true);
+        return t;
+    });
+    private static final ExecutorService writers = Executors.newFixedThreadPool(Integer.getInteger("room.writerThreads", 8), r -> {
+        Thread t = new Thread(r, "room-writer");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /**
+     * Adds a connection to a room, creating the room if it does not exist.
+     *
+     * @param roomName  the room name
+     * @param type      the game length a new room plays
+     * @param playerKey the member's leaderboard-style key
+     * @param player    true for a player, false for a spectator
+     * @param out       the member's connection
+     * @return the new member
+     */
+    public static GameRoom.Member join(String roomName, GameType type, String playerKey, boolean player, FrameWriter out) {
+        return join(roomName, type, playerKey, player, out, null);
+    }
+
+    /**
+     * Adds a connection to a room as {@link #join(String, GameType, String, boolean, FrameWriter)} does, first
+     * queueing a frame for it that arrives ahead of everything the room sends.
+     *
+     * @param greeting an encoded frame for the member, or null
+     */
+    static GameRoom.Member join(String roomName, GameType type, String playerKey, boolean player, FrameWriter out,
+                                byte[] greeting) {
+        GameRoom.Member member = new GameRoom.Member(playerKey, player, out, new SerialExecutor(writers));
+        while (true) {
+            GameRoom room = rooms.computeIfAbsent(roomName, name -> {
+                logger.info("Room {} opened ({} games).", name, type);
+                return new GameRoom(name, type);
+            });
+            member.setRoom(room);
+            if (greeting != null) {
+                member.deliver(greeting);
+                greeting = null;
+            }
+            // A room closed by its last member in the meantime is replaced by a new one.
+            if (room.join(member)) {
+                return member;
+            }
+            rooms.remove(roomName, room);
+        }
+    }
+
+    /**
+     * Returns the number of open rooms.
+     *
+     * @return the room count
+     */
+    public static int size() {
+        return rooms.size();
+    }
+
+    static void remove(GameRoom room) {
+        if (rooms.remove(room.getName(), room)) {
+            logger.info("Room {} closed.", room.getName());
+        }
+    }
+
+    static void load(Runnable task) {
+        writers.execute(() -> {
+            try {
+                task.run();
+            } catch (Exception e) {
+                logger.error("Error loading a room frame: ", e);
+            }
+        });
+    }
+
+    static ScheduledFuture<?> schedule(Runnable step, long delayMillis) {
+        return timeline.schedule(() -> {
+            try {
+                step.run();
+            } catch (Exception e) {
+                logger.error("Error in room timeline: ", e);
+            }
+        }, delayMillis, TimeUnit.MILLISECONDS);
+    }
+}
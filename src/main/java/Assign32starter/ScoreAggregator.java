@@ -0,0 +1,199 @@
+package Assign32starter;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * The ScoreAggregator class is the single writer of one leaderboard partition.
+ * <p>
+ * Handlers submit scores to a lock-free multi-producer queue and return at once. One aggregator thread
+ * drains the queue in batches, keeps only the best score per player and time slot in each batch
+ * (see {@link LeaderboardLog.Record#slot()}), applies what is left to the {@link ScoreBoard}, and
+ * appends the changes that improved a score to the {@link LeaderboardLog} with one write per batch.
+ * Handlers never wait on a monitor or on disk, and a burst of game endings turns into a few large
+ * batches instead of many small writes. The same thread also drops expired rolling-window buckets,
+ * so the board has exactly one writer.
+ * <p>
+ * Until its batch is applied a submitted score is not visible in queries, so callers report a
+ * provisional rank (see {@link Leaderboard#updateScore}).
+ */
+public class ScoreAggregator {
+    private static final Logger logger = LoggerFactory.getLogger(ScoreAggregator.class);
+    private static final int MAX_BATCH = Integer.getInteger("leaderboard.maxBatch", 4096);
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final long EXPIRY_PERIOD_MILLIS = TimeUnit.SECONDS.toMillis(60);
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 5;
+
+    private final ScoreBoard board;
+    private final LeaderboardLog log;
+    private final Queue<LeaderboardLog.Record> inbox = new ConcurrentLinkedQueue<>();
+    private final Thread thread;
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private volatile boolean running = false;
+    private volatile Consumer<List<LeaderboardLog.Record>> listener;
+    private long lastExpiry = 0;
+
+    /**
+     * Constructs an aggregator for a recovered board and its log.
+     *
+     * @param board the board to apply scores to
+     * @param log   the log to persist changes to
+     * @param name  a name for the aggregator thread
+     */
+    public ScoreAggregator(ScoreBoard board, LeaderboardLog log, String name) {
+        this.board = board;
+        this.log = log;
+        this.thread = new Thread(this::run, name);
+        this.thread.setDaemon(true);
+    }
+
+    /**
+     * Starts the aggregator thread. Scores still queued at JVM shutdown are applied and written before exit.
+     */
+    public void start() {
+        running = true;
+        thread.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(this::stop, thread.getName() + "-shutdown"));
+    }
+
+    /**
+     * Registers a callback that receives the records of each batch that changed the board, after they
+     * are logged. It runs on the aggregator thread, so it must be quick, and must copy what it keeps.
+     *
+     * @param listener the callback
+     */
+    public void setListener(Consumer<List<LeaderboardLog.Record>> listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Queues a score for the next batch. Never blocks.
+     *
+     * @param key   the player key
+     * @param score the score
+     * @param time  when the score was made, in milliseconds
+     */
+    public void submit(String key, double score, long time) {
+        submit(new LeaderboardLog.Record(key, score, time));
+    }
+
+    /**
+     * Queues a score received from another cluster node for the next batch. Never blocks. It is logged
+     * and ranked like a local score, but marked as remote so it is not sent on to other nodes again.
+     *
+     * @param key   the player key
+     * @param score the score
+     * @param time  when the score was made, in milliseconds
+     */
+    public void submitRemote(String key, double score, long time) {
+        submit(new LeaderboardLog.Record(key, score, time, true));
+    }
+
+    private void submit(LeaderboardLog.Record record) {
+        inbox.offer(record);
+        submitted.incrementAndGet();
+        LockSupport.unpark(thread);
+    }
+
+    /**
+     * Returns the number of scores submitted so far.
+     *
+     * @return the submission count
+     */
+    public long getSubmittedCount() {
+        return submitted.get();
+    }
+
+    /**
+     * Returns the number of submissions that were merged into another submission for the same player
+     * and slot.
+     *
+     * @return the coalesced count
+     */
+    public long getCoalescedCount() {
+        return coalesced.get();
+    }
+
+    /**
+     * Returns the number of batches applied so far.
+     *
+     * @return the batch count
+     */
+    public long getBatchCount() {
+        return batches.get();
+    }
+
+    private void stop() {
+        running = false;
+        LockSupport.unpark(thread);
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(SHUTDOWN_TIMEOUT_SECONDS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        try {
+            log.compactIfDue();
+        } catch (Exception e) {
+            logger.error("Error rewriting leaderboard log: ", e);
+        }
+        Map<LeaderboardLog.Slot, LeaderboardLog.Record> batch = new HashMap<>();
+        List<LeaderboardLog.Record> changed = new ArrayList<>();
+        while (running || !inbox.isEmpty()) {
+            LeaderboardLog.Record record;
+            int drained = 0;
+            while (drained < MAX_BATCH && (record = inbox.poll()) != null) {
+                drained++;
+                // Keep only the best score per player and slot; scores from different slots count in
+                // different windows, so an older high score must not replace a newer lower one.
+                batch.merge(record.slot(), record, LeaderboardLog.Record::best);
+            }
+            try {
+                if (drained > 0) {
+                    coalesced.addAndGet(drained - batch.size());
+                    for (LeaderboardLog.Record r : batch.values()) {
+                        if (board.offer(r.key, r.score, r.time)) {
+                            changed.add(r);
+                        }
+                    }
+                    log.write(changed);
+                    batches.incrementAndGet();
+                    Consumer<List<LeaderboardLog.Record>> l = listener;
+                    if (l != null && !changed.isEmpty()) {
+                        l.accept(changed);
+                    }
+                }
+                log.sync(!running);
+                log.compactIfDue();
+                long now = System.currentTimeMillis();
+                if (now - lastExpiry >= EXPIRY_PERIOD_MILLIS) {
+                    board.expire(now);
+                    lastExpiry = now;
+                }
+            } catch (Exception e) {
+                logger.error("Error applying leaderboard batch of {} scores: ", batch.size(), e);
+            }
+            batch.clear();
+            changed.clear();
+            if (drained == 0 && running) {
+                LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+            }
+        }
+        log.close();
+    }
+}
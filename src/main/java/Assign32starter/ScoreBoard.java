@@ -0,0 +1,83 @@
+package Assign32starter;
+
+import Assign32starter.enums.LeaderboardWindow;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * The ScoreBoard class holds one leaderboard in every {@link LeaderboardWindow}: an all-time
+ * {@link RankedScores} plus a {@link WindowedScores} per rolling window. A score is offered to all of
+ * them at once, so each window sees the best score a player made within it. The player's key is
+ * resolved to its {@link PlayerDictionary} id once per score, and the windows work with the id.
+ */
+public class ScoreBoard {
+    private final PlayerDictionary players;
+    private final RankedScores allTime;
+    private final Map<LeaderboardWindow, WindowedScores> rolling = new EnumMap<>(LeaderboardWindow.class);
+
+    /**
+     * Constructs an empty board with every rolling window.
+     *
+     * @param players the dictionary that assigns player ids, which boards may share
+     */
+    public ScoreBoard(PlayerDictionary players) {
+        this.players = players;
+        this.allTime = new RankedScores(players);
+        for (LeaderboardWindow window : LeaderboardWindow.values()) {
+            if (window != LeaderboardWindow.ALL_TIME) {
+                rolling.put(window, new WindowedScores(window, players));
+            }
+        }
+    }
+
+    /**
+     * Records a score made at the given time in every window it belongs to.
+     *
+     * @param key   the player key
+     * @param score the score
+     * @param time  when the score was made, in milliseconds
+     * @return true if any window changed
+     */
+    public boolean offer(String key, double score, long time) {
+        int id = players.idFor(key);
+        if (id < 0) {
+            return false;
+        }
+        boolean changed = allTime.offer(id, score);
+        for (WindowedScores windowed : rolling.values()) {
+            changed |= windowed.offer(id, score, time);
+        }
+        return changed;
+    }
+
+    /**
+     * Returns the current ranking for a window.
+     *
+     * @param window the window
+     * @return the ranking
+     */
+    public RankedScores ranking(LeaderboardWindow window) {
+        return window == LeaderboardWindow.ALL_TIME ? allTime : rolling.get(window).ranking();
+    }
+
+    /**
+     * Returns the rolling windows, keyed by window.
+     *
+     * @return the rolling windows
+     */
+    public Map<LeaderboardWindow, WindowedScores> rollingWindows() {
+        return rolling;
+    }
+
+    /**
+     * Drops the buckets that have left their window.
+     *
+     * @param now the current time in milliseconds
+     */
+    public void expire(long now) {
+        for (WindowedScores windowed : rolling.values()) {
+            windowed.expire(now);
+        }
+    }
+}
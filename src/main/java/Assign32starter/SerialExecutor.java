@@ -0,0 +1,79 @@
+package Assign32starter;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * An Executor that runs its tasks one at a time, in submission order, on a shared backing executor.
+ * Each session owns one, so requests for the same session are serialized while requests for different
+ * sessions run in parallel. No thread is dedicated to an idle mailbox.
+ */
+public class SerialExecutor implements Executor {
+    private final Queue<Runnable> mailbox = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private final Executor backing;
+
+    /**
+     * Constructs a SerialExecutor that drains its mailbox on the given executor.
+     *
+     * @param backing the shared executor that provides the worker threads
+     */
+    public SerialExecutor(Executor backing) {
+        this.backing = backing;
+    }
+
+    /**
+     * Queues the task behind any task already submitted to this executor.
+     *
+     * @param task the task to run
+     */
+    @Override
+    public void execute(Runnable task) {
+        mailbox.offer(task);
+        schedule();
+    }
+
+    /**
+     * Claims this executor for the calling thread if no task is running or queued, so the caller can run
+     * its work right here instead of handing it to the backing executor. Tasks submitted while the
+     * executor is claimed wait in the mailbox until {@link #release()}.
+     *
+     * @return true if the caller now holds the executor and must call {@link #release()}
+     */
+    public boolean tryClaim() {
+        return mailbox.isEmpty() && scheduled.compareAndSet(false, true);
+    }
+
+    /**
+     * Releases an executor claimed with {@link #tryClaim()} and hands any task submitted meanwhile to
+     * the backing executor.
+     */
+    public void release() {
+        scheduled.set(false);
+        schedule();
+    }
+
+    private void schedule() {
+        if (!mailbox.isEmpty() && scheduled.compareAndSet(false, true)) {
+            backing.execute(this::drain);
+        }
+    }
+
+    /**
+     * Runs queued tasks until the mailbox is empty, then releases the mailbox and re-checks for
+     * tasks that were offered while it was being released.
+     */
+    private void drain() {
+        try {
+            Runnable task;
+            while ((task = mailbox.poll()) != null) {
+                task.run();
+            }
+        } finally {
+            scheduled.set(false);
+            schedule();
+        }
+    }
+}
@@ -1,48 +1,177 @@
 package Assign32starter;
 
 import Assign32starter.entity.GameState;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.util.Collection;
 import java.util.Map;
+import java.util.Queue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * The SessionManager class provides functionality for managing game sessions.
  * It maintains a thread-safe mapping of session identifiers to their respective game states.
  * The class includes methods for creating, retrieving, and removing game sessions,
  * ensuring thread safety and uniqueness for session identifiers.
+ * <p>
+ * The store is bounded: sessions expire after an idle timeout or an absolute lifetime, and once
+ * {@link #MAX_SESSIONS} is reached the least recently used sessions are evicted using a CLOCK
+ * (second-chance) queue. Expired sessions are dropped lazily when looked up and by a background
+ * sweeper, so no request ever scans the whole store.
+ * <p>
+ * Each session is a {@link GameSession} whose state is mutated in place through its own mailbox;
+ * mailboxes share one fixed pool of worker threads.
+ * <p>
+ * Sessions that no connection is bound to and that have been idle for a while are parked by the
+ * sweeper in an {@link OffHeapSessionStore}, which keeps them as compact fixed-width records, and
+ * are woken up transparently by the next lookup. The two tiers are bounded separately:
+ * {@link #MAX_SESSIONS} caps the sessions held on-heap, which are the only ones eviction can reach,
+ * and {@link #OFF_HEAP_CAPACITY} caps the parked ones, which leave the store by expiring.
  */
 public class SessionManager {
+    private static final Logger logger = LoggerFactory.getLogger(SessionManager.class);
+    /**
+     * Milliseconds a session may stay unused before it expires (system property {@code session.idleTtlSeconds}).
+     */
+    static final long IDLE_TTL_MILLIS = TimeUnit.SECONDS.toMillis(Long.getLong("session.idleTtlSeconds", 15 * 60));
+    /**
+     * Milliseconds a session may live in total, however active (system property {@code session.maxLifetimeSeconds}).
+     */
+    static final long MAX_LIFETIME_MILLIS = TimeUnit.SECONDS.toMillis(Long.getLong("session.maxLifetimeSeconds", 4 * 60 * 60));
+    /**
+     * Upper bound on the number of sessions held on-heap (system property {@code session.maxEntries}).
+     */
+    static final int MAX_SESSIONS = Integer.getInteger("session.maxEntries", 100_000);
+    /**
+     * Milliseconds an unbound session stays on-heap before it is parked (system property {@code session.parkAfterSeconds}).
+     */
+    static final long PARK_AFTER_MILLIS = TimeUnit.SECONDS.toMillis(Long.getLong("session.parkAfterSeconds", 60));
+    /**
+     * Number of sessions the off-heap store can hold; 0 disables parking (system property {@code session.offHeapCapacity}).
+     */
+    static final int OFF_HEAP_CAPACITY = Integer.getInteger("session.offHeapCapacity", 262_144);
+    private static final long SWEEP_PERIOD_SECONDS = 30;
+
     /**
      * A thread-safe map that stores active game sessions.
      * Each session is identified by a unique session ID (String)
-     * and is associated with a specific game state ({@link GameState}).
+     * and is associated with a specific game session ({@link GameSession}).
      * This map is used to manage and track multiple game sessions,
      * allowing operations like creating, retrieving, and removing sessions.
      */
-    private static final Map<String, GameState> sessions = new ConcurrentHashMap<>();
+    private static final Map<String, GameSession> sessions = new ConcurrentHashMap<>();
+    /**
+     * Session IDs in insertion order, used as the CLOCK hand for eviction. It may contain IDs of
+     * sessions that were already removed; those are skipped when polled and purged by the sweeper.
+     */
+    private static final Queue<String> evictionQueue = new ConcurrentLinkedQueue<>();
+    // Sessions held on-heap; parked sessions are counted by the off-heap store.
+    private static final AtomicInteger liveCount = new AtomicInteger();
+    private static final LongAdder expiredCount = new LongAdder();
+    private static final LongAdder evictedCount = new LongAdder();
+    private static final LongAdder removedCount = new LongAdder();
+    private static final OffHeapSessionStore parked =
+            OFF_HEAP_CAPACITY > 0 ? new OffHeapSessionStore(OFF_HEAP_CAPACITY, SockServer.getMovieSelector()) : null;
+    private static final AtomicLong workerIds = new AtomicLong();
+    /**
+     * Worker threads shared by all session mailboxes (system property {@code session.workerThreads}).
+     * They only run work that found its session busy; uncontended work runs on the requesting thread.
+     */
+    private static final ExecutorService workers = Executors.newFixedThreadPool(
+            Integer.getInteger("session.workerThreads", Runtime.getRuntime().availableProcessors()), r -> {
+        Thread t = new Thread(r, "session-worker-" + workerIds.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+    });
+
+    static {
+        ScheduledExecutorService sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "session-sweeper");
+            t.setDaemon(true);
+            return t;
+        });
+        sweeper.scheduleWithFixedDelay(SessionManager::sweep, SWEEP_PERIOD_SECONDS, SWEEP_PERIOD_SECONDS, TimeUnit.SECONDS);
+    }
 
     /**
-     * Creates a new session for the given game state and returns a unique session identifier.
+     * Creates a new session for the given game state.
      * The session is stored in a shared session store, allowing it to be retrieved or managed later.
+     * If the store is full, the least recently used sessions are evicted first.
      *
      * @param state the current game state to associate with the session
-     * @return a unique identifier for the newly created session
+     * @return the newly created session, carrying its unique identifier
      */
-    public static String createSession(GameState state) {
+    public static GameSession createSession(GameState state) {
         String sessionId = generateSessionId(); // Implement a method to generate a unique token.
-        sessions.put(sessionId, state);
-        return sessionId;
+        if (liveCount.incrementAndGet() > MAX_SESSIONS) {
+            evictOne();
+        }
+        GameSession session = new GameSession(sessionId, state, workers, System.currentTimeMillis());
+        sessions.put(sessionId, session);
+        evictionQueue.offer(sessionId);
+        return session;
+    }
+
+    /**
+     * Retrieves the session with the given ID and marks it as used.
+     * A session that has passed its idle timeout or absolute lifetime is removed and not returned.
+     *
+     * @param sessionId the unique identifier for the desired game session
+     * @return the live {@code GameSession} for the given session ID,
+     * or {@code null} if no live session exists for the provided ID
+     */
+    public static GameSession getSession(String sessionId) {
+        GameSession session = sessions.get(sessionId);
+        boolean woken = false;
+        if (session == null && parked != null && sessionId != null) {
+            GameSession[] wokenSession = new GameSession[1];
+            session = sessions.compute(sessionId, (id, current) -> current != null ? current : (wokenSession[0] = wake(id)));
+            woken = wokenSession[0] != null;
+        }
+        if (session == null) {
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        if (session.isExpired(now)) {
+            if (sessions.remove(sessionId, session)) {
+                liveCount.decrementAndGet();
+                expiredCount.increment();
+            }
+            return null;
+        }
+        session.touch(now);
+        // Evicting inside compute could deadlock on the map, so a woken session makes room afterwards.
+        if (woken && liveCount.get() > MAX_SESSIONS) {
+            evictOne();
+        }
+        return session;
     }
 
     /**
-     * Retrieves the game state associated with the given session ID.
+     * Retrieves the session with the given ID and binds the calling connection to it, so it
+     * cannot be parked while the connection uses it. Release it with {@link GameSession#detach()}.
      *
      * @param sessionId the unique identifier for the desired game session
-     * @return the {@code GameState} associated with the given session ID,
-     * or {@code null} if no session exists for the provided ID
+     * @return the bound session, or {@code null} if no live session exists for the provided ID
      */
-    public static GameState getSession(String sessionId) {
-        return sessions.get(sessionId);
+    public static GameSession attachSession(String sessionId) {
+        while (true) {
+            GameSession session = getSession(sessionId);
+            if (session == null || session.attach()) {
+                return session;
+            }
+            // The sweeper parked it between lookup and attach; the next lookup wakes it up.
+            Thread.onSpinWait();
+        }
     }
 
     /**
@@ -51,18 +180,244 @@ public class SessionManager {
      * @param sessionId the unique identifier of the session to be removed
      */
     public static void removeSession(String sessionId) {
-        sessions.remove(sessionId);
+        if (sessionId == null) {
+            return;
+        }
+        boolean removed;
+        if (sessions.remove(sessionId) != null) {
+            liveCount.decrementAndGet();
+            removed = true;
+        } else {
+            removed = parked != null && parked.take(sessionId) != null;
+        }
+        if (removed) {
+            removedCount.increment();
+            SessionSnapshotter.recordRemoval(sessionId);
+        }
+    }
+
+    /**
+     * Puts a session recovered from a snapshot back into the store under its original ID.
+     * Sessions that have expired in the meantime are ignored.
+     *
+     * @param sessionId  the original session ID
+     * @param state      the recovered game state
+     * @param createdAt  the original creation time in milliseconds
+     * @param lastAccess the last access time recorded in the snapshot
+     * @param lastSeq    the sequence number of the last request applied to the session
+     * @return true if the session was restored
+     */
+    static boolean restoreSession(String sessionId, GameState state, long createdAt, long lastAccess, long lastSeq) {
+        GameSession session = new GameSession(sessionId, state, workers, createdAt);
+        session.lastAccess = lastAccess;
+        session.lastSeq = lastSeq;
+        session.markSaved(session.changes);
+        if (session.isExpired(System.currentTimeMillis())) {
+            return false;
+        }
+        if (sessions.putIfAbsent(sessionId, session) == null) {
+            evictionQueue.offer(sessionId);
+            if (liveCount.incrementAndGet() > MAX_SESSIONS) {
+                evictOne();
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns a weakly consistent live view of all on-heap sessions. Iterating it never blocks writers.
+     *
+     * @return the sessions currently held on-heap
+     */
+    static Collection<GameSession> liveSessions() {
+        return sessions.values();
+    }
+
+    /**
+     * Visits every parked session.
+     *
+     * @param visitor the callback receiving each parked session
+     */
+    static void forEachParked(OffHeapSessionStore.Visitor visitor) {
+        if (parked != null) {
+            parked.forEach(visitor);
+        }
+    }
+
+    /**
+     * Returns the number of sessions currently held on-heap, not counting parked ones.
+     *
+     * @return the on-heap session count
+     */
+    public static int getLiveSessionCount() {
+        return liveCount.get();
+    }
+
+    /**
+     * Returns the number of live sessions currently parked off-heap.
+     *
+     * @return the parked session count
+     */
+    public static int getParkedSessionCount() {
+        return parked == null ? 0 : parked.size();
+    }
+
+    /**
+     * Returns the number of sessions dropped because their idle timeout or lifetime elapsed.
+     *
+     * @return the total expired session count since startup
+     */
+    public static long getExpiredSessionCount() {
+        return expiredCount.sum();
+    }
+
+    /**
+     * Returns the number of sessions dropped to keep the store within {@link #MAX_SESSIONS}.
+     *
+     * @return the total evicted session count since startup
+     */
+    public static long getEvictedSessionCount() {
+        return evictedCount.sum();
+    }
+
+    /**
+     * Returns the number of sessions removed explicitly, on quit or disconnect.
+     *
+     * @return the total removed session count since startup
+     */
+    public static long getRemovedSessionCount() {
+        return removedCount.sum();
+    }
+
+    /**
+     * Evicts one session using the CLOCK algorithm: sessions used since the hand last passed them
+     * get a second chance and are re-queued, the first unused one is dropped. Already removed IDs
+     * are discarded on the way. The loop is bounded by two passes over the queue.
+     */
+    private static void evictOne() {
+        int budget = 2 * Math.max(1, liveCount.get());
+        String candidate;
+        while (budget-- > 0 && (candidate = evictionQueue.poll()) != null) {
+            GameSession session = sessions.get(candidate);
+            if (session == null) {
+                continue;
+            }
+            if (session.referenced) {
+                session.referenced = false;
+                evictionQueue.offer(candidate);
+                continue;
+            }
+            if (sessions.remove(candidate, session)) {
+                liveCount.decrementAndGet();
+                evictedCount.increment();
+                SessionSnapshotter.recordRemoval(candidate);
+                logger.debug("Evicted session {} to stay within {} sessions.", candidate, MAX_SESSIONS);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Background task that drops expired sessions and purges stale IDs from the eviction queue.
+     * Runs on the sweeper thread, never on a request path.
+     */
+    static void sweep() {
+        try {
+            long now = System.currentTimeMillis();
+            int expired = 0;
+            int parkedNow = 0;
+            for (Map.Entry<String, GameSession> entry : sessions.entrySet()) {
+                GameSession session = entry.getValue();
+                if (session.isExpired(now)) {
+                    if (sessions.remove(entry.getKey(), session)) {
+                        liveCount.decrementAndGet();
+                        expiredCount.increment();
+                        expired++;
+                    }
+                } else if (now - session.lastAccess > PARK_AFTER_MILLIS && park(session)) {
+                    parkedNow++;
+                }
+            }
+            if (parked != null) {
+                int expiredParked = parked.expire(now, IDLE_TTL_MILLIS, MAX_LIFETIME_MILLIS);
+                expiredCount.add(expiredParked);
+                expired += expiredParked;
+            }
+            evictionQueue.removeIf(id -> !sessions.containsKey(id));
+            logger.info("Session sweep: live={}, parked={}, parkedNow={}, expiredNow={}, expiredTotal={}, evictedTotal={}, removedTotal={}",
+                    getLiveSessionCount(), getParkedSessionCount(), parkedNow, expired,
+                    getExpiredSessionCount(), getEvictedSessionCount(), getRemovedSessionCount());
+        } catch (Exception e) {
+            logger.error("Error sweeping sessions: ", e);
+        }
+    }
+
+    /**
+     * Moves an unbound session into the off-heap store. Runs on the sweeper thread only, which is
+     * also the only thread that fills the store, so a capacity check up front cannot go stale.
+     * Nothing mutates an unbound session, so its state can be read here directly. While snapshots are
+     * taken, a session is only parked once its latest changes are in the snapshot file, since the file
+     * is only brought up to date from on-heap sessions.
+     *
+     * @return true if the session was parked
+     */
+    private static boolean park(GameSession session) {
+        if (parked == null || parked.size() >= parked.capacity()
+                || (SessionSnapshotter.isEnabled() && session.isDirty()) || !session.tryPark()) {
+            return false;
+        }
+        boolean[] moved = new boolean[1];
+        sessions.computeIfPresent(session.getId(), (id, current) -> {
+            if (current != session) {
+                return current;
+            }
+            moved[0] = parked.put(id, session.getState(), session.getCreatedAt(), session.lastAccess, session.lastSeq);
+            return moved[0] ? null : current;
+        });
+        if (moved[0]) {
+            liveCount.decrementAndGet();
+        } else {
+            session.cancelPark();
+        }
+        return moved[0];
+    }
+
+    /**
+     * Rebuilds an on-heap session from its off-heap record. Called inside {@code sessions.compute},
+     * so no other thread can wake the same session concurrently. The caller evicts if this takes the
+     * on-heap count over {@link #MAX_SESSIONS}.
+     *
+     * @return the woken session, or {@code null} if it is not parked
+     */
+    private static GameSession wake(String sessionId) {
+        OffHeapSessionStore.Entry entry = parked.take(sessionId);
+        if (entry == null) {
+            return null;
+        }
+        GameSession session = new GameSession(sessionId, entry.state, workers, entry.createdAt);
+        session.lastAccess = entry.lastAccess;
+        session.lastSeq = entry.lastSeq;
+        // Only saved sessions are parked, so the snapshot file already holds this state.
+        session.markSaved(session.changes);
+        evictionQueue.offer(sessionId);
+        liveCount.incrementAndGet();
+        return session;
     }
 
     /**
      * Generates a unique identifier to be used as a session ID.
      * This method utilizes a UUID to ensure the uniqueness of the generated string.
+     * In cluster mode it draws until the ID is owned by this node, which takes about as many
+     * attempts as there are nodes.
      *
      * @return a unique session ID in the form of a string
      */
     private static String generateSessionId() {
-        // e.g., use UUID.randomUUID().toString()
-        return java.util.UUID.randomUUID().toString();
+        String sessionId;
+        do {
+            sessionId = java.util.UUID.randomUUID().toString();
+        } while (ClusterManager.acceptsNewSessions() && !ClusterManager.isLocal(sessionId));
+        return sessionId;
     }
 }
-
@@ -0,0 +1,452 @@
+package Assign32starter;
+
+import Assign32starter.entity.GameState;
+import Assign32starter.enums.GameType;
+import Assign32starter.enums.States;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * The SessionSnapshotter class persists live sessions so that a server restart does not end running games.
+ * <p>
+ * Every few seconds a background thread appends the sessions that changed since the previous round,
+ * plus tombstones for removed sessions, to {@code sessions.snap}
+ * (system property {@code session.snapshotFile}). The snapshot thread encodes a session only while it
+ * holds the session's idle mailbox, so a record is consistent without pausing other sessions, the map
+ * is never copied, and no request ever queues behind the snapshot; a session that is busy at that
+ * moment is left for the next round. A session only counts as saved once the file holding its record
+ * has been synced, so a round that fails is retried by the next one.
+ * When the log holds many more records than there are live sessions it is compacted into a fresh
+ * file and swapped in atomically. On startup {@link #restore()} replays the file and puts every
+ * session that is still within its TTL back into the {@link SessionManager}.
+ * <p>
+ * File format: a 4-byte magic, a 1-byte version, then records of
+ * {@code [tag:1][idMsb:8][idLsb:8]} followed, for upserts, by the encoded session. A file in any other
+ * format is ignored and overwritten.
+ */
+public class SessionSnapshotter {
+    private static final Logger logger = LoggerFactory.getLogger(SessionSnapshotter.class);
+    private static final String SNAPSHOT_FILE = System.getProperty("session.snapshotFile", "sessions.snap");
+    private static final int MAGIC = 0x53534E50; // "SSNP"
+    private static final byte FORMAT_VERSION = 2;
+    private static final byte TAG_UPSERT = 1;
+    private static final byte TAG_REMOVE = 2;
+    private static final long SNAPSHOT_PERIOD_SECONDS = Long.getLong("session.snapshotSeconds", 5);
+    private static final long ENCODE_TIMEOUT_SECONDS = 5;
+
+    // IDs of sessions removed since the last round, written out as tombstones.
+    private static final Queue<String> removals = new ConcurrentLinkedQueue<>();
+    private static volatile boolean enabled = false;
+    // Records currently in the file; drives compaction. Only touched by the snapshot thread.
+    private static long recordsInFile = 0;
+
+    /**
+     * Returns whether snapshots are being taken.
+     *
+     * @return true once {@link #start()} has been called
+     */
+    static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Remembers that a session was removed so the next round can write its tombstone.
+     *
+     * @param sessionId the ID of the removed session
+     */
+    static void recordRemoval(String sessionId) {
+        if (enabled) {
+            removals.offer(sessionId);
+        }
+    }
+
+    /**
+     * Loads the snapshot file, if present, and restores every unexpired session it describes.
+     * Later records for the same session override earlier ones and tombstones drop the session.
+     * A truncated final record, for example from a crash mid-write, is ignored.
+     *
+     * @return the number of sessions restored
+     */
+    public static int restore() {
+        File file = new File(SNAPSHOT_FILE);
+        if (!file.exists()) {
+            return 0;
+        }
+        long start = System.nanoTime();
+        Map<String, Restored> latest = new HashMap<>();
+        long records = 0;
+        boolean damaged = false;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+            if (in.readInt() != MAGIC || in.readByte() != FORMAT_VERSION) {
+                logger.warn("Ignoring {}: unknown format. It will be overwritten.", SNAPSHOT_FILE);
+                recordsInFile = Long.MAX_VALUE / 2;
+                return 0;
+            }
+            while (true) {
+                byte tag;
+                try {
+                    tag = in.readByte();
+                } catch (EOFException end) {
+                    break;
+                }
+                String id = new UUID(in.readLong(), in.readLong()).toString();
+                if (tag == TAG_UPSERT) {
+                    latest.put(id, decode(in));
+                } else if (tag == TAG_REMOVE) {
+                    latest.remove(id);
+                } else {
+                    logger.warn("Corrupt record in {}; keeping the {} records read so far.", SNAPSHOT_FILE, records);
+                    damaged = true;
+                    break;
+                }
+                records++;
+            }
+        } catch (EOFException e) {
+            logger.warn("{} ends in a partial record; it was ignored.", SNAPSHOT_FILE);
+            damaged = true;
+        } catch (IOException e) {
+            logger.error("Error reading session snapshot: ", e);
+            damaged = true;
+        }
+
+        int restored = 0;
+        for (Map.Entry<String, Restored> entry : latest.entrySet()) {
+            Restored r = entry.getValue();
+            if (SessionManager.restoreSession(entry.getKey(), r.state, r.createdAt, r.lastAccess, r.lastSeq)) {
+                restored++;
+            }
+        }
+        // Appending after a damaged tail would make later records unreadable, so rewrite the file first.
+        recordsInFile = damaged ? Long.MAX_VALUE / 2 : records;
+        logger.info("Restored {} of {} snapshotted sessions in {} ms.", restored, latest.size(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        return restored;
+    }
+
+    /**
+     * Starts the background snapshot thread. A final round is also run at JVM shutdown.
+     */
+    public static void start() {
+        enabled = true;
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "session-snapshot");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(SessionSnapshotter::snapshotSafely, SNAPSHOT_PERIOD_SECONDS, SNAPSHOT_PERIOD_SECONDS, TimeUnit.SECONDS);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            scheduler.shutdown();
+            try {
+                scheduler.awaitTermination(ENCODE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            snapshotSafely();
+        }, "session-snapshot-shutdown"));
+    }
+
+    static synchronized void snapshotSafely() {
+        try {
+            long sessions = SessionManager.getLiveSessionCount() + SessionManager.getParkedSessionCount();
+            if (recordsInFile > 2 * sessions + 1024) {
+                compact();
+            } else {
+                appendChanges();
+            }
+        } catch (Exception e) {
+            logger.error("Error writing session snapshot: ", e);
+        }
+    }
+
+    /**
+     * Appends upserts for dirty sessions and tombstones for removed ones, then fsyncs the file and
+     * marks the written sessions saved. Sessions that are busy stay dirty and are tried again next round.
+     */
+    private static void appendChanges() throws Exception {
+        List<Encoded> written = new ArrayList<>();
+        int busy = 0;
+        for (GameSession session : SessionManager.liveSessions()) {
+            if (session.isDirty()) {
+                Encoded encoded = tryEncode(session);
+                if (encoded == null) {
+                    busy++;
+                } else {
+                    written.add(encoded);
+                }
+            }
+        }
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(buffer);
+        int records = 0;
+        String removedId;
+        while ((removedId = removals.poll()) != null) {
+            writeHeader(out, TAG_REMOVE, removedId);
+            records++;
+        }
+        for (Encoded encoded : written) {
+            out.write(encoded.bytes);
+        }
+        records += written.size();
+        if (busy > 0) {
+            logger.debug("Left {} busy sessions for the next snapshot round.", busy);
+        }
+        if (records == 0) {
+            return;
+        }
+
+        File file = new File(SNAPSHOT_FILE);
+        boolean fresh = !file.exists();
+        try (FileOutputStream fos = new FileOutputStream(file, true)) {
+            if (fresh) {
+                DataOutputStream header = new DataOutputStream(fos);
+                header.writeInt(MAGIC);
+                header.writeByte(FORMAT_VERSION);
+            }
+            buffer.writeTo(fos);
+            fos.getFD().sync();
+        }
+        markSaved(written);
+        recordsInFile += records;
+        logger.debug("Appended {} session records to {}.", records, SNAPSHOT_FILE);
+    }
+
+    /**
+     * Rewrites the snapshot with one record per live session and atomically replaces the old file.
+     * Tombstones still pending are dropped: their sessions are no longer live, so they get no record.
+     * <p>
+     * Every live session must be in the new file, so the few that are busy are encoded on their
+     * mailboxes after all, under one deadline for all of them. If they miss it, the compaction is
+     * put off to the next round and the old file stays as it is.
+     */
+    private static void compact() throws Exception {
+        List<String> dropped = new ArrayList<>();
+        String removedId;
+        while ((removedId = removals.poll()) != null) {
+            dropped.add(removedId);
+        }
+        List<Encoded> written = new ArrayList<>();
+        List<CompletableFuture<Encoded>> busy = new ArrayList<>();
+        for (GameSession session : SessionManager.liveSessions()) {
+            Encoded encoded = tryEncode(session);
+            if (encoded == null) {
+                busy.add(encodeOnMailbox(session));
+            } else {
+                written.add(encoded);
+            }
+        }
+        // Parked sessions are not mutated while parked, so they are encoded directly.
+        SessionManager.forEachParked((id, entry) -> {
+            try {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream(96);
+                DataOutputStream out = new DataOutputStream(bytes);
+                writeHeader(out, TAG_UPSERT, id);
+                encode(out, entry.state, entry.createdAt, entry.lastAccess, entry.lastSeq);
+                written.add(new Encoded(bytes.toByteArray(), null, 0));
+            } catch (IOException e) {
+                logger.warn("Skipping parked session {}: {}", id, e.getMessage());
+            }
+        });
+        try {
+            CompletableFuture.allOf(busy.toArray(new CompletableFuture<?>[0])).get(ENCODE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (TimeoutException | ExecutionException e) {
+            logger.warn("Compaction of {} put off: {} busy sessions could not be encoded ({}).", SNAPSHOT_FILE, busy.size(), e.toString());
+            removals.addAll(dropped);
+            return;
+        }
+        for (CompletableFuture<Encoded> future : busy) {
+            written.add(future.join());
+        }
+        File target = new File(SNAPSHOT_FILE);
+        File temp = new File(SNAPSHOT_FILE + ".tmp");
+        try (FileOutputStream fos = new FileOutputStream(temp)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos, 1 << 16));
+            out.writeInt(MAGIC);
+            out.writeByte(FORMAT_VERSION);
+            for (Encoded encoded : written) {
+                out.write(encoded.bytes);
+            }
+            out.flush();
+            fos.getFD().sync();
+        } catch (IOException e) {
+            removals.addAll(dropped);
+            throw e;
+        }
+        Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        markSaved(written);
+        logger.info("Compacted {} from {} to {} records.", SNAPSHOT_FILE, recordsInFile, written.size());
+        recordsInFile = written.size();
+    }
+
+    /**
+     * Encodes the session as an upsert record if its mailbox is idle, so the bytes reflect a state
+     * between two requests rather than a half-applied one, together with the change count they cover.
+     *
+     * @return the record, or {@code null} if the session is busy
+     */
+    private static Encoded tryEncode(GameSession session) throws Exception {
+        return session.tryRead(() -> encodeClaimed(session));
+    }
+
+    /**
+     * Encodes the session on its own mailbox, queueing behind the request that is running.
+     */
+    private static CompletableFuture<Encoded> encodeOnMailbox(GameSession session) {
+        CompletableFuture<Encoded> result = new CompletableFuture<>();
+        session.submit(() -> {
+            try {
+                result.complete(encodeClaimed(session));
+            } catch (Throwable t) {
+                result.completeExceptionally(t);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Encodes a session whose mailbox the caller holds.
+     */
+    private static Encoded encodeClaimed(GameSession session) throws IOException {
+        // Reads do not count as changes, so this is the count the record covers.
+        long changes = session.changes;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(96);
+        DataOutputStream out = new DataOutputStream(bytes);
+        writeHeader(out, TAG_UPSERT, session.getId());
+        encode(out, session.getState(), session.getCreatedAt(), session.lastAccess, session.lastSeq);
+        return new Encoded(bytes.toByteArray(), session, changes);
+    }
+
+    private static void markSaved(List<Encoded> written) {
+        for (Encoded encoded : written) {
+            if (encoded.session != null) {
+                encoded.session.markSaved(encoded.changes);
+            }
+        }
+    }
+
+    private static void writeHeader(DataOutputStream out, byte tag, String sessionId) throws IOException {
+        UUID id = UUID.fromString(sessionId);
+        out.writeByte(tag);
+        out.writeLong(id.getMostSignificantBits());
+        out.writeLong(id.getLeastSignificantBits());
+    }
+
+    private static void encode(DataOutputStream out, GameState state, long createdAt, long lastAccess, long lastSeq) throws IOException {
+        out.writeLong(createdAt);
+        out.writeLong(lastAccess);
+        out.writeLong(lastSeq);
+        out.writeByte(state.getGameStage().ordinal());
+        out.writeByte(state.getGameType().ordinal());
+        out.writeByte(state.getImageVersion());
+        out.writeByte(state.getSkipsRemaining());
+        out.writeShort(state.getGameDuration());
+        out.writeInt(state.getCorrectGuesses());
+        out.writeLong(state.getGameStartTime());
+        writeNullable(out, state.getCurrentMovie());
+        writeNullable(out, state.getCurrentAnswer());
+        writeNullable(out, state.getPlayerName());
+    }
+
+    private static Restored decode(DataInputStream in) throws IOException {
+        Restored r = new Restored();
+        r.createdAt = in.readLong();
+        r.lastAccess = in.readLong();
+        r.lastSeq = in.readLong();
+        GameState state = new GameState();
+        state.setGameStage(States.values()[in.readUnsignedByte()]);
+        state.setGameType(GameType.values()[in.readUnsignedByte()]);
+        state.setImageVersion(in.readUnsignedByte());
+        state.setSkipsRemaining(in.readUnsignedByte());
+        state.setGameDuration(in.readUnsignedShort());
+        state.setCorrectGuesses(in.readInt());
+        state.setGameStartTime(in.readLong());
+        state.setCurrentMovie(readNullable(in));
+        state.setCurrentAnswer(readNullable(in));
+        state.setPlayerName(readNullable(in));
+        r.state = state;
+        return r;
+    }
+
+    /**
+     * Encodes one session in the snapshot record format, without the tag and ID header.
+     * Used to hand sessions over to another cluster node.
+     *
+     * @return the encoded session
+     */
+    static byte[] toBytes(GameState state, long createdAt, long lastAccess, long lastSeq) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(96);
+        encode(new DataOutputStream(bytes), state, createdAt, lastAccess, lastSeq);
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Decodes a session produced by {@link #toBytes(GameState, long, long, long)} and restores it into the
+     * {@link SessionManager} under the given ID.
+     *
+     * @return true if the session was restored
+     */
+    static boolean restoreFromBytes(String sessionId, byte[] record) throws IOException {
+        Restored r = decode(new DataInputStream(new ByteArrayInputStream(record)));
+        return SessionManager.restoreSession(sessionId, r.state, r.createdAt, r.lastAccess, r.lastSeq);
+    }
+
+    private static void writeNullable(DataOutputStream out, String s) throws IOException {
+        out.writeBoolean(s != null);
+        if (s != null) {
+            out.writeUTF(s);
+        }
+    }
+
+    private static String readNullable(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static final class Restored {
+        GameState state;
+        long createdAt;
+        long lastAccess;
+        long lastSeq;
+    }
+
+    /**
+     * An upsert record, the session it was encoded from ({@code null} for parked sessions) and the
+     * change count it covers.
+     */
+    private static final class Encoded {
+        final byte[] bytes;
+        final GameSession session;
+        final long changes;
+
+        Encoded(byte[] bytes, GameSession session, long changes) {
+            this.bytes = bytes;
+            this.session = session;
+            this.changes = changes;
+        }
+    }
+}
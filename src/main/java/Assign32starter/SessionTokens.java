@@ -0,0 +1,282 @@
+package Assign32starter;
+
+import Assign32starter.entity.GameState;
+import Assign32starter.enums.GameType;
+import Assign32starter.enums.States;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The SessionTokens class implements the optional stateless session mode ({@code -Dsession.mode=token}).
+ * <p>
+ * Instead of a key into the {@link SessionManager}, the sessionID is a token carrying the whole game state,
+ * signed with HMAC-SHA256 under a key shared by all servers ({@code session.tokenKey}). Every response
+ * carries the next token, so any server can handle any request and plain round-robin load balancing works.
+ * <p>
+ * Size is bounded: the payload packs the movie as an index and every field as a small primitive, the
+ * player name is capped at {@value #MAX_NAME_BYTES} UTF-8 bytes, and the MAC is truncated to
+ * {@value #MAC_BYTES} bytes, so a token never exceeds {@value #MAX_TOKEN_CHARS} characters.
+ * <p>
+ * Replay is bounded too. A token expires {@code session.tokenTtlSeconds} after it was issued, and each
+ * token carries a game id and a step number. A server accepts a step only if it is newer than any
+ * step it has seen for that game. The seen steps are kept in two rotating generations, so memory stays
+ * proportional to the games active within two TTLs. Without a shared store this protection is per
+ * server: a replay sent to a different server within the token lifetime is not detected.
+ */
+public class SessionTokens {
+    private static final Logger logger = LoggerFactory.getLogger(SessionTokens.class);
+    private static final byte FORMAT_VERSION = 1;
+    private static final int MAX_NAME_BYTES = 32;
+    private static final int MAC_BYTES = 16;
+    private static final int MAX_TOKEN_CHARS = 160;
+    private static final int NO_MOVIE = 0xFF;
+    private static final boolean ENABLED = "token".equalsIgnoreCase(System.getProperty("session.mode", ""));
+    private static final long TOKEN_TTL_MILLIS = TimeUnit.SECONDS.toMillis(Long.getLong("session.tokenTtlSeconds", 15 * 60));
+    private static final SecretKeySpec KEY = loadKey();
+    private static final ThreadLocal<Mac> MACS = ThreadLocal.withInitial(() -> {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(KEY);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 is not available", e);
+        }
+    });
+
+    // Highest step seen per game id, in two generations that rotate every token TTL.
+    private static volatile Map<Long, Integer> currentSteps = new ConcurrentHashMap<>();
+    private static volatile Map<Long, Integer> previousSteps = new ConcurrentHashMap<>();
+    private static volatile long generationStart = System.currentTimeMillis();
+
+    /**
+     * A verified token: the decoded game state plus the identifiers that drive replay protection.
+     */
+    public static final class Token {
+        public final GameState state;
+        final long gameId;
+        final int step;
+
+        Token(GameState state, long gameId, int step) {
+            this.state = state;
+            this.gameId = gameId;
+            this.step = step;
+        }
+    }
+
+    /**
+     * Returns whether the server runs in stateless token mode.
+     *
+     * @return true if session IDs are signed tokens
+     */
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    /**
+     * Issues the first token of a new game session.
+     *
+     * @param state the initial game state
+     * @return the signed token
+     */
+    public static String issueNew(GameState state) {
+        return issue(state, ThreadLocalRandom.current().nextLong(), 1);
+    }
+
+    /**
+     * Issues the token that follows the given one, carrying the updated state.
+     *
+     * @param previous the token the request was made with
+     * @return the signed token
+     */
+    public static String issueNext(Token previous) {
+        return issue(previous.state, previous.gameId, previous.step + 1);
+    }
+
+    /**
+     * Verifies a token's size, signature, age and freshness and decodes its state.
+     *
+     * @param token the token received as sessionID
+     * @return the verified token
+     * @throws IllegalArgumentException if the token is malformed, forged, expired or replayed
+     */
+    public static Token verify(String token) {
+        Token decoded = peek(token);
+        if (!markStep(decoded.gameId, decoded.step)) {
+            throw new IllegalArgumentException("Session token was already used.");
+        }
+        return decoded;
+    }
+
+    /**
+     * Verifies a token's size, signature and age and decodes its state, without spending it. For
+     * requests that only need to know whose token it is, such as joining a room, so the player's game
+     * connection can go on using the token.
+     *
+     * @param token the token received as sessionID
+     * @return the verified token
+     * @throws IllegalArgumentException if the token is malformed, forged or expired
+     */
+    public static Token peek(String token) {
+        if (token == null || token.length() > MAX_TOKEN_CHARS) {
+            throw new IllegalArgumentException("Invalid session token.");
+        }
+        byte[] raw;
+        try {
+            raw = Base64.getUrlDecoder().decode(token);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid session token.");
+        }
+        if (raw.length <= MAC_BYTES) {
+            throw new IllegalArgumentException("Invalid session token.");
+        }
+        byte[] payload = Arrays.copyOf(raw, raw.length - MAC_BYTES);
+        byte[] mac = Arrays.copyOfRange(raw, raw.length - MAC_BYTES, raw.length);
+        if (!MessageDigest.isEqual(mac, sign(payload))) {
+            throw new IllegalArgumentException("Invalid session token.");
+        }
+        Token decoded;
+        long issuedAt;
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload))) {
+            if (in.readByte() != FORMAT_VERSION) {
+                throw new IllegalArgumentException("Unsupported session token version.");
+            }
+            long gameId = in.readLong();
+            int step = in.readInt();
+            issuedAt = in.readLong();
+            GameState state = new GameState();
+            state.setGameStage(States.values()[in.readUnsignedByte()]);
+            state.setGameType(GameType.values()[in.readUnsignedByte()]);
+            int movieIndex = in.readUnsignedByte();
+            if (movieIndex != NO_MOVIE) {
+                Movie movie = SockServer.getMovieSelector().get(movieIndex);
+                state.setCurrentMovie(movie.getMovieName());
+                state.setCurrentAnswer(movie.getCorrectAnswer());
+            }
+            state.setImageVersion(in.readUnsignedByte());
+            state.setSkipsRemaining(in.readUnsignedByte());
+            state.setGameDuration(in.readUnsignedShort());
+            state.setCorrectGuesses(in.readUnsignedShort());
+            state.setGameStartTime(in.readLong());
+            state.setPlayerName(in.readUTF());
+            decoded = new Token(state, gameId, step);
+        } catch (IOException | RuntimeException e) {
+            throw new IllegalArgumentException("Invalid session token.");
+        }
+        if (System.currentTimeMillis() - issuedAt > TOKEN_TTL_MILLIS) {
+            throw new IllegalArgumentException("Session token expired. Please log in again.");
+        }
+        return decoded;
+    }
+
+    private static String issue(GameState state, long gameId, int step) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(96);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            int movieIndex = SockServer.getMovieSelector().indexOf(state.getCurrentMovie());
+            out.writeByte(FORMAT_VERSION);
+            out.writeLong(gameId);
+            out.writeInt(step);
+            out.writeLong(System.currentTimeMillis());
+            out.writeByte(state.getGameStage().ordinal());
+            out.writeByte(state.getGameType().ordinal());
+            out.writeByte(movieIndex < 0 ? NO_MOVIE : movieIndex);
+            out.writeByte(state.getImageVersion());
+            out.writeByte(state.getSkipsRemaining());
+            out.writeShort(state.getGameDuration());
+            out.writeShort(Math.min(state.getCorrectGuesses(), 0xFFFF));
+            out.writeLong(state.getGameStartTime());
+            out.writeUTF(truncate(state.getPlayerName()));
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        byte[] payload = bytes.toByteArray();
+        byte[] token = Arrays.copyOf(payload, payload.length + MAC_BYTES);
+        System.arraycopy(sign(payload), 0, token, payload.length, MAC_BYTES);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(token);
+    }
+
+    private static byte[] sign(byte[] payload) {
+        return Arrays.copyOf(MACS.get().doFinal(payload), MAC_BYTES);
+    }
+
+    /**
+     * Records the step for the game and reports whether it is newer than every step seen before.
+     */
+    private static boolean markStep(long gameId, int step) {
+        rotateIfDue();
+        Integer older = previousSteps.get(gameId);
+        if (older != null && older >= step) {
+            return false;
+        }
+        boolean[] fresh = new boolean[1];
+        currentSteps.compute(gameId, (id, seen) -> {
+            fresh[0] = seen == null || seen < step;
+            return fresh[0] ? Integer.valueOf(step) : seen;
+        });
+        return fresh[0];
+    }
+
+    private static void rotateIfDue() {
+        long now = System.currentTimeMillis();
+        if (now - generationStart > TOKEN_TTL_MILLIS) {
+            synchronized (SessionTokens.class) {
+                if (now - generationStart > TOKEN_TTL_MILLIS) {
+                    previousSteps = currentSteps;
+                    currentSteps = new ConcurrentHashMap<>();
+                    generationStart = now;
+                }
+            }
+        }
+    }
+
+    /**
+     * Truncates a player name to at most {@value #MAX_NAME_BYTES} UTF-8 bytes, without splitting a
+     * surrogate pair.
+     */
+    static String truncate(String name) {
+        if (name == null) {
+            return "";
+        }
+        // Every char takes at least one byte, so no more chars than bytes can fit; this bounds the loop.
+        String result = name.length() > MAX_NAME_BYTES ? name.substring(0, MAX_NAME_BYTES) : name;
+        while (result.getBytes(StandardCharsets.UTF_8).length > MAX_NAME_BYTES) {
+            result = result.substring(0, result.length() - 1);
+        }
+        if (!result.isEmpty() && Character.isHighSurrogate(result.charAt(result.length() - 1))) {
+            result = result.substring(0, result.length() - 1);
+        }
+        return result;
+    }
+
+    private static SecretKeySpec loadKey() {
+        String configured = System.getProperty("session.tokenKey", "");
+        byte[] key;
+        if (configured.isEmpty()) {
+            key = new byte[32];
+            new SecureRandom().nextBytes(key);
+            if (ENABLED) {
+                logger.warn("No session.tokenKey configured; using a random key, so tokens only work on this server.");
+            }
+        } else {
+            key = configured.getBytes(StandardCharsets.UTF_8);
+        }
+        return new SecretKeySpec(key, "HmacSHA256");
+    }
+}
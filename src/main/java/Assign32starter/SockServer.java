@@ -1,5 +1,6 @@
 package Assign32starter;
 
+import Assign32starter.enums.GameType;
 import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -13,7 +14,6 @@ import java.net.Socket;
 import java.util.Arrays;
 import java.util.Base64;
 import java.util.List;
-import java.util.Random;
 
 
 /**
@@ -30,6 +30,7 @@ public class SockServer {
             new Movie("BackToTheFuture", "Back to the Future"),
             new Movie("LordOfTheRings", "The Lord of the Rings")
     );
+    private static final MovieSelector movieSelector = new MovieSelector(movies);
     private static volatile boolean running = true;
 
     public static void stopServer() {
@@ -62,6 +63,13 @@ public class SockServer {
             }, stopAfterSeconds * 1000L);  // Convert seconds to milliseconds
         }
 
+        movieSelector.startBackgroundRebuild();
+        // Bring back the sessions that were live before the last shutdown, then keep snapshotting.
+        SessionSnapshotter.restore();
+        SessionSnapshotter.start();
+        // Join the cluster, if configured, and hand off restored sessions owned by other nodes.
+        ClusterManager.init(port);
+
         try (ServerSocket serverSocket = new ServerSocket(port)) {
             // Set a connection timeout if desired (e.g., 1000 seconds as before)
             serverSocket.setSoTimeout(1000000);
@@ -118,13 +126,23 @@ public class SockServer {
     }
 
     /**
-     * Selects and returns a random movie from the list of available movies.
+     * Selects a random movie for a game of the given length. Movies are drawn from a
+     * difficulty-weighted distribution maintained by the {@link MovieSelector}.
      *
+     * @param type the length of the game the movie is chosen for
      * @return a randomly chosen Movie object from the collection of movies
      */
-    public static Movie chooseRandomMovie() {
-        Random rand = new Random();
-        return movies.get(rand.nextInt(movies.size()));
+    public static Movie chooseRandomMovie(GameType type) {
+        return movieSelector.choose(type);
+    }
+
+    /**
+     * Returns the shared movie selector, used to record solve statistics.
+     *
+     * @return the server's MovieSelector
+     */
+    public static MovieSelector getMovieSelector() {
+        return movieSelector;
     }
 
 
@@ -0,0 +1,121 @@
+package Assign32starter;
+
+import Assign32starter.enums.LeaderboardWindow;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * The WindowedScores class keeps a rolling leaderboard over one {@link LeaderboardWindow}.
+ * <p>
+ * Scores land in the bucket covering the time they were made (for example one bucket per hour
+ * for the daily window), and every bucket keeps the best score per player within it. The window's
+ * ranking is a {@link RankedScores} holding, per player, the best score across the live buckets.
+ * Expiry drops whole buckets once they fall out of the window and rebuilds the ranking from the
+ * remaining ones, so no entry is ever scanned for its age, and memory only holds players who
+ * scored within the window.
+ */
+public class WindowedScores {
+    private final LeaderboardWindow window;
+    private final PlayerDictionary players;
+    private final ConcurrentSkipListMap<Long, RankedScores> buckets = new ConcurrentSkipListMap<>();
+    private volatile RankedScores ranking;
+
+    /**
+     * Constructs an empty rolling leaderboard.
+     *
+     * @param window  the window to cover; must have buckets
+     * @param players the dictionary that assigns player ids
+     */
+    public WindowedScores(LeaderboardWindow window, PlayerDictionary players) {
+        if (window.getBucketCount() <= 0) {
+            throw new IllegalArgumentException(window + " is not a rolling window.");
+        }
+        this.window = window;
+        this.players = players;
+        this.ranking = new RankedScores(players);
+    }
+
+    /**
+     * Records a score made at the given time, if that time is still inside the window.
+     *
+     * @param key   the player key
+     * @param score the score
+     * @param time  when the score was made, in milliseconds
+     * @return true if the window's ranking changed
+     */
+    public boolean offer(String key, double score, long time) {
+        int id = players.idFor(key);
+        return id >= 0 && offer(id, score, time);
+    }
+
+    /**
+     * Records a score made by a player id at the given time, if that time is still inside the window.
+     *
+     * @param id    the player id
+     * @param score the score
+     * @param time  when the score was made, in milliseconds
+     * @return true if the window's ranking changed
+     */
+    public boolean offer(int id, double score, long time) {
+        long start = bucketStart(time);
+        if (start <= bucketStart(System.currentTimeMillis()) - window.getBucketCount() * window.getBucketMillis()) {
+            return false; // Already outside the window.
+        }
+        buckets.computeIfAbsent(start, s -> new RankedScores(players)).offer(id, score);
+        return ranking.offer(id, score);
+    }
+
+    /**
+     * Returns the window's current ranking.
+     *
+     * @return the best score per player across the live buckets
+     */
+    public RankedScores ranking() {
+        return ranking;
+    }
+
+    /**
+     * Visits every live bucket with its start time, oldest first.
+     *
+     * @param visitor receives each bucket's start time and contents
+     */
+    public void forEachBucket(BucketVisitor visitor) {
+        for (Map.Entry<Long, RankedScores> bucket : buckets.entrySet()) {
+            visitor.visit(bucket.getKey(), bucket.getValue().snapshot());
+        }
+    }
+
+    /**
+     * Drops every bucket that has left the window and rebuilds the ranking if any was dropped.
+     *
+     * @param now the current time in milliseconds
+     * @return the number of buckets dropped
+     */
+    public int expire(long now) {
+        long oldestLive = bucketStart(now) - (window.getBucketCount() - 1) * window.getBucketMillis();
+        Map<Long, RankedScores> expired = buckets.headMap(oldestLive);
+        int dropped = expired.size();
+        if (dropped == 0) {
+            return 0;
+        }
+        expired.clear();
+        RankedScores rebuilt = new RankedScores(players);
+        for (RankedScores bucket : buckets.values()) {
+            bucket.snapshot().forEach(rebuilt::offer);
+        }
+        ranking = rebuilt;
+        return dropped;
+    }
+
+    private long bucketStart(long time) {
+        return time - Math.floorMod(time, window.getBucketMillis());
+    }
+
+    /**
+     * Visitor for {@link #forEachBucket(BucketVisitor)}.
+     */
+    public interface BucketVisitor {
+        void visit(long bucketStart, RankedScores.Snapshot entries);
+    }
+}
@@ -1,5 +1,6 @@
 package Assign32starter.entity;
 
+import Assign32starter.enums.GameType;
 import Assign32starter.enums.States;
 
 import java.util.Objects;
@@ -19,6 +20,7 @@ public class GameState {
     int correctGuesses = 0; // number of correct guesses
     private String playerName = ""; // name of the player
     private int gameDuration = 30; // duration of the game in seconds
+    private GameType gameType = GameType.SHORT; // length category chosen at gameStart
 
     /**
      * Default constructor for the GameState class.
@@ -55,6 +57,24 @@ public class GameState {
         this.gameDuration = gameDuration;
     }
 
+    /**
+     * Retrieves the length category of the game.
+     *
+     * @return the {@link GameType} chosen when the game was started
+     */
+    public GameType getGameType() {
+        return gameType;
+    }
+
+    /**
+     * Sets the length category of the game.
+     *
+     * @param gameType the {@link GameType} chosen when the game was started
+     */
+    public void setGameType(GameType gameType) {
+        this.gameType = gameType;
+    }
+
     /**
      * Retrieves the name of the player in the current game state.
      *
@@ -307,6 +327,7 @@ public class GameState {
         this.correctGuesses = other.correctGuesses;
         this.playerName = other.playerName;
         this.gameDuration = other.gameDuration;
+        this.gameType = other.gameType;
     }
 
 }
@@ -0,0 +1,54 @@
+package Assign32starter.enums;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Represents the time windows a leaderboard can be viewed over.
+ * Rolling windows are kept as a ring of buckets; a score counts while its bucket is inside the window.
+ * The windows are:
+ * - DAILY: the last 24 hours, in 24 one-hour buckets.
+ * - WEEKLY: the last 7 days, in 7 one-day buckets.
+ * - ALL_TIME: every score ever recorded, without buckets.
+ */
+public enum LeaderboardWindow {
+    DAILY("daily", TimeUnit.HOURS.toMillis(1), 24),
+    WEEKLY("weekly", TimeUnit.DAYS.toMillis(1), 7),
+    ALL_TIME("allTime", 0, 0);
+
+    private final String value;
+    private final long bucketMillis;
+    private final int bucketCount;
+
+    LeaderboardWindow(String value, long bucketMillis, int bucketCount) {
+        this.value = value;
+        this.bucketMillis = bucketMillis;
+        this.bucketCount = bucketCount;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    public long getBucketMillis() {
+        return bucketMillis;
+    }
+
+    public int getBucketCount() {
+        return bucketCount;
+    }
+
+    /**
+     * Looks up a window by its protocol name, defaulting to ALL_TIME.
+     *
+     * @param value the protocol name ("daily", "weekly" or "allTime")
+     * @return the matching window
+     */
+    public static LeaderboardWindow fromValue(String value) {
+        for (LeaderboardWindow window : values()) {
+            if (window.value.equalsIgnoreCase(value)) {
+                return window;
+            }
+        }
+        return ALL_TIME;
+    }
+}
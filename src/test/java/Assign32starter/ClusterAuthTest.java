@@ -0,0 +1,67 @@
+package Assign32starter;
+
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Tests for {@link ClusterAuth}. The tests run with {@code cluster.secret=test-secret}.
+ */
+class ClusterAuthTest {
+    private static final long NOW = 1_760_000_000_000L;
+
+    @Test
+    void sealedCommandsOpen() {
+        JSONObject opened = ClusterAuth.open(ClusterAuth.seal(join("localhost:9003"), NOW), NOW + 1000);
+        assertNotNull(opened);
+        assertEquals("join", opened.getString("command"));
+        assertEquals("localhost:9003", opened.getString("node"));
+        assertEquals("cluster", opened.getString("type"));
+    }
+
+    @Test
+    void unsignedCommandsAreRefused() {
+        JSONObject plain = join("localhost:9003");
+        plain.put("type", "cluster");
+        assertNull(ClusterAuth.open(plain, NOW));
+    }
+
+    @Test
+    void alteredCommandsAreRefused() {
+        JSONObject request = ClusterAuth.seal(join("localhost:9003"), NOW);
+        request.put("signed", request.getString("signed").replace("9003", "6666"));
+        assertNull(ClusterAuth.open(request, NOW));
+    }
+
+    @Test
+    void macsFromAnotherCommandAreRefused() {
+        JSONObject request = ClusterAuth.seal(join("localhost:9003"), NOW);
+        request.put("mac", ClusterAuth.seal(join("localhost:9004"), NOW).getString("mac"));
+        assertNull(ClusterAuth.open(request, NOW));
+    }
+
+    @Test
+    void garbageIsRefused() {
+        JSONObject request = ClusterAuth.seal(join("localhost:9003"), NOW);
+        request.put("mac", "not base64!");
+        assertNull(ClusterAuth.open(request, NOW));
+    }
+
+    @Test
+    void oldOrFutureCommandsAreRefused() {
+        JSONObject request = ClusterAuth.seal(join("localhost:9003"), NOW);
+        assertNotNull(ClusterAuth.open(request, NOW + 29_000));
+        assertNull(ClusterAuth.open(request, NOW + 31_000));
+        assertNull(ClusterAuth.open(request, NOW - 31_000));
+    }
+
+    private static JSONObject join(String node) {
+        JSONObject command = new JSONObject();
+        command.put("command", "join");
+        command.put("node", node);
+        return command;
+    }
+}
@@ -0,0 +1,96 @@
+package Assign32starter;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for {@link ConsistentHashRing}: balance, stability and how little moves on a membership change.
+ */
+class ConsistentHashRingTest {
+    private static final List<String> NODES = Arrays.asList("localhost:9000", "localhost:9001", "localhost:9002");
+    private static final List<String> SESSIONS = new ArrayList<>();
+
+    static {
+        for (int i = 0; i < 30_000; i++) {
+            SESSIONS.add(UUID.randomUUID().toString());
+        }
+    }
+
+    @Test
+    void sessionsSpreadEvenlyOverNodes() {
+        ConsistentHashRing ring = new ConsistentHashRing(NODES);
+        Map<String, Integer> counts = new HashMap<>();
+        for (String session : SESSIONS) {
+            counts.merge(ring.ownerOf(session), 1, Integer::sum);
+        }
+        assertEquals(NODES.size(), counts.size());
+        for (int count : counts.values()) {
+            // 128 points per node keep every share within a fifth of the mean.
+            assertEquals(SESSIONS.size() / 3.0, count, SESSIONS.size() / 15.0);
+        }
+    }
+
+    @Test
+    void ownershipDoesNotDependOnNodeOrder() {
+        List<String> reversed = new ArrayList<>(NODES);
+        Collections.reverse(reversed);
+        ConsistentHashRing ring = new ConsistentHashRing(NODES);
+        ConsistentHashRing other = new ConsistentHashRing(reversed);
+        for (String session : SESSIONS.subList(0, 1000)) {
+            assertEquals(ring.ownerOf(session), other.ownerOf(session));
+        }
+    }
+
+    @Test
+    void joiningOnlyMovesSessionsToTheNewNode() {
+        ConsistentHashRing before = new ConsistentHashRing(NODES);
+        ConsistentHashRing after = before.with("localhost:9003");
+        int moved = 0;
+        for (String session : SESSIONS) {
+            String owner = after.ownerOf(session);
+            if (!owner.equals(before.ownerOf(session))) {
+                assertEquals("localhost:9003", owner);
+                moved++;
+            }
+        }
+        // About a quarter of the sessions move, and nothing else.
+        assertEquals(SESSIONS.size() / 4.0, moved, SESSIONS.size() / 20.0);
+    }
+
+    @Test
+    void leavingOnlyMovesTheLeaversSessions() {
+        ConsistentHashRing before = new ConsistentHashRing(NODES);
+        ConsistentHashRing after = before.without("localhost:9001");
+        assertEquals(Arrays.asList("localhost:9000", "localhost:9002"), after.getNodes());
+        for (String session : SESSIONS) {
+            String owner = before.ownerOf(session);
+            if (!owner.equals("localhost:9001")) {
+                assertEquals(owner, after.ownerOf(session));
+            }
+        }
+    }
+
+    @Test
+    void addingAKnownNodeChangesNothing() {
+        ConsistentHashRing ring = new ConsistentHashRing(NODES);
+        assertEquals(NODES, ring.with("localhost:9000").getNodes());
+    }
+
+    @Test
+    void anEmptyRingOwnsNothing() {
+        ConsistentHashRing ring = new ConsistentHashRing(Collections.emptyList());
+        assertNull(ring.ownerOf(SESSIONS.get(0)));
+        assertTrue(ring.getNodes().isEmpty());
+    }
+}
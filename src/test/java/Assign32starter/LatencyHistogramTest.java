@@ -0,0 +1,80 @@
+package Assign32starter;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for {@link LatencyHistogram}: exact small values, the 1/64 bound on bucket width, percentiles
+ * against a sorted sample, and clamping.
+ */
+class LatencyHistogramTest {
+    private static final long MAX_VALUE = (1L << 36) - 1;
+
+    @Test
+    void anEmptyHistogramReportsZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMax());
+        assertEquals(0, histogram.getValueAtPercentile(99));
+    }
+
+    @Test
+    void smallValuesAreCountedExactly() {
+        for (long value = 0; value < 128; value++) {
+            LatencyHistogram histogram = new LatencyHistogram();
+            histogram.record(value);
+            histogram.record(MAX_VALUE);
+            assertEquals(value, histogram.getValueAtPercentile(50));
+        }
+    }
+
+    @Test
+    void bucketsAreNeverWiderThanAFraction() {
+        Random random = new Random(11);
+        for (int i = 0; i < 20_000; i++) {
+            // Spread over every magnitude, not just the largest.
+            long value = 128 + (random.nextLong() >>> (28 + random.nextInt(36))) % (MAX_VALUE - 128);
+            LatencyHistogram histogram = new LatencyHistogram();
+            histogram.record(value);
+            histogram.record(MAX_VALUE);
+            long reported = histogram.getValueAtPercentile(50);
+            assertTrue(reported >= value && reported <= value + value / 64, value + " reported as " + reported);
+        }
+    }
+
+    @Test
+    void percentilesMatchASortedSample() {
+        Random random = new Random(3);
+        long[] sample = new long[10_000];
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < sample.length; i++) {
+            sample[i] = (long) Math.exp(random.nextGaussian() * 2 + 8);
+            histogram.record(sample[i]);
+        }
+        Arrays.sort(sample);
+        assertEquals(sample.length, histogram.getCount());
+        assertEquals(sample[sample.length - 1], histogram.getMax());
+        for (double percentile : new double[]{1, 50, 90, 99, 99.9}) {
+            long exact = sample[(int) Math.ceil(percentile / 100 * sample.length) - 1];
+            long reported = histogram.getValueAtPercentile(percentile);
+            assertTrue(reported >= exact && reported <= exact + exact / 64, percentile + ": " + exact + " reported as " + reported);
+        }
+        assertEquals(histogram.getMax(), histogram.getValueAtPercentile(100));
+    }
+
+    @Test
+    void outOfRangeValuesAreClamped() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        histogram.record(Long.MAX_VALUE);
+        assertEquals(2, histogram.getCount());
+        assertEquals(MAX_VALUE, histogram.getMax());
+        assertEquals(0, histogram.getValueAtPercentile(50));
+        assertEquals(MAX_VALUE, histogram.getValueAtPercentile(100));
+    }
+}
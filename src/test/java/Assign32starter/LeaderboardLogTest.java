@@ -0,0 +1,142 @@
+package Assign32starter;
+
+import Assign32starter.enums.LeaderboardWindow;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for {@link LeaderboardLog}: what recovery replays, how a torn or corrupt tail is cut off,
+ * and what compaction leaves behind.
+ */
+class LeaderboardLogTest {
+    // [time:8][score:8][length:2]["ann":3][crc32:4]
+    private static final int ANN_RECORD_BYTES = 25;
+
+    @TempDir
+    File dir;
+
+    @Test
+    void recoveryReplaysEveryRecord() throws IOException {
+        long now = System.currentTimeMillis();
+        LeaderboardLog log = open(new ScoreBoard(new PlayerDictionary(16, Integer.MAX_VALUE)));
+        log.recover();
+        log.write(List.of(new LeaderboardLog.Record("ann", 10, now), new LeaderboardLog.Record("bob", 7, now)));
+        log.write(List.of(new LeaderboardLog.Record("ann", 12, now)));
+        log.close();
+
+        ScoreBoard board = new ScoreBoard(new PlayerDictionary(16, Integer.MAX_VALUE));
+        assertEquals(3, open(board).recover());
+        assertEquals(List.of(Map.entry("ann", 12.0), Map.entry("bob", 7.0)), top(board, LeaderboardWindow.ALL_TIME));
+        assertEquals(List.of(Map.entry("ann", 12.0), Map.entry("bob", 7.0)), top(board, LeaderboardWindow.DAILY));
+    }
+
+    @Test
+    void aCorruptRecordEndsTheLog() throws IOException {
+        LeaderboardLog log = open(new ScoreBoard(new PlayerDictionary(16, Integer.MAX_VALUE)));
+        log.recover();
+        log.write(List.of(new LeaderboardLog.Record("bob", 7, 0), new LeaderboardLog.Record("ann", 10, 0)));
+        log.close();
+        // Flip a bit of the last record's score; its checksum no longer matches.
+        File logFile = new File(dir, "leaderboard.log");
+        try (RandomAccessFile file = new RandomAccessFile(logFile, "rw")) {
+            long scoreAt = file.length() - ANN_RECORD_BYTES + Long.BYTES;
+            file.seek(scoreAt);
+            int b = file.read();
+            file.seek(scoreAt);
+            file.write(b ^ 0x01);
+        }
+
+        ScoreBoard board = new ScoreBoard(new PlayerDictionary(16, Integer.MAX_VALUE));
+        LeaderboardLog recovered = open(board);
+        assertEquals(1, recovered.recover());
+        assertEquals(List.of(Map.entry("bob", 7.0)), top(board, LeaderboardWindow.ALL_TIME));
+        // The bad record was cut off, so what is appended next is read back.
+        recovered.write(List.of(new LeaderboardLog.Record("cat", 3, 0)));
+        recovered.close();
+
+        ScoreBoard again = new ScoreBoard(new PlayerDictionary(16, Integer.MAX_VALUE));
+        assertEquals(2, open(again).recover());
+        assertEquals(List.of(Map.entry("bob", 7.0), Map.entry("cat", 3.0)), top(again, LeaderboardWindow.ALL_TIME));
+    }
+
+    @Test
+    void aTornTailIsCutOff() throws IOException {
+        LeaderboardLog log = open(new ScoreBoard(new PlayerDictionary(16, Integer.MAX_VALUE)));
+        log.recover();
+        log.write(List.of(new LeaderboardLog.Record("bob", 7, 0), new LeaderboardLog.Record("ann", 10, 0)));
+        log.close();
+        File logFile = new File(dir, "leaderboard.log");
+        long fullLength = logFile.length();
+        try (RandomAccessFile file = new RandomAccessFile(logFile, "rw")) {
+            file.setLength(fullLength - 3);
+        }
+
+        ScoreBoard board = new ScoreBoard(new PlayerDictionary(16, Integer.MAX_VALUE));
+        LeaderboardLog recovered = open(board);
+        assertEquals(1, recovered.recover());
+        recovered.close();
+        assertEquals(fullLength - ANN_RECORD_BYTES, logFile.length());
+        assertEquals(List.of(Map.entry("bob", 7.0)), top(board, LeaderboardWindow.ALL_TIME));
+    }
+
+    @Test
+    void anUnknownFormatIsSetAsideAndTheSnapshotStillLoads() throws IOException {
+        Files.write(new File(dir, "leaderboard.json").toPath(),
+                "{\"leaderboard\":[{\"playerKey\":\"ann\",\"score\":5}]}".getBytes(StandardCharsets.UTF_8));
+        File logFile = new File(dir, "leaderboard.log");
+        Files.write(logFile.toPath(), "not a leaderboard log".getBytes(StandardCharsets.UTF_8));
+
+        ScoreBoard board = new ScoreBoard(new PlayerDictionary(16, Integer.MAX_VALUE));
+        LeaderboardLog log = open(board);
+        assertEquals(0, log.recover());
+        log.close();
+        assertTrue(new File(dir, "leaderboard.log.corrupt").exists());
+        assertEquals(5, logFile.length());
+        assertEquals(List.of(Map.entry("ann", 5.0)), top(board, LeaderboardWindow.ALL_TIME));
+        // Snapshot entries are all-time only.
+        assertTrue(top(board, LeaderboardWindow.DAILY).isEmpty());
+    }
+
+    @Test
+    void compactionMovesTheLogIntoTheSnapshot() throws IOException {
+        long now = System.currentTimeMillis();
+        ScoreBoard board = new ScoreBoard(new PlayerDictionary(16, Integer.MAX_VALUE));
+        LeaderboardLog log = open(board);
+        log.recover();
+        // Compaction is due once the log holds more than 2 * players + 1024 records.
+        for (int i = 0; i < 1100; i++) {
+            LeaderboardLog.Record record = new LeaderboardLog.Record("ann", i, i < 1000 ? 0 : now);
+            board.offer(record.key, record.score, record.time);
+            log.write(List.of(record));
+        }
+        log.compactIfDue();
+        log.close();
+        assertEquals(5, new File(dir, "leaderboard.log").length());
+
+        ScoreBoard recovered = new ScoreBoard(new PlayerDictionary(16, Integer.MAX_VALUE));
+        assertEquals(0, open(recovered).recover());
+        assertEquals(List.of(Map.entry("ann", 1099.0)), top(recovered, LeaderboardWindow.ALL_TIME));
+        assertEquals(List.of(Map.entry("ann", 1099.0)), top(recovered, LeaderboardWindow.WEEKLY));
+        assertFalse(new File(dir, "leaderboard.json.tmp").exists());
+    }
+
+    private LeaderboardLog open(ScoreBoard board) {
+        return new LeaderboardLog(board, new File(dir, "leaderboard.json").getPath(), new File(dir, "leaderboard.log").getPath());
+    }
+
+    private static List<Map.Entry<String, Double>> top(ScoreBoard board, LeaderboardWindow window) {
+        return board.ranking(window).snapshot().top(10);
+    }
+}
@@ -0,0 +1,119 @@
+package Assign32starter;
+
+import Assign32starter.enums.LeaderboardWindow;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * Tests for how leaderboard records merge ({@link LeaderboardLog.Record#slot()} and
+ * {@link LeaderboardLog.Record#best}), the way the replicator queues deltas and the aggregator
+ * batches them: records only merge within a slot, the merge is a max-register, and boards that
+ * receive the same records in any order, repeated or pre-merged, converge in every window.
+ */
+class LeaderboardMergeTest {
+    private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+
+    @Test
+    void recordsFromDifferentHoursHaveDifferentSlots() {
+        long now = System.currentTimeMillis();
+        long thisHour = now - now % HOUR;
+        assertEquals(record("ann", 1, thisHour).slot(), record("ann", 2, thisHour + HOUR - 1).slot());
+        assertNotEquals(record("ann", 1, thisHour).slot(), record("ann", 1, thisHour - 1).slot());
+        assertNotEquals(record("ann", 1, thisHour).slot(), record("bob", 1, thisHour).slot());
+        // All-time entries travel with time 0 and never merge with timed scores.
+        assertNotEquals(record("ann", 1, 0).slot(), record("ann", 1, now).slot());
+    }
+
+    @Test
+    void bestIsAMaxRegister() {
+        LeaderboardLog.Record low = record("ann", 5, 100);
+        LeaderboardLog.Record high = record("ann", 9, 50);
+        LeaderboardLog.Record tieLater = record("ann", 9, 80);
+        assertSame(high, LeaderboardLog.Record.best(low, high));
+        assertSame(high, LeaderboardLog.Record.best(high, low));
+        assertSame(high, LeaderboardLog.Record.best(high, high));
+        // A tie keeps the later time, whichever side it is on.
+        assertSame(tieLater, LeaderboardLog.Record.best(high, tieLater));
+        assertSame(tieLater, LeaderboardLog.Record.best(tieLater, high));
+        assertSame(tieLater, LeaderboardLog.Record.best(LeaderboardLog.Record.best(low, high), tieLater));
+        assertSame(tieLater, LeaderboardLog.Record.best(low, LeaderboardLog.Record.best(high, tieLater)));
+    }
+
+    @Test
+    void anOlderHighScoreDoesNotHideANewerDailyScore() {
+        long now = System.currentTimeMillis();
+        // What a full sync sends: the all-time best, then a pending delta from today.
+        List<LeaderboardLog.Record> sent = List.of(record("ann", 50, 0), record("ann", 20, now));
+        ScoreBoard board = new ScoreBoard(new PlayerDictionary(16, Integer.MAX_VALUE));
+        for (LeaderboardLog.Record record : coalesce(sent).values()) {
+            board.offer(record.key, record.score, record.time);
+        }
+        assertEquals(50, board.ranking(LeaderboardWindow.ALL_TIME).getScore("ann"));
+        assertEquals(20, board.ranking(LeaderboardWindow.DAILY).getScore("ann"));
+        assertEquals(20, board.ranking(LeaderboardWindow.WEEKLY).getScore("ann"));
+    }
+
+    @Test
+    void boardsConvergeWhateverTheDeliveryOrder() {
+        long now = System.currentTimeMillis();
+        Random random = new Random(7);
+        List<LeaderboardLog.Record> records = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            long time = random.nextInt(10) == 0 ? 0 : now - (long) (random.nextDouble() * 10 * 24 * HOUR);
+            records.add(record("player-" + random.nextInt(200), random.nextInt(1000), time));
+        }
+        ScoreBoard reference = boardOf(records);
+
+        for (int round = 0; round < 5; round++) {
+            List<LeaderboardLog.Record> delivered = new ArrayList<>(records);
+            // Deltas can repeat, and a relay may merge several of them before passing them on.
+            delivered.addAll(records.subList(0, random.nextInt(records.size())));
+            Collections.shuffle(delivered, random);
+            int split = random.nextInt(delivered.size());
+            List<LeaderboardLog.Record> batched = new ArrayList<>(coalesce(delivered.subList(0, split)).values());
+            batched.addAll(delivered.subList(split, delivered.size()));
+            Collections.shuffle(batched, random);
+
+            ScoreBoard replica = boardOf(new ArrayList<>(coalesce(batched).values()));
+            for (LeaderboardWindow window : LeaderboardWindow.values()) {
+                assertEquals(ranking(reference, window), ranking(replica, window), window.getValue());
+            }
+        }
+    }
+
+    private static Map<LeaderboardLog.Slot, LeaderboardLog.Record> coalesce(List<LeaderboardLog.Record> records) {
+        Map<LeaderboardLog.Slot, LeaderboardLog.Record> merged = new HashMap<>();
+        for (LeaderboardLog.Record record : records) {
+            merged.merge(record.slot(), record, LeaderboardLog.Record::best);
+        }
+        return merged;
+    }
+
+    private static ScoreBoard boardOf(List<LeaderboardLog.Record> records) {
+        ScoreBoard board = new ScoreBoard(new PlayerDictionary(256, Integer.MAX_VALUE));
+        for (LeaderboardLog.Record record : records) {
+            board.offer(record.key, record.score, record.time);
+        }
+        return board;
+    }
+
+    private static List<Map.Entry<String, Double>> ranking(ScoreBoard board, LeaderboardWindow window) {
+        RankedScores.Snapshot snapshot = board.ranking(window).snapshot();
+        return snapshot.top(snapshot.size());
+    }
+
+    private static LeaderboardLog.Record record(String key, double score, long time) {
+        return new LeaderboardLog.Record(key, score, time);
+    }
+}
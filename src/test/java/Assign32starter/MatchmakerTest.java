@@ -0,0 +1,90 @@
+package Assign32starter;
+
+import Assign32starter.enums.GameType;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for how a {@link Matchmaker} pool groups waiting players, with times chosen by the test.
+ * The default {@code matchmaking.widenMillis} (2000) and {@code matchmaking.targetWaitMillis} (10000) apply.
+ */
+class MatchmakerTest {
+    private static final long T0 = 1_760_000_000_000L;
+
+    @Test
+    void playersOfOneBandAreGroupedInArrivalOrder() {
+        Matchmaker.Pool pool = new Matchmaker.Pool(GameType.SHORT, 2);
+        Matchmaker.Ticket a = ticket(pool, 3, T0);
+        Matchmaker.Ticket b = ticket(pool, 3, T0 + 1);
+        Matchmaker.Ticket c = ticket(pool, 3, T0 + 2);
+        Matchmaker.Ticket d = ticket(pool, 3, T0 + 3);
+        Matchmaker.Ticket e = ticket(pool, 3, T0 + 4);
+
+        assertEquals(List.of(List.of(a, b), List.of(c, d)), pool.match(T0 + 10));
+        // The band's queue is kept, so later players still meet the one left waiting.
+        Matchmaker.Ticket f = ticket(pool, 3, T0 + 20);
+        assertEquals(List.of(List.of(e, f)), pool.match(T0 + 30));
+    }
+
+    @Test
+    void cancelledPlayersAreSkipped() {
+        Matchmaker.Pool pool = new Matchmaker.Pool(GameType.SHORT, 3);
+        Matchmaker.Ticket a = ticket(pool, 1, T0);
+        Matchmaker.Ticket b = ticket(pool, 1, T0 + 1);
+        Matchmaker.Ticket c = ticket(pool, 1, T0 + 2);
+        Matchmaker.Ticket d = ticket(pool, 1, T0 + 3);
+        b.cancel();
+
+        assertEquals(List.of(List.of(a, c, d)), pool.match(T0 + 10));
+        assertTrue(pool.match(T0 + 20).isEmpty());
+    }
+
+    @Test
+    void differentBandsWaitUntilTheSearchWidens() {
+        Matchmaker.Pool pool = new Matchmaker.Pool(GameType.SHORT, 2);
+        Matchmaker.Ticket a = ticket(pool, 5, T0);
+        Matchmaker.Ticket b = ticket(pool, 6, T0 + 100);
+
+        assertTrue(pool.match(T0 + 1999).isEmpty());
+        assertEquals(List.of(List.of(a, b)), pool.match(T0 + 2000));
+    }
+
+    @Test
+    void theOldestPlayerIsMatchedWithTheNearestBand() {
+        Matchmaker.Pool pool = new Matchmaker.Pool(GameType.SHORT, 2);
+        Matchmaker.Ticket low = ticket(pool, 1, T0 + 500);
+        Matchmaker.Ticket oldest = ticket(pool, 5, T0);
+        Matchmaker.Ticket near = ticket(pool, 7, T0 + 900);
+
+        // Past the target wait every band is in reach; band 7 is nearer to band 5 than band 1.
+        assertEquals(List.of(List.of(oldest, near)), pool.match(T0 + 10_000));
+        Matchmaker.Ticket next = ticket(pool, 1, T0 + 10_100);
+        assertEquals(List.of(List.of(low, next)), pool.match(T0 + 10_200));
+    }
+
+    @Test
+    void largerGroupsFillOutwardFromTheOldestPlayer() {
+        Matchmaker.Pool pool = new Matchmaker.Pool(GameType.SHORT, 3);
+        Matchmaker.Ticket far = ticket(pool, 9, T0 + 100);
+        Matchmaker.Ticket oldest = ticket(pool, 5, T0);
+        Matchmaker.Ticket above = ticket(pool, 6, T0 + 300);
+        Matchmaker.Ticket below = ticket(pool, 4, T0 + 400);
+
+        // One band of reach after 2 seconds: bands 4 and 6 are equally near, and the lower comes first.
+        assertEquals(List.of(List.of(oldest, below, above)), pool.match(T0 + 2000));
+        assertTrue(pool.match(T0 + 2100).isEmpty());
+        Matchmaker.Ticket other = ticket(pool, 9, T0 + 2200);
+        Matchmaker.Ticket third = ticket(pool, 9, T0 + 2300);
+        assertEquals(List.of(List.of(far, other, third)), pool.match(T0 + 2400));
+    }
+
+    private static Matchmaker.Ticket ticket(Matchmaker.Pool pool, int band, long enqueuedAt) {
+        Matchmaker.Ticket ticket = new Matchmaker.Ticket(GameType.SHORT, band, "p" + enqueuedAt, band, null, null, enqueuedAt);
+        pool.add(ticket);
+        return ticket;
+    }
+}
@@ -0,0 +1,112 @@
+package Assign32starter;
+
+import Assign32starter.enums.GameType;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for {@link MovieSelector} and its alias table.
+ */
+class MovieSelectorTest {
+    private static final int DRAWS = 200_000;
+
+    private static final List<Movie> MOVIES = Arrays.asList(
+            new Movie("Easy", "Easy"),
+            new Movie("Middle", "Middle"),
+            new Movie("Hard", "Hard"));
+
+    @Test
+    void aliasTableSamplesInProportionToWeights() {
+        double[] weights = {1, 2, 3, 4};
+        MovieSelector.AliasTable table = new MovieSelector.AliasTable(weights);
+        int[] counts = new int[weights.length];
+        for (int i = 0; i < DRAWS; i++) {
+            counts[table.sample(ThreadLocalRandom.current())]++;
+        }
+        for (int i = 0; i < weights.length; i++) {
+            double expected = weights[i] / 10;
+            assertEquals(expected, (double) counts[i] / DRAWS, 0.01, "share of column " + i);
+        }
+    }
+
+    @Test
+    void aliasTableWithOneColumnAlwaysReturnsIt() {
+        MovieSelector.AliasTable table = new MovieSelector.AliasTable(new double[]{0.3});
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(0, table.sample(ThreadLocalRandom.current()));
+        }
+    }
+
+    @Test
+    void aliasTableNeverDrawsAZeroWeight() {
+        MovieSelector.AliasTable table = new MovieSelector.AliasTable(new double[]{0, 5, 0, 5});
+        for (int i = 0; i < DRAWS; i++) {
+            int column = table.sample(ThreadLocalRandom.current());
+            assertTrue(column == 1 || column == 3, "drew column " + column);
+        }
+    }
+
+    @Test
+    void withoutStatisticsEveryMovieIsEquallyLikely() {
+        MovieSelector selector = new MovieSelector(MOVIES);
+        int[] counts = draw(selector, GameType.SHORT);
+        for (int count : counts) {
+            assertEquals(1.0 / 3, (double) count / DRAWS, 0.01);
+        }
+    }
+
+    @Test
+    void shortGamesFavourEasyMoviesAndLongGamesHardOnes() {
+        MovieSelector selector = new MovieSelector(MOVIES);
+        for (int i = 0; i < 100; i++) {
+            selector.recordSolved("Easy", 1);
+            selector.recordSolved("Middle", 3);
+            selector.recordSkipped("Hard");
+        }
+        selector.rebuild();
+
+        int[] shortGames = draw(selector, GameType.SHORT);
+        assertTrue(shortGames[0] > shortGames[1] && shortGames[1] > shortGames[2]);
+        int[] longGames = draw(selector, GameType.LONG);
+        assertTrue(longGames[2] > longGames[0]);
+    }
+
+    @Test
+    void statisticsOnlyTakeEffectAfterARebuild() {
+        MovieSelector selector = new MovieSelector(MOVIES);
+        for (int i = 0; i < 1000; i++) {
+            selector.recordSkipped("Easy");
+        }
+        int[] counts = draw(selector, GameType.SHORT);
+        assertEquals(1.0 / 3, (double) counts[0] / DRAWS, 0.01);
+    }
+
+    @Test
+    void unknownMoviesAreIgnored() {
+        MovieSelector selector = new MovieSelector(MOVIES);
+        selector.recordSolved("Unknown", 1);
+        selector.recordSkipped(null);
+        assertEquals(-1, selector.indexOf("Unknown"));
+        assertEquals(2, selector.indexOf("Hard"));
+    }
+
+    @Test
+    void rejectsAnEmptyMovieList() {
+        assertThrows(IllegalArgumentException.class, () -> new MovieSelector(List.of()));
+    }
+
+    private static int[] draw(MovieSelector selector, GameType type) {
+        int[] counts = new int[selector.size()];
+        for (int i = 0; i < DRAWS; i++) {
+            counts[selector.indexOf(selector.choose(type).getMovieName())]++;
+        }
+        return counts;
+    }
+}
@@ -0,0 +1,141 @@
+package Assign32starter;
+
+import Assign32starter.entity.GameState;
+import Assign32starter.enums.GameType;
+import Assign32starter.enums.States;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for the {@link OffHeapSessionStore}: record packing and its open-addressing index.
+ */
+class OffHeapSessionStoreTest {
+    private static final MovieSelector MOVIES = new MovieSelector(Arrays.asList(
+            new Movie("Jaws", "Jaws"),
+            new Movie("Alien", "Alien")));
+
+    @Test
+    void recordsRoundTrip() {
+        OffHeapSessionStore store = new OffHeapSessionStore(8, MOVIES);
+        GameState state = new GameState();
+        state.setPlayerName("Ann");
+        state.setCurrentMovie("Alien");
+        state.setCurrentAnswer("Alien");
+        state.setGameStage(States.IN_GAME_WITH_IMAGE);
+        state.setGameType(GameType.LONG);
+        state.setImageVersion(3);
+        state.setSkipsRemaining(5);
+        state.setGameDuration(90);
+        state.setCorrectGuesses(4);
+        state.setGameStartTime(1234);
+        String id = UUID.randomUUID().toString();
+
+        assertTrue(store.put(id, state, 10, 20, 7));
+        OffHeapSessionStore.Entry entry = store.take(id);
+        assertNotNull(entry);
+        assertEquals(10, entry.createdAt);
+        assertEquals(20, entry.lastAccess);
+        assertEquals(7, entry.lastSeq);
+        assertEquals("Ann", entry.state.getPlayerName());
+        assertEquals("Alien", entry.state.getCurrentMovie());
+        assertEquals("Alien", entry.state.getCurrentAnswer());
+        assertEquals(States.IN_GAME_WITH_IMAGE, entry.state.getGameStage());
+        assertEquals(GameType.LONG, entry.state.getGameType());
+        assertEquals(3, entry.state.getImageVersion());
+        assertEquals(5, entry.state.getSkipsRemaining());
+        assertEquals(90, entry.state.getGameDuration());
+        assertEquals(4, entry.state.getCorrectGuesses());
+        assertEquals(1234, entry.state.getGameStartTime());
+        assertNull(store.take(id));
+        assertEquals(0, store.size());
+    }
+
+    @Test
+    void missingAndBlankMoviesStayApart() {
+        OffHeapSessionStore store = new OffHeapSessionStore(8, MOVIES);
+        GameState none = new GameState();
+        none.setCurrentMovie(null);
+        String noneId = UUID.randomUUID().toString();
+        String blankId = UUID.randomUUID().toString();
+
+        store.put(noneId, none, 0, 0, 0);
+        store.put(blankId, new GameState(), 0, 0, 0);
+        assertNull(store.take(noneId).state.getCurrentMovie());
+        assertEquals("", store.take(blankId).state.getCurrentMovie());
+    }
+
+    @Test
+    void storeRefusesDuplicatesAndStopsAtCapacity() {
+        OffHeapSessionStore store = new OffHeapSessionStore(3, MOVIES);
+        String first = UUID.randomUUID().toString();
+        assertTrue(store.put(first, new GameState(), 0, 0, 0));
+        assertFalse(store.put(first, new GameState(), 0, 0, 0));
+        assertTrue(store.put(UUID.randomUUID().toString(), new GameState(), 0, 0, 0));
+        assertTrue(store.put(UUID.randomUUID().toString(), new GameState(), 0, 0, 0));
+        assertFalse(store.put(UUID.randomUUID().toString(), new GameState(), 0, 0, 0));
+
+        store.take(first);
+        assertTrue(store.put(UUID.randomUUID().toString(), new GameState(), 0, 0, 0));
+        assertEquals(3, store.size());
+    }
+
+    @Test
+    void deletionKeepsEveryOtherKeyReachable() {
+        // A full store of 512 keys in a 1024-slot index has long probe runs to shift back.
+        OffHeapSessionStore store = new OffHeapSessionStore(512, MOVIES);
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 512; i++) {
+            String id = UUID.randomUUID().toString();
+            ids.add(id);
+            GameState state = new GameState();
+            state.setCorrectGuesses(i);
+            assertTrue(store.put(id, state, 0, 0, i));
+        }
+        for (int i = 0; i < ids.size(); i += 2) {
+            assertEquals(i, store.take(ids.get(i)).lastSeq);
+        }
+        for (int i = 1; i < ids.size(); i += 2) {
+            OffHeapSessionStore.Entry entry = store.take(ids.get(i));
+            assertNotNull(entry, "session " + i);
+            assertEquals(i, entry.state.getCorrectGuesses());
+        }
+        assertEquals(0, store.size());
+    }
+
+    @Test
+    void expireDropsOnlyElapsedSessions() {
+        OffHeapSessionStore store = new OffHeapSessionStore(64, MOVIES);
+        Set<String> fresh = new HashSet<>();
+        for (int i = 0; i < 60; i++) {
+            String id = UUID.randomUUID().toString();
+            boolean idle = i % 3 == 0;
+            store.put(id, new GameState(), 1000, idle ? 0 : 900, 0);
+            if (!idle) {
+                fresh.add(id);
+            }
+        }
+
+        assertEquals(20, store.expire(1000, 500, 10_000));
+        Set<String> seen = new HashSet<>();
+        store.forEach((id, entry) -> seen.add(id));
+        assertEquals(fresh, seen);
+    }
+
+    @Test
+    void unparseableIdsAreNotFound() {
+        OffHeapSessionStore store = new OffHeapSessionStore(4, MOVIES);
+        assertNull(store.take("not-a-session"));
+    }
+}
@@ -0,0 +1,79 @@
+package Assign32starter;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+/**
+ * Tests for {@link PlayerDictionary}: permanent ids, reference-counted ids and their recycling.
+ */
+class PlayerDictionaryTest {
+
+    @Test
+    void permanentIdsAreStableAcrossGrowth() {
+        PlayerDictionary dictionary = new PlayerDictionary(1, Integer.MAX_VALUE);
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(i, dictionary.idFor("player-" + i));
+        }
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(i, dictionary.idOf("player-" + i));
+            assertEquals("player-" + i, dictionary.keyOf(i));
+        }
+        assertEquals(-1, dictionary.idOf("stranger"));
+        assertEquals(1000, dictionary.size());
+    }
+
+    @Test
+    void acquiredIdsAreRecycledAfterTheLastRelease() {
+        PlayerDictionary dictionary = new PlayerDictionary(16, Integer.MAX_VALUE);
+        int ann = dictionary.acquire("Ann");
+        assertEquals(ann, dictionary.acquire("Ann"));
+
+        dictionary.release(ann);
+        assertEquals(ann, dictionary.idOf("Ann"));
+        dictionary.release(ann);
+        assertEquals(-1, dictionary.idOf("Ann"));
+        assertEquals(0, dictionary.size());
+
+        assertEquals(ann, dictionary.acquire("Bob"));
+        assertEquals("Bob", dictionary.keyOf(ann));
+    }
+
+    @Test
+    void permanentIdsSurviveRelease() {
+        PlayerDictionary dictionary = new PlayerDictionary(16, Integer.MAX_VALUE);
+        int ann = dictionary.acquire("Ann");
+        assertEquals(ann, dictionary.idFor("Ann"));
+        dictionary.release(ann);
+        assertEquals(ann, dictionary.idOf("Ann"));
+        assertNotEquals(ann, dictionary.acquire("Bob"));
+    }
+
+    @Test
+    void churnDoesNotExhaustTheIndex() {
+        // Every release leaves a tombstone; the index must be rebuilt rather than fill up.
+        PlayerDictionary dictionary = new PlayerDictionary(16, Integer.MAX_VALUE);
+        int keeper = dictionary.acquire("keeper");
+        for (int i = 0; i < 10_000; i++) {
+            int id = dictionary.acquire("guest-" + i);
+            assertEquals(id, dictionary.idOf("guest-" + i));
+            dictionary.release(id);
+        }
+        assertEquals(keeper, dictionary.idOf("keeper"));
+        assertEquals(-1, dictionary.idOf("guest-42"));
+        assertEquals(1, dictionary.size());
+    }
+
+    @Test
+    void keysBeyondTheMaximumAreRefused() {
+        PlayerDictionary dictionary = new PlayerDictionary(16, 2);
+        dictionary.idFor("a");
+        int b = dictionary.acquire("b");
+        assertEquals(-1, dictionary.idFor("c"));
+        assertEquals(-1, dictionary.acquire("c"));
+
+        dictionary.release(b);
+        assertNotEquals(-1, dictionary.acquire("c"));
+    }
+}
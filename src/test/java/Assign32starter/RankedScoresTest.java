@@ -0,0 +1,113 @@
+package Assign32starter;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for {@link RankedScores}: the best-score register and the order-statistic treap behind ranks.
+ */
+class RankedScoresTest {
+    private static final Comparator<Map.Entry<String, Double>> RANK_ORDER =
+            Comparator.<Map.Entry<String, Double>>comparingDouble(Map.Entry::getValue).reversed()
+                    .thenComparing(Map.Entry::getKey);
+
+    @Test
+    void onlyBetterScoresReplaceTheBest() {
+        RankedScores scores = new RankedScores(new PlayerDictionary(16, Integer.MAX_VALUE));
+        assertTrue(scores.offer("ann", 10));
+        assertFalse(scores.offer("ann", 5));
+        assertFalse(scores.offer("ann", 10));
+        assertFalse(scores.offer("ann", Double.NaN));
+        assertTrue(scores.offer("ann", 12));
+        assertEquals(12, scores.getScore("ann"));
+        assertTrue(Double.isNaN(scores.getScore("bob")));
+        assertEquals(1, scores.size());
+    }
+
+    @Test
+    void orderAndRanksMatchASortedList() {
+        RankedScores scores = new RankedScores(new PlayerDictionary(16, Integer.MAX_VALUE));
+        Map<String, Double> best = new HashMap<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 20_000; i++) {
+            String key = "player-" + random.nextInt(2000);
+            // Few distinct scores, so ties are broken by key.
+            double score = random.nextInt(300);
+            scores.offer(key, score);
+            best.merge(key, score, Math::max);
+        }
+        List<Map.Entry<String, Double>> expected = new ArrayList<>(best.entrySet());
+        expected.sort(RANK_ORDER);
+
+        RankedScores.Snapshot snapshot = scores.snapshot();
+        assertEquals(expected.size(), snapshot.size());
+        List<Map.Entry<String, Double>> actual = new ArrayList<>();
+        snapshot.forEach((key, score) -> actual.add(Map.entry(key, score)));
+        assertEquals(expected, actual);
+        for (int i = 0; i < expected.size(); i += 37) {
+            Map.Entry<String, Double> entry = expected.get(i);
+            assertEquals(i + 1, snapshot.rankOf(entry.getKey(), entry.getValue()));
+        }
+    }
+
+    @Test
+    void rangesStartAtTheirOffset() {
+        RankedScores scores = new RankedScores(new PlayerDictionary(16, Integer.MAX_VALUE));
+        for (int i = 0; i < 100; i++) {
+            scores.offer(String.format("p%03d", i), i);
+        }
+        List<String> page = new ArrayList<>();
+        scores.snapshot().forEachInRange(10, 5, (key, score) -> page.add(key));
+        assertEquals(List.of("p089", "p088", "p087", "p086", "p085"), page);
+
+        List<String> tail = new ArrayList<>();
+        scores.snapshot().forEachInRange(97, 10, (key, score) -> tail.add(key));
+        assertEquals(List.of("p002", "p001", "p000"), tail);
+
+        List<String> none = new ArrayList<>();
+        scores.snapshot().forEachInRange(100, 10, (key, score) -> none.add(key));
+        assertTrue(none.isEmpty());
+        assertEquals(List.of(Map.entry("p099", 99.0), Map.entry("p098", 98.0)), scores.snapshot().top(2));
+    }
+
+    @Test
+    void aRankNotYetHeldCountsTheBetterPlayers() {
+        RankedScores scores = new RankedScores(new PlayerDictionary(16, Integer.MAX_VALUE));
+        scores.offer("a", 30);
+        scores.offer("c", 20);
+        scores.offer("d", 10);
+        RankedScores.Snapshot snapshot = scores.snapshot();
+        assertEquals(1, snapshot.rankOf("z", 40));
+        assertEquals(2, snapshot.rankOf("b", 20));
+        assertEquals(3, snapshot.rankOf("e", 20));
+        assertEquals(4, snapshot.rankOf("e", 0));
+    }
+
+    @Test
+    void snapshotsDoNotChangeAndVersionsCountChanges() {
+        RankedScores scores = new RankedScores(new PlayerDictionary(16, Integer.MAX_VALUE));
+        scores.offer("ann", 1);
+        RankedScores.Snapshot before = scores.snapshot();
+        long version = scores.version();
+
+        scores.offer("bob", 2);
+        scores.offer("ann", 3);
+        scores.offer("ann", 0);
+
+        assertEquals(1, before.size());
+        assertEquals(List.of(Map.entry("ann", 1.0)), before.top(10));
+        assertEquals(version, before.version());
+        assertEquals(version + 2, scores.version());
+        assertEquals(List.of(Map.entry("ann", 3.0), Map.entry("bob", 2.0)), scores.snapshot().top(10));
+    }
+}
@@ -0,0 +1,172 @@
+package Assign32starter;
+
+import Assign32starter.entity.GameState;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for {@link SerialExecutor} and the mailbox of a {@link GameSession}.
+ */
+class SerialExecutorTest {
+    private final ExecutorService pool = Executors.newFixedThreadPool(4);
+
+    @AfterEach
+    void stopPool() {
+        pool.shutdownNow();
+    }
+
+    @Test
+    void tasksRunOneAtATimeInSubmissionOrder() throws Exception {
+        SerialExecutor executor = new SerialExecutor(pool);
+        List<Integer> order = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger overlaps = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(1000);
+        for (int i = 0; i < 1000; i++) {
+            int n = i;
+            executor.execute(() -> {
+                if (running.incrementAndGet() > 1) {
+                    overlaps.incrementAndGet();
+                }
+                order.add(n);
+                running.decrementAndGet();
+                done.countDown();
+            });
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(0, overlaps.get());
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(i, order.get(i));
+        }
+    }
+
+    @Test
+    void concurrentSubmittersNeverOverlap() throws Exception {
+        SerialExecutor executor = new SerialExecutor(pool);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger overlaps = new AtomicInteger();
+        int[] counter = {0};
+        CountDownLatch done = new CountDownLatch(4 * 500);
+        ExecutorService submitters = Executors.newFixedThreadPool(4);
+        for (int s = 0; s < 4; s++) {
+            submitters.execute(() -> {
+                for (int i = 0; i < 500; i++) {
+                    executor.execute(() -> {
+                        if (running.incrementAndGet() > 1) {
+                            overlaps.incrementAndGet();
+                        }
+                        counter[0]++;
+                        running.decrementAndGet();
+                        done.countDown();
+                    });
+                }
+            });
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        submitters.shutdown();
+        assertEquals(0, overlaps.get());
+        assertEquals(2000, counter[0]);
+    }
+
+    @Test
+    void aClaimKeepsQueuedTasksWaitingUntilReleased() throws Exception {
+        SerialExecutor executor = new SerialExecutor(pool);
+        assertTrue(executor.tryClaim());
+        assertFalse(executor.tryClaim());
+        CountDownLatch ran = new CountDownLatch(1);
+        executor.execute(ran::countDown);
+        assertFalse(ran.await(100, TimeUnit.MILLISECONDS));
+
+        executor.release();
+        assertTrue(ran.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void aBusyExecutorCannotBeClaimed() throws Exception {
+        SerialExecutor executor = new SerialExecutor(pool);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch finish = new CountDownLatch(1);
+        executor.execute(() -> {
+            started.countDown();
+            try {
+                finish.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        assertFalse(executor.tryClaim());
+        finish.countDown();
+    }
+
+    @Test
+    void anIdleSessionRunsCallsOnTheCallingThread() throws Exception {
+        GameSession session = new GameSession("s", new GameState(), pool, System.currentTimeMillis());
+        assertSame(Thread.currentThread(), session.call(Thread::currentThread));
+    }
+
+    @Test
+    void callsOnABusySessionWaitTheirTurn() throws Exception {
+        GameSession session = new GameSession("s", new GameState(), pool, System.currentTimeMillis());
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch finish = new CountDownLatch(1);
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        session.submit(() -> {
+            started.countDown();
+            try {
+                finish.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            order.add("first");
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        ExecutorService caller = Executors.newSingleThreadExecutor();
+        AtomicReference<Thread> callerThread = new AtomicReference<>();
+        Future<Thread> second = caller.submit(() -> {
+            callerThread.set(Thread.currentThread());
+            return session.call(() -> {
+                order.add("second");
+                return Thread.currentThread();
+            });
+        });
+        // Let the first task finish only once the call is queued and its caller waits for the result.
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (callerThread.get() == null || callerThread.get().getState() != Thread.State.WAITING) {
+            assertTrue(System.nanoTime() < deadline, "the call was never queued");
+            Thread.sleep(1);
+        }
+        finish.countDown();
+        // Queued behind the running task, so it ran on a pool thread rather than the caller's.
+        assertNotSame(callerThread.get(), second.get(5, TimeUnit.SECONDS));
+        assertEquals(List.of("first", "second"), order);
+        caller.shutdown();
+    }
+
+    @Test
+    void callRethrowsTheTasksExceptionAndReleasesTheMailbox() throws Exception {
+        GameSession session = new GameSession("s", new GameState(), pool, System.currentTimeMillis());
+        assertThrows(IllegalStateException.class, () -> session.call(() -> {
+            throw new IllegalStateException("boom");
+        }));
+        assertEquals(42, session.call(() -> 42));
+    }
+}
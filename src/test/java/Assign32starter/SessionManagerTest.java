@@ -0,0 +1,145 @@
+package Assign32starter;
+
+import Assign32starter.entity.GameState;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * Tests for the bounds of the {@link SessionManager}: expiry and CLOCK eviction.
+ * The tests run with {@code session.maxEntries=1000}.
+ */
+class SessionManagerTest {
+
+    @BeforeEach
+    void emptyTheStore() {
+        List<String> ids = new ArrayList<>();
+        for (GameSession session : SessionManager.liveSessions()) {
+            ids.add(session.getId());
+        }
+        SessionManager.forEachParked((id, entry) -> ids.add(id));
+        ids.forEach(SessionManager::removeSession);
+        // Purges the removed IDs from the eviction queue.
+        SessionManager.sweep();
+    }
+
+    @Test
+    void createdSessionsCanBeLookedUpAndRemoved() {
+        GameSession session = SessionManager.createSession(new GameState());
+        assertSame(session, SessionManager.getSession(session.getId()));
+        assertEquals(1, SessionManager.getLiveSessionCount());
+
+        SessionManager.removeSession(session.getId());
+        assertNull(SessionManager.getSession(session.getId()));
+        assertEquals(0, SessionManager.getLiveSessionCount());
+    }
+
+    @Test
+    void idleSessionsExpireOnLookup() {
+        GameSession session = SessionManager.createSession(new GameState());
+        session.lastAccess = System.currentTimeMillis() - SessionManager.IDLE_TTL_MILLIS - 1;
+        long expired = SessionManager.getExpiredSessionCount();
+
+        assertNull(SessionManager.getSession(session.getId()));
+        assertEquals(expired + 1, SessionManager.getExpiredSessionCount());
+        assertEquals(0, SessionManager.getLiveSessionCount());
+    }
+
+    @Test
+    void sweepDropsExpiredSessions() {
+        GameSession stale = SessionManager.createSession(new GameState());
+        GameSession fresh = SessionManager.createSession(new GameState());
+        stale.lastAccess = System.currentTimeMillis() - SessionManager.IDLE_TTL_MILLIS - 1;
+
+        SessionManager.sweep();
+
+        assertFalse(SessionManager.liveSessions().contains(stale));
+        assertNotNull(SessionManager.getSession(fresh.getId()));
+        assertEquals(1, SessionManager.getLiveSessionCount());
+    }
+
+    @Test
+    void aFullStoreEvictsTheOldestUnusedSession() {
+        List<GameSession> created = fill();
+        long evicted = SessionManager.getEvictedSessionCount();
+
+        GameSession extra = SessionManager.createSession(new GameState());
+
+        assertEquals(evicted + 1, SessionManager.getEvictedSessionCount());
+        assertEquals(SessionManager.MAX_SESSIONS, SessionManager.getLiveSessionCount());
+        assertNull(SessionManager.getSession(created.get(0).getId()));
+        assertNotNull(SessionManager.getSession(created.get(1).getId()));
+        assertNotNull(SessionManager.getSession(extra.getId()));
+    }
+
+    @Test
+    void recentlyUsedSessionsGetASecondChance() {
+        List<GameSession> created = fill();
+        SessionManager.getSession(created.get(0).getId());
+        SessionManager.getSession(created.get(1).getId());
+
+        SessionManager.createSession(new GameState());
+
+        // The hand passes the two used sessions, clearing their bits, and evicts the third.
+        assertNull(SessionManager.getSession(created.get(2).getId()));
+        assertNotNull(SessionManager.getSession(created.get(0).getId()));
+        assertNotNull(SessionManager.getSession(created.get(1).getId()));
+    }
+
+    @Test
+    void everySessionUsedMeansTheHandGoesRoundOnce() {
+        List<GameSession> created = fill();
+        for (GameSession session : created) {
+            SessionManager.getSession(session.getId());
+        }
+
+        SessionManager.createSession(new GameState());
+
+        // Every bit was cleared on the first pass, so the first session goes on the second.
+        assertNull(SessionManager.getSession(created.get(0).getId()));
+        assertEquals(SessionManager.MAX_SESSIONS, SessionManager.getLiveSessionCount());
+    }
+
+    @Test
+    void parkedSessionsAreCountedApartAndWokenOnLookup() {
+        GameSession idle = SessionManager.createSession(new GameState());
+        idle.lastAccess = System.currentTimeMillis() - SessionManager.PARK_AFTER_MILLIS - 1;
+
+        SessionManager.sweep();
+
+        assertEquals(0, SessionManager.getLiveSessionCount());
+        assertEquals(1, SessionManager.getParkedSessionCount());
+        assertNotNull(SessionManager.getSession(idle.getId()));
+        assertEquals(1, SessionManager.getLiveSessionCount());
+        assertEquals(0, SessionManager.getParkedSessionCount());
+    }
+
+    @Test
+    void wakingASessionIntoAFullStoreEvictsAnother() {
+        GameSession idle = SessionManager.createSession(new GameState());
+        idle.lastAccess = System.currentTimeMillis() - SessionManager.PARK_AFTER_MILLIS - 1;
+        SessionManager.sweep();
+        List<GameSession> created = fill();
+
+        assertNotNull(SessionManager.getSession(idle.getId()));
+
+        assertEquals(SessionManager.MAX_SESSIONS, SessionManager.getLiveSessionCount());
+        assertNull(SessionManager.getSession(created.get(0).getId()));
+    }
+
+    private static List<GameSession> fill() {
+        List<GameSession> created = new ArrayList<>();
+        while (SessionManager.getLiveSessionCount() < SessionManager.MAX_SESSIONS) {
+            created.add(SessionManager.createSession(new GameState()));
+        }
+        return created;
+    }
+}
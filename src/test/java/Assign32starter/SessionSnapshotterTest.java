@@ -0,0 +1,153 @@
+package Assign32starter;
+
+import Assign32starter.entity.GameState;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for the {@link SessionSnapshotter}: what a snapshot keeps, when a session counts as saved
+ * and how a damaged file is recovered. The tests run with {@code session.snapshotFile}
+ * pointing at a scratch file.
+ */
+class SessionSnapshotterTest {
+    private static final File SNAPSHOT = new File(System.getProperty("session.snapshotFile", "sessions.snap"));
+
+    @BeforeEach
+    void startFromNothing() {
+        emptyTheStore();
+        deleteSnapshot();
+    }
+
+    @AfterEach
+    void cleanUp() {
+        emptyTheStore();
+        deleteSnapshot();
+    }
+
+    @Test
+    void restoreKeepsLastSeqAndMissingMovie() throws Exception {
+        GameSession session = SessionManager.createSession(new GameState());
+        session.call(() -> {
+            session.getState().setPlayerName("Ann");
+            session.getState().setCurrentMovie(null);
+            session.getState().setCurrentAnswer(null);
+            session.getState().setCorrectGuesses(3);
+            session.lastSeq = 7;
+            return null;
+        });
+        SessionSnapshotter.snapshotSafely();
+        assertFalse(session.isDirty());
+
+        emptyTheStore();
+        assertEquals(1, SessionSnapshotter.restore());
+        GameSession restored = SessionManager.getSession(session.getId());
+        assertNotNull(restored);
+        assertEquals(7, restored.lastSeq);
+        assertEquals("Ann", restored.getState().getPlayerName());
+        assertEquals(3, restored.getState().getCorrectGuesses());
+        assertNull(restored.getState().getCurrentMovie());
+        assertNull(restored.getState().getCurrentAnswer());
+        assertFalse(restored.isDirty());
+    }
+
+    @Test
+    void sessionStaysDirtyUntilItsRecordIsWritten() throws Exception {
+        // A non-empty directory in place of the file makes both appending and compacting fail.
+        assertTrue(SNAPSHOT.mkdirs());
+        assertTrue(new File(SNAPSHOT, "blocker").createNewFile());
+        GameSession session = SessionManager.createSession(new GameState());
+
+        SessionSnapshotter.snapshotSafely();
+        assertTrue(session.isDirty());
+
+        deleteSnapshot();
+        SessionSnapshotter.snapshotSafely();
+        assertFalse(session.isDirty());
+
+        session.call(() -> {
+            session.getState().setPlayerName("Bob");
+            return null;
+        });
+        assertTrue(session.isDirty());
+    }
+
+    @Test
+    void truncatedFinalRecordIsIgnored() throws Exception {
+        SessionManager.createSession(new GameState());
+        SessionManager.createSession(new GameState());
+        SessionSnapshotter.snapshotSafely();
+        try (RandomAccessFile file = new RandomAccessFile(SNAPSHOT, "rw")) {
+            file.setLength(file.length() - 3);
+        }
+
+        emptyTheStore();
+        assertEquals(1, SessionSnapshotter.restore());
+        assertEquals(1, SessionManager.getLiveSessionCount());
+    }
+
+    @Test
+    void busySessionsAreLeftForTheNextRound() throws Exception {
+        // A first round leaves a fresh file, so the next one appends rather than compacts.
+        SessionSnapshotter.snapshotSafely();
+        GameSession session = SessionManager.createSession(new GameState());
+        CountDownLatch inRequest = new CountDownLatch(1);
+        CountDownLatch finish = new CountDownLatch(1);
+        Thread request = new Thread(() -> {
+            try {
+                session.call(() -> {
+                    inRequest.countDown();
+                    return finish.await(10, TimeUnit.SECONDS);
+                });
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        request.start();
+        assertTrue(inRequest.await(10, TimeUnit.SECONDS));
+
+        // The round neither waits for the request nor queues behind it.
+        long start = System.nanoTime();
+        SessionSnapshotter.snapshotSafely();
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1000);
+        assertTrue(session.isDirty());
+
+        finish.countDown();
+        request.join();
+        SessionSnapshotter.snapshotSafely();
+        assertFalse(session.isDirty());
+    }
+
+    private static void emptyTheStore() {
+        List<String> ids = new ArrayList<>();
+        for (GameSession session : SessionManager.liveSessions()) {
+            ids.add(session.getId());
+        }
+        SessionManager.forEachParked((id, entry) -> ids.add(id));
+        ids.forEach(SessionManager::removeSession);
+    }
+
+    private static void deleteSnapshot() {
+        File[] children = SNAPSHOT.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                child.delete();
+            }
+        }
+        SNAPSHOT.delete();
+        new File(SNAPSHOT.getPath() + ".tmp").delete();
+    }
+}
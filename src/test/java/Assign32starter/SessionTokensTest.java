@@ -0,0 +1,103 @@
+package Assign32starter;
+
+import Assign32starter.entity.GameState;
+import Assign32starter.enums.GameType;
+import Assign32starter.enums.States;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for the {@link SessionTokens} codec: round trips, forgery, replay, peeking and name truncation.
+ */
+class SessionTokensTest {
+
+    @Test
+    void tokensCarryTheWholeState() {
+        Movie movie = SockServer.getMovieSelector().get(0);
+        GameState state = new GameState();
+        state.setPlayerName("Ann");
+        state.setGameStage(States.IN_GAME_WITH_IMAGE);
+        state.setGameType(GameType.MEDIUM);
+        state.setCurrentMovie(movie.getMovieName());
+        state.setCurrentAnswer(movie.getCorrectAnswer());
+        state.setImageVersion(2);
+        state.setSkipsRemaining(3);
+        state.setGameDuration(60);
+        state.setCorrectGuesses(4);
+        state.setGameStartTime(123_456);
+
+        GameState decoded = SessionTokens.verify(SessionTokens.issueNew(state)).state;
+        assertEquals("Ann", decoded.getPlayerName());
+        assertEquals(States.IN_GAME_WITH_IMAGE, decoded.getGameStage());
+        assertEquals(GameType.MEDIUM, decoded.getGameType());
+        assertEquals(movie.getMovieName(), decoded.getCurrentMovie());
+        assertEquals(movie.getCorrectAnswer(), decoded.getCurrentAnswer());
+        assertEquals(2, decoded.getImageVersion());
+        assertEquals(3, decoded.getSkipsRemaining());
+        assertEquals(60, decoded.getGameDuration());
+        assertEquals(4, decoded.getCorrectGuesses());
+        assertEquals(123_456, decoded.getGameStartTime());
+    }
+
+    @Test
+    void eachTokenIsAcceptedOnce() {
+        String first = SessionTokens.issueNew(new GameState());
+        SessionTokens.Token verified = SessionTokens.verify(first);
+        String second = SessionTokens.issueNext(verified);
+
+        IllegalArgumentException replay = assertThrows(IllegalArgumentException.class, () -> SessionTokens.verify(first));
+        assertEquals("Session token was already used.", replay.getMessage());
+        SessionTokens.verify(second);
+        assertThrows(IllegalArgumentException.class, () -> SessionTokens.verify(second));
+    }
+
+    @Test
+    void peekingDoesNotSpendAToken() {
+        GameState state = new GameState();
+        state.setPlayerName("Ann");
+        String token = SessionTokens.issueNew(state);
+        assertEquals("Ann", SessionTokens.peek(token).state.getPlayerName());
+        assertEquals("Ann", SessionTokens.peek(token).state.getPlayerName());
+        SessionTokens.verify(token);
+        assertThrows(IllegalArgumentException.class, () -> SessionTokens.peek(token.substring(1)));
+    }
+
+    @Test
+    void alteredTokensAreRefused() {
+        String token = SessionTokens.issueNew(new GameState());
+        char[] chars = token.toCharArray();
+        chars[5] = chars[5] == 'A' ? 'B' : 'A';
+        assertThrows(IllegalArgumentException.class, () -> SessionTokens.verify(new String(chars)));
+        assertThrows(IllegalArgumentException.class, () -> SessionTokens.verify(token.substring(0, token.length() - 2)));
+        assertThrows(IllegalArgumentException.class, () -> SessionTokens.verify("not a token"));
+        assertThrows(IllegalArgumentException.class, () -> SessionTokens.verify(null));
+    }
+
+    @Test
+    void longNamesKeepTokensShort() {
+        GameState state = new GameState();
+        state.setPlayerName("x".repeat(100_000));
+        String token = SessionTokens.issueNew(state);
+        assertTrue(token.length() <= 160);
+        assertEquals("x".repeat(32), SessionTokens.verify(token).state.getPlayerName());
+    }
+
+    @Test
+    void truncationStopsAtThirtyTwoBytes() {
+        assertEquals("", SessionTokens.truncate(null));
+        assertEquals("short", SessionTokens.truncate("short"));
+        // Two-byte characters: 16 of them fill the limit.
+        assertEquals("\u00e9".repeat(16), SessionTokens.truncate("\u00e9".repeat(40)));
+        // Four-byte characters, each a surrogate pair: 7 fit after two ASCII bytes, and no half pair is left.
+        String truncated = SessionTokens.truncate("ab" + "\ud83c\udfac".repeat(20));
+        assertTrue(truncated.getBytes(StandardCharsets.UTF_8).length <= 32);
+        assertFalse(Character.isHighSurrogate(truncated.charAt(truncated.length() - 1)));
+        assertEquals("ab" + "\ud83c\udfac".repeat(7), truncated);
+    }
+}
@@ -0,0 +1,87 @@
+package Assign32starter;
+
+import Assign32starter.enums.LeaderboardWindow;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for {@link WindowedScores}: which bucket a score lands in, what the window's ranking holds,
+ * and what expiry drops.
+ */
+class WindowedScoresTest {
+    private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+
+    @Test
+    void scoresLandInTheBucketOfTheirHour() {
+        long now = System.currentTimeMillis();
+        long thisHour = now - now % HOUR;
+        WindowedScores daily = new WindowedScores(LeaderboardWindow.DAILY, new PlayerDictionary(16, Integer.MAX_VALUE));
+        assertTrue(daily.offer("ann", 5, thisHour - 2 * HOUR + 1));
+        assertTrue(daily.offer("bob", 3, thisHour - 2 * HOUR + HOUR - 1));
+        daily.offer("ann", 4, thisHour);
+
+        List<Long> starts = new ArrayList<>();
+        List<Integer> sizes = new ArrayList<>();
+        daily.forEachBucket((start, entries) -> {
+            starts.add(start);
+            sizes.add(entries.size());
+        });
+        assertEquals(List.of(thisHour - 2 * HOUR, thisHour), starts);
+        assertEquals(List.of(2, 1), sizes);
+    }
+
+    @Test
+    void theRankingKeepsTheBestScoreAcrossBuckets() {
+        long now = System.currentTimeMillis();
+        WindowedScores daily = new WindowedScores(LeaderboardWindow.DAILY, new PlayerDictionary(16, Integer.MAX_VALUE));
+        daily.offer("ann", 9, now - 5 * HOUR);
+        daily.offer("ann", 4, now);
+        daily.offer("bob", 6, now);
+        // A lower score in a new bucket is kept there, but does not change the ranking.
+        assertFalse(daily.offer("ann", 8, now - HOUR));
+        assertEquals(List.of(Map.entry("ann", 9.0), Map.entry("bob", 6.0)), daily.ranking().snapshot().top(10));
+    }
+
+    @Test
+    void scoresOlderThanTheWindowAreRefused() {
+        long now = System.currentTimeMillis();
+        WindowedScores daily = new WindowedScores(LeaderboardWindow.DAILY, new PlayerDictionary(16, Integer.MAX_VALUE));
+        assertFalse(daily.offer("ann", 5, now - 25 * HOUR));
+        assertFalse(daily.offer("ann", 5, 0));
+        assertTrue(daily.offer("ann", 5, now - 23 * HOUR));
+        assertEquals(1, daily.ranking().size());
+    }
+
+    @Test
+    void expiryDropsOldBucketsAndRebuildsTheRanking() {
+        long now = System.currentTimeMillis();
+        WindowedScores daily = new WindowedScores(LeaderboardWindow.DAILY, new PlayerDictionary(16, Integer.MAX_VALUE));
+        daily.offer("ann", 9, now - 20 * HOUR);
+        daily.offer("ann", 4, now - 2 * HOUR);
+        daily.offer("bob", 6, now - 10 * HOUR);
+        RankedScores before = daily.ranking();
+
+        assertEquals(0, daily.expire(now));
+        assertEquals(1, daily.expire(now + 5 * HOUR));
+        assertEquals(List.of(Map.entry("bob", 6.0), Map.entry("ann", 4.0)), daily.ranking().snapshot().top(10));
+        assertEquals(List.of(Map.entry("ann", 9.0), Map.entry("bob", 6.0)), before.snapshot().top(10));
+
+        assertEquals(2, daily.expire(now + 30 * HOUR));
+        assertEquals(0, daily.ranking().size());
+    }
+
+    @Test
+    void allTimeIsNotARollingWindow() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new WindowedScores(LeaderboardWindow.ALL_TIME, new PlayerDictionary(16, Integer.MAX_VALUE)));
+    }
+}